@@ -0,0 +1,118 @@
+package benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * @author Puspesh.Prakash
+ *
+ * <p> Runs the selected benchmarks (same command-line as JMH, e.g. a benchmark regex) twice, both times with the gc
+ * profiler for the allocation rate:
+ * <ol>
+ * <li> throughput in ops/s
+ * <li> sample time in microseconds, which reports the p50/p99/p99.9 latency percentiles
+ * </ol>
+ *
+ * <p> A {@code -tu} time unit applies to both runs. With {@code -bm} the selected modes run once instead. The help and list
+ * options ({@code -h}, {@code -l}, {@code -lp}, {@code -lprof}, {@code -lrf}) behave as with JMH's own main.
+ */
+public final class BenchmarkRunner
+{
+	private BenchmarkRunner(){}
+
+	public static void main(String[] args) throws Exception
+	{
+		final CommandLineOptions commandLine;
+
+		try
+		{
+			commandLine = new CommandLineOptions(args);
+		}
+
+		catch (CommandLineOptionException e)
+		{
+			System.err.println("Error parsing command line:");
+			System.err.println(" " + e.getMessage());
+
+			System.exit(1);
+
+			return;
+		}
+
+		if (commandLine.shouldHelp())
+		{
+			commandLine.showHelp();
+		}
+
+		else if (commandLine.shouldList())
+		{
+			new Runner(commandLine).list();
+		}
+
+		else if (commandLine.shouldListWithParams())
+		{
+			new Runner(commandLine).listWithParams(commandLine);
+		}
+
+		else if (commandLine.shouldListProfilers())
+		{
+			commandLine.listProfilers();
+		}
+
+		else if (commandLine.shouldListResultFormats())
+		{
+			commandLine.listResultFormats();
+		}
+
+		else
+		{
+			try
+			{
+				run(commandLine);
+			}
+
+			catch (RunnerException e)
+			{
+				System.err.print("ERROR: ");
+
+				e.printStackTrace(System.err);
+
+				System.exit(1);
+			}
+		}
+	}
+
+	private static void run(CommandLineOptions commandLine) throws RunnerException
+	{
+		if (!commandLine.getBenchModes().isEmpty())
+		{
+			new Runner(new OptionsBuilder().parent(commandLine).addProfiler(GCProfiler.class).build()).run();
+
+			return;
+		}
+
+		final Options throughput = new OptionsBuilder().parent(commandLine)
+													   .mode(Mode.Throughput)
+													   .timeUnit(commandLine.getTimeUnit().orElse(TimeUnit.SECONDS))
+													   .addProfiler(GCProfiler.class)
+													   .build();
+
+		final Options latency = new OptionsBuilder().parent(commandLine)
+													.mode(Mode.SampleTime)
+													.timeUnit(commandLine.getTimeUnit().orElse(TimeUnit.MICROSECONDS))
+													.addProfiler(GCProfiler.class)
+													.build();
+
+		new Runner(throughput).run();
+
+		new Runner(latency).run();
+	}
+}
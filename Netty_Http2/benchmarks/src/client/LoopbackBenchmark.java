@@ -0,0 +1,217 @@
+package client;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.handler.codec.http2.DefaultHttp2DataFrame;
+import io.netty.handler.codec.http2.DefaultHttp2Headers;
+import io.netty.handler.codec.http2.DefaultHttp2HeadersFrame;
+import io.netty.handler.codec.http2.Http2DataFrame;
+import io.netty.handler.codec.http2.Http2Headers;
+import io.netty.handler.codec.http2.Http2HeadersFrame;
+import io.netty.handler.codec.http2.Http2StreamChannel;
+import io.netty.handler.codec.http2.Http2StreamChannelBootstrap;
+import io.netty.handler.codec.http2.Http2StreamFrame;
+import io.netty.util.CharsetUtil;
+import server.Backpressure;
+import server.DiscardingEventSink;
+import server.EventDispatcher;
+import server.Http2ServerInitializer;
+import server.ServerConfig;
+import server.ServerProfile;
+import transport.TransportConfig;
+
+/**
+ * @author Puspesh.Prakash
+ *
+ * <p> End-to-end request/response over loopback: a client connection set up like {@link Http2FrameClient} sends the
+ * POST event on a new stream and waits for the ACK of the server pipeline set up by {@link Http2ServerInitializer}
+ * (clear-text, prior knowledge). The transport follows the {@link TransportConfig} system properties.
+ *
+ * <p> {@link #postEventBatch()} sends {@value #BATCH} concurrent streams in one write, which is where the server's
+ * flush consolidation pays off: without it every stream's ACK is flushed (written to the socket) on its own.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class LoopbackBenchmark
+{
+	private static final String REQUEST_JSON = "{\"array\":[1,7],\"http2\":true,\"type\":\"json\",\"version\":4,\"object\":{\"a\":\"b\",\"c\":\"d\"},\"title\":\"Netty Http2 Client & Server!\"}";
+
+	private static final int BATCH = 64;
+
+	@Param({ "0", "256" })
+	int flushConsolidation;
+
+	private EventLoopGroup serverGroup;
+
+	private EventLoopGroup clientGroup;
+
+	private Channel serverChannel;
+
+	private Channel clientChannel;
+
+	private Http2StreamChannelBootstrap streamChannelBootstrap;
+
+	private Http2Headers headers;
+
+	private ByteBuf payload;
+
+	@Setup
+	public void setUp() throws Exception
+	{
+		final TransportConfig transportConfig = TransportConfig.fromSystemProperties();
+
+		serverGroup = transportConfig.transport().newEventLoopGroup(1);
+
+		clientGroup = transportConfig.transport().newEventLoopGroup(1);
+
+		final EventDispatcher dispatcher = new EventDispatcher(new DiscardingEventSink(), Backpressure.REJECT);
+
+		final ServerConfig config = ServerConfig.of(ServerProfile.DEFAULT).with("flushConsolidation", flushConsolidation);
+
+		final ServerBootstrap sb = new ServerBootstrap().group(serverGroup).childHandler(new Http2ServerInitializer(null, config, dispatcher, null, null, null, null));
+
+		serverChannel = transportConfig.configure(sb).bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0)).sync().channel();
+
+		final Bootstrap b = new Bootstrap().group(clientGroup).handler(new Http2ClientFrameInitializer(null));
+
+		clientChannel = transportConfig.configure(b).connect(serverChannel.localAddress()).sync().channel();
+
+		streamChannelBootstrap = new Http2StreamChannelBootstrap(clientChannel);
+
+		headers = new DefaultHttp2Headers().method("POST").path("/").scheme("http");
+
+		payload = Unpooled.unreleasableBuffer(Unpooled.directBuffer().writeBytes(REQUEST_JSON.getBytes(CharsetUtil.UTF_8)));
+	}
+
+	@TearDown
+	public void tearDown() throws Exception
+	{
+		clientChannel.close().sync();
+
+		serverChannel.close().sync();
+
+		clientGroup.shutdownGracefully().sync();
+
+		serverGroup.shutdownGracefully().sync();
+	}
+
+	@Benchmark
+	public Http2Headers postEvent() throws Exception
+	{
+		final Http2StreamChannel streamChannel = streamChannelBootstrap.open().sync().getNow();
+
+		final ResponseFutureHandler response = new ResponseFutureHandler();
+
+		streamChannel.pipeline().addLast(response);
+
+		streamChannel.write(new DefaultHttp2HeadersFrame(headers));
+
+		streamChannel.writeAndFlush(new DefaultHttp2DataFrame(payload.duplicate(), true));
+
+		return response.future.get(5, TimeUnit.SECONDS);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(BATCH)
+	public Object postEventBatch() throws Exception
+	{
+		final CompletableFuture<?>[] responses = new CompletableFuture<?>[BATCH];
+
+		for (int i = 0; i < BATCH; i++)
+		{
+			responses[i] = new CompletableFuture<Http2Headers>();
+		}
+
+		// On the event loop the streams open inline, so all of them go out with the one flush at the end and the server
+		// reads them together.
+		clientChannel.eventLoop().execute(() ->
+		{
+			for (CompletableFuture<?> future : responses)
+			{
+				streamChannelBootstrap.open().addListener(f ->
+				{
+					final Http2StreamChannel streamChannel = (Http2StreamChannel) f.getNow();
+
+					streamChannel.pipeline().addLast(new ResponseFutureHandler(future));
+
+					streamChannel.write(new DefaultHttp2HeadersFrame(headers));
+
+					streamChannel.write(new DefaultHttp2DataFrame(payload.duplicate(), true));
+				});
+			}
+
+			clientChannel.flush();
+		});
+
+		return CompletableFuture.allOf(responses).get(5, TimeUnit.SECONDS);
+	}
+
+	/**
+	 * Completes with the response headers once the response stream ends.
+	 */
+	private static final class ResponseFutureHandler extends SimpleChannelInboundHandler<Http2StreamFrame>
+	{
+		final CompletableFuture<Http2Headers> future;
+
+		private Http2Headers headers;
+
+		ResponseFutureHandler()
+		{
+			this(new CompletableFuture<>());
+		}
+
+		@SuppressWarnings("unchecked")
+		ResponseFutureHandler(CompletableFuture<?> future)
+		{
+			this.future = (CompletableFuture<Http2Headers>) future;
+		}
+
+		@Override
+		protected void channelRead0(ChannelHandlerContext ctx, Http2StreamFrame msg)
+		{
+			if (msg instanceof Http2HeadersFrame)
+			{
+				headers = ((Http2HeadersFrame) msg).headers();
+
+				if (((Http2HeadersFrame) msg).isEndStream())
+				{
+					future.complete(headers);
+				}
+			}
+
+			else if (msg instanceof Http2DataFrame && ((Http2DataFrame) msg).isEndStream())
+			{
+				future.complete(headers);
+			}
+		}
+	}
+}
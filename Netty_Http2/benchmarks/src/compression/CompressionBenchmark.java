@@ -0,0 +1,131 @@
+package compression;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocator;
+
+/**
+ * @author Puspesh.Prakash
+ *
+ * <p> CPU versus bytes of the body compression: the time to compress (client) and to decompress (server) an event body
+ * of JSON events like the ones {@code Http2FrameClient} posts, per coding and level. The {@link Bytes} counters report
+ * the raw and the compressed bytes per second, their quotient is the compression ratio bought with that time; level 0
+ * is the uncompressed baseline (deflate framing only).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class CompressionBenchmark
+{
+	@Param({ "512", "16384", "262144" })
+	int payloadSize;
+
+	@Param({ "GZIP", "DEFLATE" })
+	ContentCoding coding;
+
+	@Param({ "0", "1", "6", "9" })
+	int level;
+
+	private final ByteBufAllocator alloc = PooledByteBufAllocator.DEFAULT;
+
+	private ByteBuf payload;
+
+	private ByteBuf compressed;
+
+	@Setup
+	public void setUp()
+	{
+		payload = alloc.directBuffer(payloadSize);
+
+		for (int i = 0; payload.readableBytes() < payloadSize; i++)
+		{
+			final String event = "{\"array\":[" + i + ',' + (i * 7 % 1000) + "],\"http2\":true,\"type\":\"json\",\"version\":4,"
+					+ "\"object\":{\"a\":\"b" + (i % 13) + "\",\"c\":\"d\"},\"title\":\"Netty Http2 Client & Server!\"}\n";
+
+			final byte[] bytes = event.getBytes(StandardCharsets.US_ASCII);
+
+			payload.writeBytes(bytes, 0, Math.min(bytes.length, payloadSize - payload.readableBytes()));
+		}
+
+		compressed = BodyCompressor.compress(alloc, payload, coding, level);
+	}
+
+	@TearDown
+	public void tearDown()
+	{
+		payload.release();
+
+		compressed.release();
+	}
+
+	@Benchmark
+	public int compress(Bytes bytes)
+	{
+		final ByteBuf out = BodyCompressor.compress(alloc, payload, coding, level);
+
+		bytes.rawBytes += payload.readableBytes();
+
+		bytes.wireBytes += out.readableBytes();
+
+		final int length = out.readableBytes();
+
+		out.release();
+
+		return length;
+	}
+
+	@Benchmark
+	public int decompress() throws Exception
+	{
+		final BodyDecompressor decompressor = new BodyDecompressor(alloc, coding, Integer.MAX_VALUE);
+
+		final ByteBuf out = decompressor.decode(compressed, true);
+
+		final int length = out.readableBytes();
+
+		out.release();
+
+		return length;
+	}
+
+	/**
+	 * Bytes before and after compression, reported per second next to the time per operation.
+	 */
+	@AuxCounters(AuxCounters.Type.EVENTS)
+	@State(Scope.Thread)
+	public static class Bytes
+	{
+		public long rawBytes;
+
+		public long wireBytes;
+
+		@Setup(Level.Iteration)
+		public void reset()
+		{
+			rawBytes = 0;
+
+			wireBytes = 0;
+		}
+	}
+}
@@ -0,0 +1,107 @@
+package server;
+
+import static io.netty.buffer.Unpooled.wrappedBuffer;
+import static io.netty.handler.codec.http.HttpResponseStatus.ACCEPTED;
+import static io.netty.handler.codec.http.HttpVersion.HTTP_1_1;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http2.DefaultHttp2DataFrame;
+import io.netty.handler.codec.http2.DefaultHttp2Headers;
+import io.netty.handler.codec.http2.DefaultHttp2HeadersFrame;
+import io.netty.util.ReferenceCountUtil;
+
+/**
+ * @author Puspesh.Prakash
+ *
+ * <p> Cost of writing one Event ACK: the former per-response headers, {@code String.getBytes()} body and two
+ * {@code writeAndFlush} calls against the precomputed {@link AckResponses} written with a single flush. Run through
+ * {@code BenchmarkRunner} (gc profiler) for the allocation rate per ACK.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class AckResponseBenchmark
+{
+	private EmbeddedChannel channel;
+
+	private ChannelHandlerContext ctx;
+
+	@Setup
+	public void setUp()
+	{
+		channel = new EmbeddedChannel(new ChannelInboundHandlerAdapter());
+
+		ctx = channel.pipeline().firstContext();
+	}
+
+	@TearDown
+	public void tearDown()
+	{
+		channel.finishAndReleaseAll();
+	}
+
+	@Benchmark
+	public Object http2Dynamic()
+	{
+		String responseJson = "{\"response-code\":\"202\",\"response-message\":\"Accepted\"}";
+
+		ctx.writeAndFlush(new DefaultHttp2HeadersFrame(new DefaultHttp2Headers().status(ACCEPTED.codeAsText())));
+
+		ctx.writeAndFlush(new DefaultHttp2DataFrame(wrappedBuffer(responseJson.getBytes()), true));
+
+		return drain();
+	}
+
+	@Benchmark
+	public Object http2Precomputed()
+	{
+		ctx.write(AckResponses.http2AcceptedHeaders());
+
+		ctx.write(AckResponses.http2AcceptedBody());
+
+		ctx.flush();
+
+		return drain();
+	}
+
+	@Benchmark
+	public Object http1Precomputed()
+	{
+		ctx.writeAndFlush(AckResponses.http1(HTTP_1_1, true, true));
+
+		return drain();
+	}
+
+	private Object drain()
+	{
+		Object last = null;
+
+		for (Object response = channel.readOutbound(); response != null; response = channel.readOutbound())
+		{
+			ReferenceCountUtil.release(response);
+
+			last = response;
+		}
+
+		return last;
+	}
+}
@@ -0,0 +1,23 @@
+package server;
+
+/**
+ * @author Puspesh.Prakash
+ *
+ * <p> {@link EventSink} that accepts and drops every event, so benchmarks only measure the receiving path.
+ */
+public final class DiscardingEventSink implements EventSink
+{
+	@Override
+	public boolean offer(ReceivedEvent event)
+	{
+		event.release();
+
+		return true;
+	}
+
+	@Override
+	public void close()
+	{
+		// NOOP
+	}
+}
@@ -0,0 +1,81 @@
+package server;
+
+import static io.netty.handler.codec.http.HttpHeaderNames.CONTENT_LENGTH;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.DefaultFullHttpRequest;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.util.ReferenceCountUtil;
+
+/**
+ * @author Puspesh.Prakash
+ *
+ * <p> Request handling and response building of {@link Http1EventReceiverHandler} through an {@link EmbeddedChannel}:
+ * one aggregated keep-alive request in, the ACK response out. The event sink discards the events.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class Http1EventReceiverHandlerBenchmark
+{
+	@Param({ "128", "16384" })
+	int payloadSize;
+
+	private EmbeddedChannel channel;
+
+	private ByteBuf payload;
+
+	@Setup
+	public void setUp()
+	{
+		final EventDispatcher dispatcher = new EventDispatcher(new DiscardingEventSink(), Backpressure.REJECT);
+
+		channel = new EmbeddedChannel(new Http1EventReceiverHandler("Benchmark", dispatcher));
+
+		payload = Unpooled.unreleasableBuffer(Unpooled.directBuffer(payloadSize).writeZero(payloadSize));
+	}
+
+	@TearDown
+	public void tearDown()
+	{
+		channel.finishAndReleaseAll();
+	}
+
+	@Benchmark
+	public Object request()
+	{
+		final FullHttpRequest request = new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.POST, "/", payload.duplicate());
+
+		request.headers().setInt(CONTENT_LENGTH, payloadSize);
+
+		channel.writeInbound(request);
+
+		final Object response = channel.readOutbound();
+
+		ReferenceCountUtil.release(response);
+
+		return response;
+	}
+}
@@ -0,0 +1,89 @@
+package server;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http2.DefaultHttp2DataFrame;
+import io.netty.handler.codec.http2.DefaultHttp2Headers;
+import io.netty.handler.codec.http2.DefaultHttp2HeadersFrame;
+import io.netty.handler.codec.http2.Http2Headers;
+import io.netty.util.ReferenceCountUtil;
+
+/**
+ * @author Puspesh.Prakash
+ *
+ * <p> Frame handling of {@link Http2EventReceiverHandler} through an {@link EmbeddedChannel}: one HEADERS and one
+ * DATA (END_STREAM) frame in, the ACK frames out. The event sink discards the events.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class Http2EventReceiverHandlerBenchmark
+{
+	@Param({ "128", "16384" })
+	int payloadSize;
+
+	@Param({ "COMPOSITE", "POOLED" })
+	BodyAggregation aggregation;
+
+	private EmbeddedChannel channel;
+
+	private Http2Headers headers;
+
+	private ByteBuf payload;
+
+	@Setup
+	public void setUp()
+	{
+		final EventDispatcher dispatcher = new EventDispatcher(new DiscardingEventSink(), Backpressure.REJECT);
+
+		channel = new EmbeddedChannel(new Http2EventReceiverHandler(dispatcher, aggregation, Integer.MAX_VALUE));
+
+		headers = new DefaultHttp2Headers().method("POST").path("/").scheme("http");
+
+		payload = Unpooled.unreleasableBuffer(Unpooled.directBuffer(payloadSize).writeZero(payloadSize));
+	}
+
+	@TearDown
+	public void tearDown()
+	{
+		channel.finishAndReleaseAll();
+	}
+
+	@Benchmark
+	public Object request()
+	{
+		channel.writeInbound(new DefaultHttp2HeadersFrame(headers));
+
+		channel.writeInbound(new DefaultHttp2DataFrame(payload.duplicate(), true));
+
+		Object last = null;
+
+		for (Object response = channel.readOutbound(); response != null; response = channel.readOutbound())
+		{
+			ReferenceCountUtil.release(response);
+
+			last = response;
+		}
+
+		return last;
+	}
+}
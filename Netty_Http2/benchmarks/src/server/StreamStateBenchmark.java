@@ -0,0 +1,157 @@
+package server;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.netty.channel.Channel;
+import io.netty.channel.DefaultChannelId;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http2.DefaultHttp2Headers;
+import io.netty.handler.codec.http2.Http2Headers;
+import io.netty.util.Attribute;
+
+/**
+ * @author Puspesh.Prakash
+ *
+ * <p> Compares the two designs for per-stream request state with 10k concurrently open streams per thread:
+ * the former global {@link ConcurrentHashMap}s keyed by {@code streamId + channelId} against the
+ * {@link StreamRequest} attribute of the stream's child channel. Every operation opens the state (HEADERS), looks it up
+ * (DATA) and drops it (END_STREAM) for one stream.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Threads(4)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class StreamStateBenchmark
+{
+	private static final int STREAMS = 10000;
+
+	private static final Http2Headers HEADERS = new DefaultHttp2Headers().method("POST").path("/").scheme("http");
+
+	private final Map <String, StreamRequest> requestMap = new ConcurrentHashMap<>();
+
+	private final Map <String, Http2Headers> headerMap = new ConcurrentHashMap<>();
+
+	/**
+	 * The stream channels owned by one benchmark thread.
+	 */
+	@State(Scope.Thread)
+	public static class Streams
+	{
+		Channel[] channels;
+
+		@Setup
+		public void setUp()
+		{
+			channels = new Channel[STREAMS];
+
+			for (int i = 0; i < STREAMS; i++)
+			{
+				channels[i] = new EmbeddedChannel(DefaultChannelId.newInstance());
+			}
+		}
+
+		@TearDown
+		public void tearDown()
+		{
+			for (Channel channel : channels)
+			{
+				channel.close();
+			}
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(STREAMS)
+	public int sharedMap(Streams s)
+	{
+		int found = 0;
+
+		for (int i = 0; i < STREAMS; i++)
+		{
+			headerMap.put(streamId(i) + s.channels[i].id().asLongText(), HEADERS);
+		}
+
+		for (int i = 0; i < STREAMS; i++)
+		{
+			String key = streamId(i) + s.channels[i].id().asLongText();
+
+			requestMap.putIfAbsent(key, new StreamRequest());
+
+			found += requestMap.get(key) != null ? 1 : 0;
+		}
+
+		for (int i = 0; i < STREAMS; i++)
+		{
+			String key = streamId(i) + s.channels[i].id().asLongText();
+
+			found += headerMap.remove(key) != null ? 1 : 0;
+
+			requestMap.remove(key).release();
+		}
+
+		return found;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(STREAMS)
+	public int channelAttribute(Streams s)
+	{
+		int found = 0;
+
+		for (int i = 0; i < STREAMS; i++)
+		{
+			Attribute<StreamRequest> attr = s.channels[i].attr(StreamRequest.KEY);
+
+			StreamRequest request = attr.get();
+
+			if (request == null)
+			{
+				request = new StreamRequest();
+
+				attr.set(request);
+			}
+
+			request.headers(HEADERS);
+		}
+
+		for (int i = 0; i < STREAMS; i++)
+		{
+			found += s.channels[i].attr(StreamRequest.KEY).get() != null ? 1 : 0;
+		}
+
+		for (int i = 0; i < STREAMS; i++)
+		{
+			StreamRequest request = s.channels[i].attr(StreamRequest.KEY).getAndSet(null);
+
+			found += request.headers() != null ? 1 : 0;
+
+			request.release();
+		}
+
+		return found;
+	}
+
+	private static int streamId(int i)
+	{
+		return 2 * i + 3;
+	}
+}
@@ -0,0 +1,16 @@
+package admin;
+
+import io.netty.handler.codec.http.FullHttpRequest;
+
+/**
+ * @author Puspesh.Prakash
+ *
+ * <p> A route of the {@link AdminServer}. Invoked on the admin event loop, endpoints are expected to answer quickly.
+ */
+public interface AdminEndpoint
+{
+	/**
+	 * @return the response body, answered with 200 in the content type the endpoint was registered with.
+	 */
+	CharSequence handle(FullHttpRequest request) throws Exception;
+}
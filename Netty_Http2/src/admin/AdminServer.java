@@ -0,0 +1,206 @@
+package admin;
+
+import static io.netty.handler.codec.http.HttpHeaderNames.ALLOW;
+import static io.netty.handler.codec.http.HttpHeaderNames.CONTENT_LENGTH;
+import static io.netty.handler.codec.http.HttpHeaderNames.CONTENT_TYPE;
+import static io.netty.handler.codec.http.HttpResponseStatus.INTERNAL_SERVER_ERROR;
+import static io.netty.handler.codec.http.HttpResponseStatus.METHOD_NOT_ALLOWED;
+import static io.netty.handler.codec.http.HttpResponseStatus.NOT_FOUND;
+import static io.netty.handler.codec.http.HttpResponseStatus.OK;
+import static io.netty.handler.codec.http.HttpVersion.HTTP_1_1;
+import static io.netty.util.internal.ObjectUtil.checkNotNull;
+
+import java.nio.CharBuffer;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandler.Sharable;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpObjectAggregator;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpServerCodec;
+import io.netty.handler.codec.http.HttpServerKeepAliveHandler;
+import io.netty.handler.codec.http.QueryStringDecoder;
+import io.netty.util.CharsetUtil;
+import logging.AsyncLog;
+import logging.Logger;
+import transport.Transport;
+
+/**
+ * @author Puspesh.Prakash
+ *
+ * <p> Small HTTP/1.1 server for operational endpoints (e.g. the Prometheus metrics), bound to a separate, usually
+ * local-only port so it is neither exposed with nor affected by the event traffic.
+ */
+public final class AdminServer
+{
+	private static final Logger LOG = AsyncLog.logger("admin");
+
+	private static final int MAX_CONTENT_LENGTH = 64 * 1024;
+
+	private final EventLoopGroup group;
+
+	private final Transport transport;
+
+	private final Map<String, Route> routes = new ConcurrentHashMap<>();
+
+	private Channel channel;
+
+	public AdminServer(EventLoopGroup group, Transport transport)
+	{
+		this.group = checkNotNull(group, "group");
+		this.transport = checkNotNull(transport, "transport");
+	}
+
+	/**
+	 * Serves {@code endpoint} for requests to {@code path} (any method).
+	 */
+	public AdminServer route(String path, String contentType, AdminEndpoint endpoint)
+	{
+		return route(null, path, contentType, endpoint);
+	}
+
+	/**
+	 * Serves {@code endpoint} for {@code method} requests to {@code path}, other methods are answered with 405.
+	 *
+	 * @param method null for any method.
+	 */
+	public AdminServer route(HttpMethod method, String path, String contentType, AdminEndpoint endpoint)
+	{
+		routes.put(checkNotNull(path, "path"), new Route(method, checkNotNull(contentType, "contentType"),
+														 checkNotNull(endpoint, "endpoint")));
+
+		return this;
+	}
+
+	public ChannelFuture bind(String host, int port)
+	{
+		final ServerBootstrap b = new ServerBootstrap();
+
+		b.group(group)
+		 .channel(transport.serverChannelClass())
+		 .childHandler(new ChannelInitializer<Channel>()
+		 {
+			 private final AdminHandler handler = new AdminHandler();
+
+			 @Override
+			 protected void initChannel(Channel ch)
+			 {
+				 ch.pipeline().addLast(new HttpServerCodec(),
+									   new HttpServerKeepAliveHandler(),
+									   new HttpObjectAggregator(MAX_CONTENT_LENGTH),
+									   handler);
+			 }
+		 });
+
+		final ChannelFuture bindFuture = b.bind(host, port);
+
+		channel = bindFuture.channel();
+
+		return bindFuture;
+	}
+
+	public ChannelFuture close()
+	{
+		return channel.close();
+	}
+
+	private static final class Route
+	{
+		final HttpMethod method;
+
+		final String contentType;
+
+		final AdminEndpoint endpoint;
+
+		Route(HttpMethod method, String contentType, AdminEndpoint endpoint)
+		{
+			this.method = method;
+			this.contentType = contentType;
+			this.endpoint = endpoint;
+		}
+	}
+
+	@Sharable
+	private final class AdminHandler extends SimpleChannelInboundHandler<FullHttpRequest>
+	{
+		@Override
+		protected void channelRead0(ChannelHandlerContext ctx, FullHttpRequest request)
+		{
+			final Route route = routes.get(new QueryStringDecoder(request.uri()).path());
+
+			if (route == null)
+			{
+				respond(ctx, NOT_FOUND, "text/plain", "Not Found\n");
+
+				return;
+			}
+
+			if (route.method != null && !route.method.equals(request.method()))
+			{
+				final FullHttpResponse response = response(ctx, METHOD_NOT_ALLOWED, "text/plain", "Method Not Allowed\n");
+
+				response.headers().set(ALLOW, route.method.asciiName());
+
+				write(ctx, response);
+
+				return;
+			}
+
+			try
+			{
+				respond(ctx, OK, route.contentType, route.endpoint.handle(request));
+			}
+
+			catch (Exception e)
+			{
+				respond(ctx, INTERNAL_SERVER_ERROR, "text/plain", e + "\n");
+			}
+		}
+
+		@Override
+		public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause)
+		{
+			LOG.error("Exception caught on " + ctx.channel(), cause);
+
+			ctx.close();
+		}
+
+		private void respond(ChannelHandlerContext ctx, HttpResponseStatus status, String contentType, CharSequence body)
+		{
+			write(ctx, response(ctx, status, contentType, body));
+		}
+
+		private FullHttpResponse response(ChannelHandlerContext ctx, HttpResponseStatus status, String contentType, CharSequence body)
+		{
+			final ByteBuf content = ByteBufUtil.encodeString(ctx.alloc(), CharBuffer.wrap(body), CharsetUtil.UTF_8);
+
+			final FullHttpResponse response = new DefaultFullHttpResponse(HTTP_1_1, status, content);
+
+			response.headers().set(CONTENT_TYPE, contentType);
+
+			response.headers().setInt(CONTENT_LENGTH, content.readableBytes());
+
+			return response;
+		}
+
+		private void write(ChannelHandlerContext ctx, FullHttpResponse response)
+		{
+			// The keep-alive handler closes the connection after the response unless the request asked to keep it.
+			ctx.writeAndFlush(response).addListener(ChannelFutureListener.FIRE_EXCEPTION_ON_FAILURE);
+		}
+	}
+}
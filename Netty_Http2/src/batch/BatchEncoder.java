@@ -0,0 +1,165 @@
+package batch;
+
+import static io.netty.util.internal.ObjectUtil.checkNotNull;
+
+import java.nio.charset.StandardCharsets;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+
+/**
+ * @author Puspesh.Prakash
+ *
+ * <p> Packs events into the body of one batch request, see {@link BatchFraming}:
+ * <pre>
+ * BatchEncoder batch = new BatchEncoder(alloc, BatchFraming.LENGTH_PREFIXED);
+ * batch.add(event1).add(event2);
+ * client.send(host, port, new DefaultHttp2Headers().method("POST").path("/batch")
+ *                                                  .set(CONTENT_TYPE, batch.framing().contentType()), batch.finish());
+ * </pre>
+ * The events are written into a single pooled buffer. The response carries one status per event, in the order they
+ * were added, see {@link #status(ByteBuf, int)}.
+ */
+public final class BatchEncoder
+{
+	private final BatchFraming framing;
+
+	private ByteBuf body;
+
+	private int size;
+
+	public BatchEncoder(ByteBufAllocator alloc, BatchFraming framing)
+	{
+		this.framing = checkNotNull(framing, "framing");
+		this.body = checkNotNull(alloc, "alloc").buffer();
+	}
+
+	public BatchFraming framing()
+	{
+		return framing;
+	}
+
+	/**
+	 * @return the number of events added.
+	 */
+	public int size()
+	{
+		return size;
+	}
+
+	/**
+	 * Appends the readable bytes of {@code event}, which is neither consumed nor released.
+	 *
+	 * @throws IllegalArgumentException if an {@link BatchFraming#NDJSON} event contains a line break or is empty.
+	 */
+	public BatchEncoder add(ByteBuf event)
+	{
+		checkOpen();
+
+		final int length = event.readableBytes();
+
+		if (framing == BatchFraming.LENGTH_PREFIXED)
+		{
+			body.writeInt(length);
+
+			body.writeBytes(event, event.readerIndex(), length);
+		}
+
+		else
+		{
+			if (length == 0 || event.indexOf(event.readerIndex(), event.writerIndex(), (byte) '\n') >= 0)
+			{
+				throw new IllegalArgumentException("NDJSON events must be non-empty and without line breaks");
+			}
+
+			body.writeBytes(event, event.readerIndex(), length);
+
+			body.writeByte('\n');
+		}
+
+		size++;
+
+		return this;
+	}
+
+	/**
+	 * Appends {@code event} encoded as UTF-8.
+	 */
+	public BatchEncoder add(CharSequence event)
+	{
+		checkOpen();
+
+		final int start = body.writerIndex();
+
+		if (framing == BatchFraming.LENGTH_PREFIXED)
+		{
+			body.writeInt(0);
+
+			final int length = body.writeCharSequence(event, StandardCharsets.UTF_8);
+
+			body.setInt(start, length);
+		}
+
+		else
+		{
+			final int length = body.writeCharSequence(event, StandardCharsets.UTF_8);
+
+			if (length == 0 || body.indexOf(start, body.writerIndex(), (byte) '\n') >= 0)
+			{
+				body.writerIndex(start);
+
+				throw new IllegalArgumentException("NDJSON events must be non-empty and without line breaks");
+			}
+
+			body.writeByte('\n');
+		}
+
+		size++;
+
+		return this;
+	}
+
+	/**
+	 * @return the body of the batch, owned by the caller. The encoder cannot be used any more.
+	 */
+	public ByteBuf finish()
+	{
+		checkOpen();
+
+		final ByteBuf finished = body;
+
+		body = null;
+
+		return finished;
+	}
+
+	/**
+	 * Drops the body of a batch that is not going to be sent.
+	 */
+	public void release()
+	{
+		if (body != null)
+		{
+			body.release();
+
+			body = null;
+		}
+	}
+
+	/**
+	 * @param statuses the body of the batch response.
+	 * @return the status of the {@code index}-th event of the batch.
+	 */
+	public static BatchStatus status(ByteBuf statuses, int index)
+	{
+		return BatchStatus.of(statuses.getByte(statuses.readerIndex() + index));
+	}
+
+	private void checkOpen()
+	{
+		if (body == null)
+		{
+			throw new IllegalStateException("Batch already finished");
+		}
+	}
+}
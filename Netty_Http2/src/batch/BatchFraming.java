@@ -0,0 +1,67 @@
+package batch;
+
+import io.netty.util.AsciiString;
+
+/**
+ * @author Puspesh.Prakash
+ *
+ * <p> How the events of a batch are delimited in the body of its stream, told by the {@code content-type}:
+ * <ul>
+ * <li> {@link #LENGTH_PREFIXED}: every event preceded by its length as a 4 byte unsigned big-endian integer, for any
+ *      payload;
+ * <li> {@link #NDJSON}: one event per line, for payloads without line breaks such as compact JSON. Empty lines are
+ *      skipped, a trailing {@code \r} is dropped.
+ * </ul>
+ * The response carries one {@link BatchStatus} byte per event, in order, with the content-type {@link #STATUS_CONTENT_TYPE}.
+ */
+public enum BatchFraming
+{
+	LENGTH_PREFIXED(AsciiString.cached("application/x-event-batch")),
+
+	NDJSON(AsciiString.cached("application/x-ndjson"));
+
+	public static final AsciiString STATUS_CONTENT_TYPE = AsciiString.cached("application/x-event-batch-status");
+
+	/**
+	 * Size of the length prefix of {@link #LENGTH_PREFIXED}.
+	 */
+	static final int LENGTH_SIZE = 4;
+
+	private final AsciiString contentType;
+
+	BatchFraming(AsciiString contentType)
+	{
+		this.contentType = contentType;
+	}
+
+	public AsciiString contentType()
+	{
+		return contentType;
+	}
+
+	/**
+	 * @param contentType the {@code content-type} header, parameters (e.g. a charset) are ignored.
+	 * @return the framing, or null if the content-type is none of them.
+	 */
+	public static BatchFraming of(CharSequence contentType)
+	{
+		if (contentType == null)
+		{
+			return null;
+		}
+
+		final int end = AsciiString.indexOf(contentType, ';', 0);
+
+		final CharSequence mimeType = end < 0 ? contentType : contentType.subSequence(0, end);
+
+		for (BatchFraming framing : values())
+		{
+			if (AsciiString.contentEqualsIgnoreCase(framing.contentType, AsciiString.trim(mimeType)))
+			{
+				return framing;
+			}
+		}
+
+		return null;
+	}
+}
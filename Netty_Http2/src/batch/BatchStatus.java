@@ -0,0 +1,57 @@
+package batch;
+
+/**
+ * @author Puspesh.Prakash
+ *
+ * <p> Outcome of one event of a batch, sent as a single (printable) byte of the status vector.
+ */
+public enum BatchStatus
+{
+	/**
+	 * Accepted by the event sink.
+	 */
+	ACCEPTED('A'),
+
+	/**
+	 * Not accepted because the server is overloaded (e.g. the event sink is full), may be sent again.
+	 */
+	REJECTED('R'),
+
+	/**
+	 * Malformed or larger than the max body size, not to be sent again.
+	 */
+	INVALID('E');
+
+	private final byte code;
+
+	BatchStatus(char code)
+	{
+		this.code = (byte) code;
+	}
+
+	public byte code()
+	{
+		return code;
+	}
+
+	/**
+	 * @throws IllegalArgumentException for an unknown code.
+	 */
+	public static BatchStatus of(byte code)
+	{
+		switch (code)
+		{
+			case 'A':
+				return ACCEPTED;
+
+			case 'R':
+				return REJECTED;
+
+			case 'E':
+				return INVALID;
+
+			default:
+				throw new IllegalArgumentException("Unknown batch status: " + (char) code);
+		}
+	}
+}
@@ -0,0 +1,293 @@
+package batch;
+
+import static io.netty.util.internal.ObjectUtil.checkNotNull;
+import static io.netty.util.internal.ObjectUtil.checkPositive;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+
+/**
+ * @author Puspesh.Prakash
+ *
+ * <p> Splits the body of a batch into its events as the chunks (data frames) arrive, see {@link BatchFraming}.
+ *
+ * <p> An event that lies within one chunk is passed on as a retained slice of it, without copying. Only the bytes of an
+ * event that spans chunks are collected in a buffer of their own, so the splitter holds at most one incomplete event
+ * (bounded by the max record size) however large the batch. An event beyond the max record size is skipped as it
+ * arrives instead of being buffered and is reported as invalid.
+ *
+ * <p> Not thread-safe, a splitter serves one body and is used from the event loop of its stream.
+ */
+public final class RecordSplitter
+{
+	/**
+	 * Receives the events of a batch in order.
+	 */
+	public interface RecordListener
+	{
+		/**
+		 * @param record the payload of the event, ownership is passed to the listener.
+		 */
+		void onRecord(ByteBuf record);
+
+		/**
+		 * Called for an event that is larger than the max record size or incomplete at the end of the body.
+		 */
+		void onInvalid();
+	}
+
+	private final BatchFraming framing;
+
+	private final ByteBufAllocator alloc;
+
+	private final int maxRecordSize;
+
+	/**
+	 * The incomplete event of the previous chunks, null if there is none.
+	 */
+	private ByteBuf cumulation;
+
+	/**
+	 * Bytes of an oversized event still to be skipped ({@link BatchFraming#LENGTH_PREFIXED}).
+	 */
+	private long skip;
+
+	/**
+	 * Whether the rest of an oversized line is skipped ({@link BatchFraming#NDJSON}).
+	 */
+	private boolean discarding;
+
+	public RecordSplitter(BatchFraming framing, ByteBufAllocator alloc, int maxRecordSize)
+	{
+		this.framing = checkNotNull(framing, "framing");
+		this.alloc = checkNotNull(alloc, "alloc");
+		this.maxRecordSize = checkPositive(maxRecordSize, "maxRecordSize");
+	}
+
+	/**
+	 * Passes the events completed by {@code chunk} to the listener, the chunk itself is neither consumed nor released.
+	 *
+	 * @param last true for the final chunk of the body, an incomplete event is then reported as invalid (a last line
+	 *        without line break is an event, though).
+	 */
+	public void split(ByteBuf chunk, boolean last, RecordListener listener)
+	{
+		final ByteBuf in = chunk.duplicate();
+
+		if (cumulation != null)
+		{
+			complete(in, listener);
+		}
+
+		if (cumulation == null)
+		{
+			split(in, listener);
+
+			if (in.isReadable())
+			{
+				cumulation = alloc.buffer(in.readableBytes());
+
+				cumulation.writeBytes(in);
+			}
+		}
+
+		if (last)
+		{
+			finish(listener);
+		}
+	}
+
+	/**
+	 * Moves bytes of {@code in} to the incomplete event until it is complete, so the rest of {@code in} can be split
+	 * without copying. The cumulation is dropped (never compacted) once split, the events sliced from it keep it alive.
+	 */
+	private void complete(ByteBuf in, RecordListener listener)
+	{
+		while (cumulation != null && in.isReadable())
+		{
+			cumulation.writeBytes(in, Math.min(in.readableBytes(), missing(in)));
+
+			split(cumulation, listener);
+
+			if (!cumulation.isReadable())
+			{
+				cumulation.release();
+
+				cumulation = null;
+			}
+		}
+	}
+
+	/**
+	 * @return how many bytes of {@code in} the incomplete event (or its length prefix) still lacks, at least 1.
+	 */
+	private int missing(ByteBuf in)
+	{
+		if (framing == BatchFraming.NDJSON)
+		{
+			final int eol = in.indexOf(in.readerIndex(), in.writerIndex(), (byte) '\n');
+
+			return eol < 0 ? in.readableBytes() : eol - in.readerIndex() + 1;
+		}
+
+		if (cumulation.readableBytes() < BatchFraming.LENGTH_SIZE)
+		{
+			return BatchFraming.LENGTH_SIZE - cumulation.readableBytes();
+		}
+
+		// The length is within the limit, an oversized event would have been skipped already.
+		return (int) (BatchFraming.LENGTH_SIZE + cumulation.getUnsignedInt(cumulation.readerIndex()) - cumulation.readableBytes());
+	}
+
+	/**
+	 * Drops an incomplete event, for a body that ends early (e.g. the stream was reset).
+	 */
+	public void release()
+	{
+		if (cumulation != null)
+		{
+			cumulation.release();
+
+			cumulation = null;
+		}
+	}
+
+	private void split(ByteBuf in, RecordListener listener)
+	{
+		if (framing == BatchFraming.LENGTH_PREFIXED)
+		{
+			splitLengthPrefixed(in, listener);
+		}
+
+		else
+		{
+			splitLines(in, listener);
+		}
+	}
+
+	private void splitLengthPrefixed(ByteBuf in, RecordListener listener)
+	{
+		while (true)
+		{
+			if (skip > 0)
+			{
+				final int skipped = (int) Math.min(skip, in.readableBytes());
+
+				in.skipBytes(skipped);
+
+				skip -= skipped;
+
+				if (skip > 0)
+				{
+					return;
+				}
+			}
+
+			if (in.readableBytes() < BatchFraming.LENGTH_SIZE)
+			{
+				return;
+			}
+
+			final long length = in.getUnsignedInt(in.readerIndex());
+
+			if (length > maxRecordSize)
+			{
+				in.skipBytes(BatchFraming.LENGTH_SIZE);
+
+				skip = length;
+
+				listener.onInvalid();
+			}
+
+			else if (in.readableBytes() - BatchFraming.LENGTH_SIZE < length)
+			{
+				return;
+			}
+
+			else
+			{
+				in.skipBytes(BatchFraming.LENGTH_SIZE);
+
+				listener.onRecord(in.readRetainedSlice((int) length));
+			}
+		}
+	}
+
+	private void splitLines(ByteBuf in, RecordListener listener)
+	{
+		while (in.isReadable())
+		{
+			final int eol = in.indexOf(in.readerIndex(), in.writerIndex(), (byte) '\n');
+
+			if (eol < 0)
+			{
+				if (discarding || in.readableBytes() > maxRecordSize)
+				{
+					if (!discarding)
+					{
+						discarding = true;
+
+						listener.onInvalid();
+					}
+
+					in.skipBytes(in.readableBytes());
+				}
+
+				return;
+			}
+
+			if (discarding)
+			{
+				discarding = false;
+			}
+
+			else
+			{
+				line(in, eol - in.readerIndex(), listener);
+			}
+
+			in.readerIndex(eol + 1);
+		}
+	}
+
+	/**
+	 * Passes the line of {@code length} bytes at the reader index of {@code in} on, without its {@code \r}.
+	 */
+	private void line(ByteBuf in, int length, RecordListener listener)
+	{
+		if (length > 0 && in.getByte(in.readerIndex() + length - 1) == '\r')
+		{
+			length--;
+		}
+
+		if (length > maxRecordSize)
+		{
+			listener.onInvalid();
+		}
+
+		else if (length > 0)
+		{
+			listener.onRecord(in.retainedSlice(in.readerIndex(), length));
+		}
+	}
+
+	private void finish(RecordListener listener)
+	{
+		if (framing == BatchFraming.NDJSON && !discarding && cumulation != null)
+		{
+			line(cumulation, cumulation.readableBytes(), listener);
+		}
+
+		// An oversized event has already been reported when its skipping began.
+		else if (cumulation != null)
+		{
+			listener.onInvalid();
+		}
+
+		release();
+
+		skip = 0;
+
+		discarding = false;
+	}
+}
@@ -0,0 +1,332 @@
+package client;
+
+import static io.netty.handler.codec.http.HttpHeaderNames.ACCEPT_ENCODING;
+import static io.netty.handler.codec.http.HttpHeaderNames.CONTENT_ENCODING;
+import static io.netty.handler.codec.http.HttpHeaderNames.CONTENT_LENGTH;
+import static io.netty.handler.codec.http.HttpHeaderNames.CONTENT_TYPE;
+import static io.netty.util.internal.ObjectUtil.checkNotNull;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeoutException;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.handler.codec.http2.Http2Headers;
+import io.netty.handler.ssl.SslContext;
+import io.netty.util.AsciiString;
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timeout;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import batch.BatchFraming;
+import compression.BodyCompressor;
+import compression.ContentCoding;
+import transport.TransportConfig;
+
+/**
+ * A multiplexing HTTP/2 client that keeps a pool of connections per host, see {@link Http2ConnectionPool}. Every
+ * request runs on its own stream of a pooled connection instead of a connection of its own, and completes a
+ * {@link CompletableFuture} with the {@link Http2Response}. Nothing blocks: connections are opened asynchronously and
+ * the futures are completed on the event loop of the connection, so dependent actions should not block either.
+ *
+ * <p> System properties: maxConnectionsPerHost (default 4), maxStreamsPerConnection (default 100),
+ * maxPendingRequests (per host, default 10000), pingInterval (ms, default 30000), pingTimeout (ms, default 5000),
+ * compression (gzip, deflate or none, default gzip), compressionThreshold (bytes, default 1024), compressionLevel
+ * (default 6), maxResponseSize (bytes, default 16 MB), requestTimeout (ms, default 0: none) plus the
+ * {@link TransportConfig} properties.
+ *
+ * <p> A request with a deadline fails with a {@link TimeoutException} once it expires, whether it is still waiting for a
+ * stream or its response is incomplete; an open stream is then reset (RST_STREAM). Deadlines are kept in a
+ * {@link HashedWheelTimer}, so each costs a bucket entry instead of a scheduled task, and the futures of expired
+ * requests are completed on its thread.
+ *
+ * <p> Files are sent memory-mapped and zero-copy ({@link #sendFile}), with constant heap however large they are.
+ *
+ * <p> Long-lived event streams ({@link #openEventStream}) carry any number of events on one stream, each acknowledged
+ * by the server as it reads it.
+ *
+ * <p> Request bodies of at least compressionThreshold bytes are compressed on the calling thread, unless that does not
+ * make them smaller or they already have a content-encoding. Every request accepts gzip and deflate responses, which
+ * are decompressed as they arrive; a response that inflates beyond maxResponseSize fails.
+ *
+ * @author Puspesh.Prakash
+ */
+public final class Http2Client
+{
+	static final int MAX_CONNECTIONS_PER_HOST = Integer.getInteger("maxConnectionsPerHost", 4);
+	static final int MAX_STREAMS_PER_CONNECTION = Integer.getInteger("maxStreamsPerConnection", 100);
+	static final int MAX_PENDING_REQUESTS = Integer.getInteger("maxPendingRequests", 10000);
+	static final long PING_INTERVAL_MILLIS = Long.getLong("pingInterval", 30000);
+	static final long PING_TIMEOUT_MILLIS = Long.getLong("pingTimeout", 5000);
+	static final String COMPRESSION = System.getProperty("compression", "gzip");
+	static final int COMPRESSION_THRESHOLD = Integer.getInteger("compressionThreshold", 1024);
+	static final int COMPRESSION_LEVEL = Integer.getInteger("compressionLevel", BodyCompressor.DEFAULT_LEVEL);
+	static final int MAX_RESPONSE_SIZE = Integer.getInteger("maxResponseSize", 16 * 1024 * 1024);
+	static final long REQUEST_TIMEOUT_MILLIS = Long.getLong("requestTimeout", 0);
+
+	/**
+	 * Resolution of the deadlines.
+	 */
+	private static final long TICK_MILLIS = 10;
+
+	private final Bootstrap bootstrap;
+
+	private final AsciiString scheme;
+
+	/**
+	 * The coding of large request bodies, null to send them uncompressed.
+	 */
+	private final ContentCoding compression;
+
+	private final ConcurrentMap<InetSocketAddress, Http2ConnectionPool> pools = new ConcurrentHashMap<>();
+
+	/**
+	 * Started with the first deadline.
+	 */
+	private final HashedWheelTimer deadlines = new HashedWheelTimer(new DefaultThreadFactory("client-deadlines", true),
+			TICK_MILLIS, MILLISECONDS);
+
+	/**
+	 * @param group the event loops of the pooled connections, owned (and shut down) by the caller.
+	 * @param sslCtx null for cleartext HTTP/2 with prior knowledge.
+	 */
+	public Http2Client(EventLoopGroup group, TransportConfig transportConfig, SslContext sslCtx)
+	{
+		checkNotNull(group, "group");
+		checkNotNull(transportConfig, "transportConfig");
+
+		bootstrap = new Bootstrap();
+
+		bootstrap.group(group)
+				 .option(ChannelOption.SO_KEEPALIVE, true)
+				 .handler(new Http2ClientFrameInitializer(sslCtx));
+
+		transportConfig.configure(bootstrap);
+
+		scheme = AsciiString.of(sslCtx != null ? "https" : "http");
+
+		compression = "none".equals(COMPRESSION) ? null : ContentCoding.of(COMPRESSION);
+	}
+
+	/**
+	 * Sends a request to {@code host:port} on a pooled connection. {@code :scheme} and {@code :authority} are filled in
+	 * unless present. Ownership of {@code body} (may be null) passes to the client, the returned response has to be
+	 * released by the caller. The deadline is requestTimeout.
+	 */
+	public CompletableFuture<Http2Response> send(String host, int port, Http2Headers headers, ByteBuf body)
+	{
+		return send(host, port, headers, body, REQUEST_TIMEOUT_MILLIS);
+	}
+
+	/**
+	 * Like {@link #send(String, int, Http2Headers, ByteBuf)} with a deadline of its own.
+	 *
+	 * @param timeoutMillis from now until the response has to be complete, 0 for none.
+	 */
+	public CompletableFuture<Http2Response> send(String host, int port, Http2Headers headers, ByteBuf body, long timeoutMillis)
+	{
+		prepare(host, port, headers);
+
+		return withDeadline(pool(host, port).send(headers, compress(headers, body)), timeoutMillis);
+	}
+
+	/**
+	 * Sends a request with the content of {@code file} as its body, e.g. to replay captured events to a batch route.
+	 * The file is memory-mapped and sent zero-copy as the stream's flow-control window allows, see
+	 * {@link MappedFileBody}; it is not compressed and the content-length is set to its size.
+	 *
+	 * @return failed if the file cannot be opened.
+	 */
+	public CompletableFuture<Http2Response> sendFile(String host, int port, Http2Headers headers, Path file)
+	{
+		final FileChannel channel;
+
+		final long length;
+
+		try
+		{
+			channel = FileChannel.open(file, StandardOpenOption.READ);
+		}
+
+		catch (IOException e)
+		{
+			return failed(e);
+		}
+
+		try
+		{
+			length = channel.size();
+		}
+
+		catch (IOException e)
+		{
+			closeQuietly(channel);
+
+			return failed(e);
+		}
+
+		prepare(host, port, headers);
+
+		headers.setLong(CONTENT_LENGTH, length);
+
+		if (length == 0)
+		{
+			closeQuietly(channel);
+
+			return withDeadline(pool(host, port).send(headers, (ByteBuf) null), REQUEST_TIMEOUT_MILLIS);
+		}
+
+		return withDeadline(pool(host, port).send(headers, new MappedFileBody(channel, length)), REQUEST_TIMEOUT_MILLIS);
+	}
+
+	/**
+	 * Opens a long-lived event stream to {@code host:port} on a pooled connection, see {@link Http2EventStream}; the
+	 * headers name a duplex route of the server, e.g. {@code POST /stream}. {@code :scheme}, {@code :authority} and
+	 * the content-type of {@code framing} are filled in unless present.
+	 *
+	 * @return completed once the stream is open, events may be sent right away.
+	 */
+	public CompletableFuture<Http2EventStream> openEventStream(String host, int port, Http2Headers headers, BatchFraming framing)
+	{
+		prepare(host, port, headers);
+
+		if (!headers.contains(CONTENT_TYPE))
+		{
+			headers.set(CONTENT_TYPE, framing.contentType());
+		}
+
+		return pool(host, port).openEventStream(headers, framing);
+	}
+
+	/**
+	 * Fails {@code response} unless it completes within {@code timeoutMillis}; see {@link Http2ResponseHandler} for
+	 * the reset of its stream.
+	 */
+	private CompletableFuture<Http2Response> withDeadline(CompletableFuture<Http2Response> response, long timeoutMillis)
+	{
+		if (timeoutMillis <= 0 || response.isDone())
+		{
+			return response;
+		}
+
+		final Timeout deadline = deadlines.newTimeout(t -> response.completeExceptionally(
+				new TimeoutException("No response within " + timeoutMillis + " ms")), timeoutMillis, MILLISECONDS);
+
+		response.whenComplete((r, cause) -> deadline.cancel());
+
+		return response;
+	}
+
+	/**
+	 * Fills in {@code :scheme}, {@code :authority} and accept-encoding unless present.
+	 */
+	private void prepare(String host, int port, Http2Headers headers)
+	{
+		if (headers.scheme() == null)
+		{
+			headers.scheme(scheme);
+		}
+
+		if (headers.authority() == null)
+		{
+			headers.authority(host + ':' + port);
+		}
+
+		if (!headers.contains(ACCEPT_ENCODING))
+		{
+			headers.set(ACCEPT_ENCODING, ContentCoding.ACCEPTED);
+		}
+	}
+
+	private static <T> CompletableFuture<T> failed(Throwable cause)
+	{
+		final CompletableFuture<T> future = new CompletableFuture<>();
+
+		future.completeExceptionally(cause);
+
+		return future;
+	}
+
+	private static void closeQuietly(FileChannel channel)
+	{
+		try
+		{
+			channel.close();
+		}
+
+		catch (IOException ignored)
+		{
+			// Opened for reading only, nothing is lost.
+		}
+	}
+
+	/**
+	 * @return the compressed body if it is worth it, the content-encoding header is then set; otherwise {@code body}.
+	 */
+	private ByteBuf compress(Http2Headers headers, ByteBuf body)
+	{
+		if (compression == null || body == null || body.readableBytes() < COMPRESSION_THRESHOLD || headers.contains(CONTENT_ENCODING))
+		{
+			return body;
+		}
+
+		final ByteBuf compressed = BodyCompressor.compress(ByteBufAllocator.DEFAULT, body, compression, COMPRESSION_LEVEL);
+
+		if (compressed.readableBytes() >= body.readableBytes())
+		{
+			compressed.release();
+
+			return body;
+		}
+
+		body.release();
+
+		headers.set(CONTENT_ENCODING, compression.value());
+
+		headers.remove(CONTENT_LENGTH);
+
+		return compressed;
+	}
+
+	/**
+	 * Closes every pooled connection, requests still waiting for a stream fail.
+	 */
+	public void close()
+	{
+		for (Http2ConnectionPool pool : pools.values())
+		{
+			pool.close();
+		}
+
+		pools.clear();
+
+		deadlines.stop();
+	}
+
+	private Http2ConnectionPool pool(String host, int port)
+	{
+		// Left unresolved, the bootstrap resolves it on connect without blocking the caller.
+		final InetSocketAddress key = InetSocketAddress.createUnresolved(host, port);
+
+		Http2ConnectionPool pool = pools.get(key);
+
+		if (pool == null)
+		{
+			pool = pools.computeIfAbsent(key, k -> new Http2ConnectionPool(bootstrap, k,
+					MAX_CONNECTIONS_PER_HOST, MAX_STREAMS_PER_CONNECTION, MAX_PENDING_REQUESTS, PING_INTERVAL_MILLIS,
+					PING_TIMEOUT_MILLIS));
+		}
+
+		return pool;
+	}
+}
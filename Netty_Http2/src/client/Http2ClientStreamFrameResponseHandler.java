@@ -7,34 +7,84 @@ import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.SimpleChannelInboundHandler;
 import io.netty.handler.codec.http2.Http2DataFrame;
 import io.netty.handler.codec.http2.Http2HeadersFrame;
+import io.netty.handler.codec.http2.Http2ResetFrame;
 import io.netty.handler.codec.http2.Http2StreamFrame;
 import io.netty.util.CharsetUtil;
+import logging.AsyncLog;
+import logging.Level;
+import logging.Logger;
 
 /**
- * Handles all the streaming HTTP/2 frame responses.
+ * Handles all the streaming HTTP/2 frame responses of a single stream. Frames are logged asynchronously to the
+ * "client.frames" category, the response body only if the record is written. The response is complete with the frame
+ * that ends the stream, be it a data frame or a headers frame (a response without body, or trailers); a reset or closed
+ * stream ends the wait as well, unsuccessfully.
+ *
+ * <p> For the command-line client; {@link Http2Client} is the asynchronous client.
  * 
  * @author Puspesh.Prakash
  */
 public final class Http2ClientStreamFrameResponseHandler extends SimpleChannelInboundHandler<Http2StreamFrame>
 {
+	private static final Logger LOG = AsyncLog.logger("client.frames");
+
 	private final CountDownLatch latch = new CountDownLatch(1);
+
+	private volatile boolean failed;
 	
 	@Override
 	protected void channelRead0(ChannelHandlerContext ctx, Http2StreamFrame msg) throws Exception
 	{
-		System.out.println("\nReceived HTTP/2 stream frame: " + msg);
+		LOG.debug("Received HTTP/2 stream frame: {}", msg);
 
 		// isEndStream() is not from a common interface, so both must be checked.
 		if (msg instanceof Http2DataFrame && ((Http2DataFrame) msg).isEndStream())
 		{
+			LOG.payload(Level.INFO, ((Http2DataFrame) msg).content(), CharsetUtil.UTF_8, "Received data:");
+
 			latch.countDown();
-			
-			System.out.println("Received data: " + ((Http2DataFrame) msg).content().toString(CharsetUtil.UTF_8) + "\n");
 		} 
 		
 		else if (msg instanceof Http2HeadersFrame)
 		{			
-			System.out.println("Received headers: " + ((Http2HeadersFrame) msg).headers());
+			LOG.info("Received headers: {}", ((Http2HeadersFrame) msg).headers());
+
+			if (((Http2HeadersFrame) msg).isEndStream())
+			{
+				latch.countDown();
+			}
+		}
+	}
+
+	@Override
+	public void userEventTriggered(ChannelHandlerContext ctx, Object evt) throws Exception
+	{
+		if (evt instanceof Http2ResetFrame)
+		{
+			LOG.warn("Stream reset by peer: {}", ((Http2ResetFrame) evt).errorCode());
+
+			fail();
+		}
+
+		super.userEventTriggered(ctx, evt);
+	}
+
+	@Override
+	public void channelInactive(ChannelHandlerContext ctx) throws Exception
+	{
+		// A no-op once the response is complete.
+		fail();
+
+		super.channelInactive(ctx);
+	}
+
+	private void fail()
+	{
+		if (latch.getCount() > 0)
+		{
+			failed = true;
+
+			latch.countDown();
 		}
 	}
 
@@ -45,15 +95,34 @@ public final class Http2ClientStreamFrameResponseHandler extends SimpleChannelIn
 	 * @return true if a successful HTTP/2 end of stream message was received.
 	 */
 	public boolean responseSuccessfullyCompleted()
+	{
+		return responseSuccessfullyCompleted(5, TimeUnit.SECONDS);
+	}
+
+	/**
+	 * Waits for the latch to be decremented (i.e. for an end of stream message to
+	 * be received), or for the latch to expire after {@code timeout}.
+	 * 
+	 * @param timeout 0 (or less) to wait until the stream ends, is reset or closes, however long that takes.
+	 * @return true if a successful HTTP/2 end of stream message was received.
+	 */
+	public boolean responseSuccessfullyCompleted(long timeout, TimeUnit unit)
 	{
 		try
 		{
-			return latch.await(5, TimeUnit.SECONDS);
+			if (timeout <= 0)
+			{
+				latch.await();
+
+				return !failed;
+			}
+
+			return latch.await(timeout, unit) && !failed;
 		} 
 		
 		catch (InterruptedException ie)
 		{
-			System.err.println("Latch exception: " + ie.getMessage());
+			LOG.warn("Latch exception: {}", ie.getMessage());
 			
 			return false;
 		}
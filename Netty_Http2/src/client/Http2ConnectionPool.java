@@ -0,0 +1,710 @@
+package client;
+
+import static io.netty.util.internal.ObjectUtil.checkNotNull;
+import static io.netty.util.internal.ObjectUtil.checkPositive;
+
+import java.net.InetSocketAddress;
+import java.nio.channels.ClosedChannelException;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.handler.codec.http2.DefaultHttp2DataFrame;
+import io.netty.handler.codec.http2.DefaultHttp2HeadersFrame;
+import io.netty.handler.codec.http2.DefaultHttp2PingFrame;
+import io.netty.handler.codec.http2.Http2FrameCodec;
+import io.netty.handler.codec.http2.Http2GoAwayFrame;
+import io.netty.handler.codec.http2.Http2Headers;
+import io.netty.handler.codec.http2.Http2PingFrame;
+import io.netty.handler.codec.http2.Http2SettingsFrame;
+import io.netty.handler.codec.http2.Http2StreamChannel;
+import io.netty.handler.codec.http2.Http2StreamChannelBootstrap;
+import io.netty.util.ReferenceCountUtil;
+import io.netty.util.concurrent.ScheduledFuture;
+import batch.BatchFraming;
+import logging.AsyncLog;
+import logging.Logger;
+
+/**
+ * The HTTP/2 connections of an {@link Http2Client} to a single host. Every request gets a new
+ * {@link Http2StreamChannel} on the least-loaded connection, opened through the connection's cached
+ * {@link Http2StreamChannelBootstrap}. Another connection is opened once the least-loaded one gets close to its stream
+ * limit, which is the peer's SETTINGS_MAX_CONCURRENT_STREAMS capped by {@code maxStreamsPerConnection}. With all
+ * {@code maxConnections} connections at their limit, requests wait for a stream to complete. A new connection only
+ * takes streams once the peer's SETTINGS frame arrived.
+ *
+ * <p> Idle connections are health-checked with PING frames. A connection that does not acknowledge a PING within
+ * {@code pingTimeoutMillis}, closes, or receives GOAWAY is evicted: it takes no new streams while the streams already
+ * open on it run to completion.
+ *
+ * <p> A request that is completed while it waits for a stream (by its deadline, or cancelled) gives up its place; once its
+ * stream is open, completing it resets the stream, see {@link Http2ResponseHandler}.
+ *
+ * <p> Thread-safe, requests may be sent from any thread.
+ *
+ * @author Puspesh.Prakash
+ */
+final class Http2ConnectionPool
+{
+	/**
+	 * Share of a connection's stream limit from which another connection is opened.
+	 */
+	private static final float HIGH_LOAD_FACTOR = 0.75f;
+
+	private static final Logger LOG = AsyncLog.logger("client");
+
+	private final Bootstrap bootstrap;
+
+	private final InetSocketAddress remoteAddress;
+
+	private final int maxConnections;
+
+	private final int maxStreamsPerConnection;
+
+	private final int maxPendingAcquires;
+
+	private final long pingIntervalMillis;
+
+	private final long pingTimeoutMillis;
+
+	private final CopyOnWriteArrayList<PooledConnection> connections = new CopyOnWriteArrayList<>();
+
+	private final AtomicInteger connecting = new AtomicInteger();
+
+	private final Queue<CompletableFuture<PooledConnection>> pendingAcquires = new ConcurrentLinkedQueue<>();
+
+	private final AtomicInteger pendingAcquireCount = new AtomicInteger();
+
+	private volatile boolean closed;
+
+	/**
+	 * @param bootstrap configured with group, channel, options and an {@link Http2ClientFrameInitializer}, it is not
+	 *        modified.
+	 */
+	Http2ConnectionPool(Bootstrap bootstrap, InetSocketAddress remoteAddress, int maxConnections,
+			int maxStreamsPerConnection, int maxPendingAcquires, long pingIntervalMillis, long pingTimeoutMillis)
+	{
+		this.bootstrap = checkNotNull(bootstrap, "bootstrap");
+		this.remoteAddress = checkNotNull(remoteAddress, "remoteAddress");
+		this.maxConnections = checkPositive(maxConnections, "maxConnections");
+		this.maxStreamsPerConnection = checkPositive(maxStreamsPerConnection, "maxStreamsPerConnection");
+		this.maxPendingAcquires = checkPositive(maxPendingAcquires, "maxPendingAcquires");
+		this.pingIntervalMillis = checkPositive(pingIntervalMillis, "pingIntervalMillis");
+		this.pingTimeoutMillis = checkPositive(pingTimeoutMillis, "pingTimeoutMillis");
+	}
+
+	/**
+	 * Sends a request on a new stream. Ownership of {@code body} (may be null) passes to the pool.
+	 */
+	CompletableFuture<Http2Response> send(Http2Headers headers, ByteBuf body)
+	{
+		return send(headers, body, null);
+	}
+
+	/**
+	 * Sends a request on a new stream with a memory-mapped file as its body, which is released by the pool.
+	 */
+	CompletableFuture<Http2Response> send(Http2Headers headers, MappedFileBody fileBody)
+	{
+		return send(headers, null, fileBody);
+	}
+
+	private CompletableFuture<Http2Response> send(Http2Headers headers, ByteBuf body, MappedFileBody fileBody)
+	{
+		final CompletableFuture<Http2Response> response = new CompletableFuture<>();
+
+		final CompletableFuture<PooledConnection> acquired = new CompletableFuture<>();
+
+		acquired.whenComplete((connection, cause) ->
+		{
+			if (cause != null)
+			{
+				ReferenceCountUtil.release(body);
+
+				if (fileBody != null)
+				{
+					fileBody.release();
+				}
+
+				response.completeExceptionally(cause);
+			}
+
+			// Timed out or cancelled just as it got a stream, which goes to the next request instead.
+			else if (response.isDone())
+			{
+				ReferenceCountUtil.release(body);
+
+				if (fileBody != null)
+				{
+					fileBody.release();
+				}
+
+				connection.releaseStream();
+			}
+
+			else
+			{
+				connection.openStream(headers, body, fileBody, response);
+			}
+		});
+
+		response.whenComplete((r, cause) -> abandon(acquired));
+
+		acquire(acquired);
+
+		return response;
+	}
+
+	/**
+	 * Opens a long-lived event stream, see {@link Http2EventStream}. It holds its stream until it is closed.
+	 */
+	CompletableFuture<Http2EventStream> openEventStream(Http2Headers headers, BatchFraming framing)
+	{
+		final CompletableFuture<Http2EventStream> stream = new CompletableFuture<>();
+
+		final CompletableFuture<PooledConnection> acquired = new CompletableFuture<>();
+
+		acquired.whenComplete((connection, cause) ->
+		{
+			if (cause != null)
+			{
+				stream.completeExceptionally(cause);
+			}
+
+			else if (stream.isDone())
+			{
+				connection.releaseStream();
+			}
+
+			else
+			{
+				connection.openEventStream(headers, framing, stream);
+			}
+		});
+
+		stream.whenComplete((s, cause) -> abandon(acquired));
+
+		acquire(acquired);
+
+		return stream;
+	}
+
+	/**
+	 * @return the number of streams currently open over all connections.
+	 */
+	int activeStreams()
+	{
+		int streams = 0;
+
+		for (PooledConnection connection : connections)
+		{
+			streams += connection.activeStreams.get();
+		}
+
+		return streams;
+	}
+
+	int connections()
+	{
+		return connections.size();
+	}
+
+	/**
+	 * Closes every connection and fails the requests still waiting for a stream.
+	 */
+	void close()
+	{
+		closed = true;
+
+		for (PooledConnection connection : connections)
+		{
+			connection.channel.close();
+		}
+
+		failPendingAcquires(new IllegalStateException("Connection pool closed"));
+	}
+
+	/**
+	 * Reserves a stream on the least-loaded connection, opening another connection if that one is close to its limit.
+	 * Without any free stream the request waits in {@link #pendingAcquires}.
+	 *
+	 * @return false if the request has been completed meanwhile (timed out or cancelled), the stream reserved for it
+	 *         is given back then.
+	 */
+	private boolean acquire(CompletableFuture<PooledConnection> promise)
+	{
+		if (closed)
+		{
+			promise.completeExceptionally(new IllegalStateException("Connection pool closed"));
+
+			return true;
+		}
+
+		final PooledConnection leastLoaded = leastLoaded();
+
+		if (leastLoaded == null || leastLoaded.activeStreams.get() >= leastLoaded.maxStreams() * HIGH_LOAD_FACTOR)
+		{
+			connect();
+		}
+
+		if (leastLoaded != null && leastLoaded.tryReserve())
+		{
+			if (!promise.complete(leastLoaded))
+			{
+				leastLoaded.activeStreams.decrementAndGet();
+
+				return false;
+			}
+
+			return true;
+		}
+
+		if (pendingAcquireCount.incrementAndGet() > maxPendingAcquires)
+		{
+			pendingAcquireCount.decrementAndGet();
+
+			promise.completeExceptionally(new RejectedExecutionException("Too many requests waiting for a stream to "
+					+ remoteAddress));
+
+			return true;
+		}
+
+		pendingAcquires.add(promise);
+
+		// A stream may have completed (or a connection come up) between the attempt above and enqueueing.
+		if (hasCapacity())
+		{
+			runPendingAcquire();
+		}
+
+		return true;
+	}
+
+	/**
+	 * Hands the next waiting request a stream, if any request is waiting. The requests completed while they waited
+	 * are dropped in the same loop, not handed a stream that their completion would give back (and hand on) again.
+	 */
+	private void runPendingAcquire()
+	{
+		CompletableFuture<PooledConnection> promise;
+
+		while ((promise = pendingAcquires.poll()) != null)
+		{
+			pendingAcquireCount.decrementAndGet();
+
+			if (!promise.isDone() && acquire(promise))
+			{
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Gives up the place of a request completed (timed out or cancelled) while it waits for a stream, so that it does
+	 * not hold one of the {@code maxPendingAcquires} slots until its turn comes.
+	 */
+	private void abandon(CompletableFuture<PooledConnection> promise)
+	{
+		if (promise.cancel(false) && pendingAcquires.remove(promise))
+		{
+			pendingAcquireCount.decrementAndGet();
+		}
+	}
+
+	private void failPendingAcquires(Throwable cause)
+	{
+		CompletableFuture<PooledConnection> promise;
+
+		while ((promise = pendingAcquires.poll()) != null)
+		{
+			pendingAcquireCount.decrementAndGet();
+
+			promise.completeExceptionally(cause);
+		}
+	}
+
+	private PooledConnection leastLoaded()
+	{
+		PooledConnection leastLoaded = null;
+
+		for (PooledConnection connection : connections)
+		{
+			if (connection.isUsable()
+					&& (leastLoaded == null || connection.activeStreams.get() < leastLoaded.activeStreams.get()))
+			{
+				leastLoaded = connection;
+			}
+		}
+
+		return leastLoaded;
+	}
+
+	private boolean hasCapacity()
+	{
+		for (PooledConnection connection : connections)
+		{
+			if (connection.isUsable() && connection.activeStreams.get() < connection.maxStreams())
+			{
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Opens another connection unless the pool is full or a connection is being opened already.
+	 */
+	private void connect()
+	{
+		if (connections.size() + connecting.get() >= maxConnections || !connecting.compareAndSet(0, 1))
+		{
+			return;
+		}
+
+		bootstrap.connect(remoteAddress).addListener((ChannelFutureListener) this::onConnected);
+	}
+
+	private void onConnected(ChannelFuture future)
+	{
+		if (!future.isSuccess())
+		{
+			onConnectFailed(future.cause());
+		}
+
+		else if (closed)
+		{
+			future.channel().close();
+		}
+
+		else
+		{
+			// Joins the pool once the peer's SETTINGS arrived, see onReady().
+			new PooledConnection(future.channel());
+		}
+	}
+
+	/**
+	 * Adds a connection whose peer sent its SETTINGS, and hands it as many waiting requests as it takes.
+	 */
+	private void onReady(PooledConnection connection)
+	{
+		connections.add(connection);
+
+		connecting.decrementAndGet();
+
+		if (closed)
+		{
+			connection.channel.close();
+
+			return;
+		}
+
+		for (int i = connection.maxStreams(); i > 0 && !pendingAcquires.isEmpty(); i--)
+		{
+			runPendingAcquire();
+		}
+	}
+
+	private void onConnectFailed(Throwable cause)
+	{
+		connecting.decrementAndGet();
+
+		// Nothing left to wait for, fail the waiting requests instead of letting them hang.
+		if (!hasCapacity())
+		{
+			failPendingAcquires(cause);
+		}
+	}
+
+	private void evict(PooledConnection connection)
+	{
+		if (connections.remove(connection) && !pendingAcquires.isEmpty())
+		{
+			// Let the waiting requests open a replacement connection.
+			runPendingAcquire();
+		}
+	}
+
+	/**
+	 * A pooled HTTP/2 connection with its stream bootstrap and the count of its open streams.
+	 */
+	private final class PooledConnection
+	{
+		private final Channel channel;
+
+		private final Http2FrameCodec codec;
+
+		private final Http2StreamChannelBootstrap streamBootstrap;
+
+		private final AtomicInteger activeStreams = new AtomicInteger();
+
+		private volatile boolean goAwayReceived;
+
+		/**
+		 * Set on the event loop once the peer's SETTINGS arrived and the connection joined the pool.
+		 */
+		private boolean ready;
+
+		/**
+		 * Written and read on the event loop of the connection only.
+		 */
+		private ScheduledFuture<?> pingTimeout;
+
+		private long lastActivityNanos = System.nanoTime();
+
+		PooledConnection(Channel channel)
+		{
+			this.channel = channel;
+			this.codec = channel.pipeline().get(Http2FrameCodec.class);
+			this.streamBootstrap = new Http2StreamChannelBootstrap(channel);
+
+			channel.pipeline().addLast(new ConnectionHandler());
+
+			final ScheduledFuture<?> pingTask = channel.eventLoop().scheduleWithFixedDelay(this::ping,
+					pingIntervalMillis, pingIntervalMillis, TimeUnit.MILLISECONDS);
+
+			channel.closeFuture().addListener(f ->
+			{
+				pingTask.cancel(false);
+
+				if (ready)
+				{
+					evict(this);
+				}
+
+				else
+				{
+					onConnectFailed(new ClosedChannelException());
+				}
+			});
+		}
+
+		boolean isUsable()
+		{
+			return channel.isActive() && !goAwayReceived;
+		}
+
+		/**
+		 * @return the stream limit of this connection, the peer's SETTINGS_MAX_CONCURRENT_STREAMS capped by the pool.
+		 */
+		int maxStreams()
+		{
+			return Math.min(maxStreamsPerConnection, codec.connection().local().maxActiveStreams());
+		}
+
+		boolean tryReserve()
+		{
+			for (;;)
+			{
+				final int streams = activeStreams.get();
+
+				if (streams >= maxStreams())
+				{
+					return false;
+				}
+
+				if (activeStreams.compareAndSet(streams, streams + 1))
+				{
+					return true;
+				}
+			}
+		}
+
+		/**
+		 * Opens a stream on the stream reserved by {@link #tryReserve()} and writes the request to it. The body is
+		 * either {@code body} or {@code fileBody}, which writes itself as the stream becomes writable.
+		 */
+		void openStream(Http2Headers headers, ByteBuf body, MappedFileBody fileBody, CompletableFuture<Http2Response> response)
+		{
+			streamBootstrap.open().addListener(future ->
+			{
+				if (!future.isSuccess())
+				{
+					ReferenceCountUtil.release(body);
+
+					if (fileBody != null)
+					{
+						fileBody.release();
+					}
+
+					releaseStream();
+
+					response.completeExceptionally(future.cause());
+
+					return;
+				}
+
+				final Http2StreamChannel streamChannel = (Http2StreamChannel) future.getNow();
+
+				streamChannel.closeFuture().addListener(f -> releaseStream());
+
+				streamChannel.pipeline().addLast(new Http2ResponseHandler(response));
+
+				if (fileBody != null)
+				{
+					streamChannel.pipeline().addLast(fileBody);
+
+					streamChannel.write(new DefaultHttp2HeadersFrame(headers, false));
+
+					fileBody.start(streamChannel);
+
+					return;
+				}
+
+				final boolean hasBody = body != null && body.isReadable();
+
+				streamChannel.write(new DefaultHttp2HeadersFrame(headers, !hasBody));
+
+				if (hasBody)
+				{
+					streamChannel.write(new DefaultHttp2DataFrame(body, true));
+				}
+
+				else
+				{
+					ReferenceCountUtil.release(body);
+				}
+
+				streamChannel.flush();
+			});
+		}
+
+		/**
+		 * Opens an event stream on the stream reserved by {@link #tryReserve()}, its headers leave the stream open.
+		 */
+		void openEventStream(Http2Headers headers, BatchFraming framing, CompletableFuture<Http2EventStream> stream)
+		{
+			streamBootstrap.open().addListener(future ->
+			{
+				if (!future.isSuccess())
+				{
+					releaseStream();
+
+					stream.completeExceptionally(future.cause());
+
+					return;
+				}
+
+				final Http2StreamChannel streamChannel = (Http2StreamChannel) future.getNow();
+
+				streamChannel.closeFuture().addListener(f -> releaseStream());
+
+				final Http2EventStream eventStream = new Http2EventStream(streamChannel, framing);
+
+				streamChannel.writeAndFlush(new DefaultHttp2HeadersFrame(headers, false));
+
+				stream.complete(eventStream);
+			});
+		}
+
+		private void releaseStream()
+		{
+			activeStreams.decrementAndGet();
+
+			lastActivityNanos = System.nanoTime();
+
+			runPendingAcquire();
+		}
+
+		/**
+		 * Sends a PING if the connection has been idle for a ping interval, and evicts the connection if the previous
+		 * one is still unacknowledged.
+		 */
+		private void ping()
+		{
+			if (!channel.isActive() || pingTimeout != null)
+			{
+				return;
+			}
+
+			if (activeStreams.get() > 0
+					|| System.nanoTime() - lastActivityNanos < TimeUnit.MILLISECONDS.toNanos(pingIntervalMillis))
+			{
+				return;
+			}
+
+			channel.writeAndFlush(new DefaultHttp2PingFrame(System.nanoTime()));
+
+			pingTimeout = channel.eventLoop().schedule(() ->
+			{
+				LOG.warn("PING not acknowledged within {} ms by {}, closing the connection.", pingTimeoutMillis, remoteAddress);
+
+				evict(this);
+
+				channel.close();
+			}, pingTimeoutMillis, TimeUnit.MILLISECONDS);
+		}
+
+		/**
+		 * Sits behind the multiplex handler and consumes the connection-level frames the pool cares about.
+		 */
+		private final class ConnectionHandler extends ChannelInboundHandlerAdapter
+		{
+			@Override
+			public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception
+			{
+				if (msg instanceof Http2SettingsFrame)
+				{
+					// The client preface has been written and the stream limit is known, streams can be opened now.
+					if (!ready)
+					{
+						ready = true;
+
+						onReady(PooledConnection.this);
+					}
+
+					ReferenceCountUtil.release(msg);
+				}
+
+				else if (msg instanceof Http2PingFrame && ((Http2PingFrame) msg).ack())
+				{
+					if (pingTimeout != null)
+					{
+						pingTimeout.cancel(false);
+
+						pingTimeout = null;
+					}
+
+					lastActivityNanos = System.nanoTime();
+
+					ReferenceCountUtil.release(msg);
+				}
+
+				else if (msg instanceof Http2GoAwayFrame)
+				{
+					// Streams up to the last stream id still complete, new ones have to go elsewhere.
+					goAwayReceived = true;
+
+					evict(PooledConnection.this);
+
+					ReferenceCountUtil.release(msg);
+				}
+
+				else
+				{
+					ctx.fireChannelRead(msg);
+				}
+			}
+
+			@Override
+			public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) throws Exception
+			{
+				LOG.warn("HTTP/2 connection to {} failed: {}", remoteAddress, cause);
+
+				ctx.close();
+			}
+		}
+	}
+}
@@ -0,0 +1,330 @@
+package client;
+
+import static io.netty.util.internal.ObjectUtil.checkNotNull;
+
+import java.nio.channels.ClosedChannelException;
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.handler.codec.http2.DefaultHttp2DataFrame;
+import io.netty.handler.codec.http2.Http2DataFrame;
+import io.netty.handler.codec.http2.Http2HeadersFrame;
+import io.netty.handler.codec.http2.Http2ResetFrame;
+import io.netty.handler.codec.http2.Http2StreamChannel;
+import io.netty.handler.codec.http2.Http2StreamFrame;
+import io.netty.util.ReferenceCountUtil;
+import batch.BatchEncoder;
+import batch.BatchFraming;
+import batch.BatchStatus;
+
+/**
+ * A long-lived, full-duplex HTTP/2 stream as opened by {@link Http2Client#openEventStream}: every {@link #send} writes
+ * one event as a data frame without END_STREAM, and the server acknowledges the events on the same stream as it reads
+ * them, with one {@link BatchStatus} byte per event in the order they were sent. A single stream thus carries any
+ * number of events, each acknowledged without a stream (or a round of HEADERS) of its own.
+ *
+ * <p> The stream counts against its connection's stream limit until it is closed. Events are framed as the server's
+ * duplex route expects (see {@link BatchFraming}) and are not compressed.
+ *
+ * <p> Thread-safe, events may be sent from any thread; they are written and the acknowledgements are completed on the
+ * event loop of the stream. A sender should respect {@link #isWritable()}, the stream's flow-control window, instead of
+ * queueing events without bound.
+ *
+ * @author Puspesh.Prakash
+ */
+public final class Http2EventStream
+{
+	private final Http2StreamChannel channel;
+
+	private final BatchFraming framing;
+
+	/**
+	 * The acknowledgements of the events sent but not acknowledged yet, in order. Event loop only, as are the fields
+	 * below.
+	 */
+	private final ArrayDeque<CompletableFuture<BatchStatus>> pending = new ArrayDeque<>();
+
+	private final CompletableFuture<Void> closeFuture = new CompletableFuture<>();
+
+	/**
+	 * Whether END_STREAM has been sent, no events can be sent any more.
+	 */
+	private boolean ended;
+
+	private Throwable failure;
+
+	Http2EventStream(Http2StreamChannel channel, BatchFraming framing)
+	{
+		this.channel = checkNotNull(channel, "channel");
+		this.framing = checkNotNull(framing, "framing");
+
+		channel.pipeline().addLast(new AckHandler());
+	}
+
+	/**
+	 * Sends an event, ownership of {@code event} passes to the stream.
+	 *
+	 * @return completed with the status of the event once the server has read it, or failed if the stream fails
+	 *         before that.
+	 */
+	public CompletableFuture<BatchStatus> send(ByteBuf event)
+	{
+		final CompletableFuture<BatchStatus> ack = new CompletableFuture<>();
+
+		final BatchEncoder encoder = new BatchEncoder(channel.alloc(), framing);
+
+		final ByteBuf frame;
+
+		try
+		{
+			frame = encoder.add(event).finish();
+		}
+
+		catch (IllegalArgumentException e)
+		{
+			encoder.release();
+
+			ack.completeExceptionally(e);
+
+			return ack;
+		}
+
+		finally
+		{
+			event.release();
+		}
+
+		execute(() -> write(frame, ack), () ->
+		{
+			frame.release();
+
+			ack.completeExceptionally(new RejectedExecutionException("Event loop shut down"));
+		});
+
+		return ack;
+	}
+
+	/**
+	 * @return true if the stream's flow-control window takes more events without buffering them locally.
+	 */
+	public boolean isWritable()
+	{
+		return channel.isWritable();
+	}
+
+	/**
+	 * Ends the stream once the events sent so far are written.
+	 *
+	 * @return completed once the server has acknowledged every event and ended the stream too.
+	 */
+	public CompletableFuture<Void> close()
+	{
+		execute(() ->
+		{
+			if (!ended && failure == null)
+			{
+				ended = true;
+
+				channel.writeAndFlush(new DefaultHttp2DataFrame(Unpooled.EMPTY_BUFFER, true));
+			}
+		}, () -> fail(new RejectedExecutionException("Event loop shut down")));
+
+		return closeFuture;
+	}
+
+	/**
+	 * @return completed once the stream has ended, failed if it was reset or refused.
+	 */
+	public CompletableFuture<Void> closeFuture()
+	{
+		return closeFuture;
+	}
+
+	private void execute(Runnable task, Runnable onRejected)
+	{
+		if (channel.eventLoop().inEventLoop())
+		{
+			task.run();
+
+			return;
+		}
+
+		try
+		{
+			channel.eventLoop().execute(task);
+		}
+
+		catch (RejectedExecutionException e)
+		{
+			onRejected.run();
+		}
+	}
+
+	private void write(ByteBuf frame, CompletableFuture<BatchStatus> ack)
+	{
+		if (failure != null || ended)
+		{
+			frame.release();
+
+			ack.completeExceptionally(failure != null ? failure : new IllegalStateException("Event stream closed"));
+
+			return;
+		}
+
+		pending.add(ack);
+
+		channel.writeAndFlush(new DefaultHttp2DataFrame(frame, false)).addListener(future ->
+		{
+			if (!future.isSuccess())
+			{
+				fail(future.cause());
+			}
+		});
+	}
+
+	/**
+	 * Fails every unacknowledged event and the stream, on the event loop.
+	 */
+	private void fail(Throwable cause)
+	{
+		if (failure == null)
+		{
+			failure = cause;
+		}
+
+		CompletableFuture<BatchStatus> ack;
+
+		while ((ack = pending.poll()) != null)
+		{
+			ack.completeExceptionally(cause);
+		}
+
+		closeFuture.completeExceptionally(cause);
+	}
+
+	/**
+	 * Matches the status bytes sent back by the server with the pending events.
+	 */
+	private final class AckHandler extends ChannelInboundHandlerAdapter
+	{
+		@Override
+		public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception
+		{
+			if (!(msg instanceof Http2StreamFrame))
+			{
+				ctx.fireChannelRead(msg);
+
+				return;
+			}
+
+			try
+			{
+				if (msg instanceof Http2HeadersFrame)
+				{
+					onHeaders(ctx, (Http2HeadersFrame) msg);
+				}
+
+				else if (msg instanceof Http2DataFrame)
+				{
+					onData((Http2DataFrame) msg);
+				}
+			}
+
+			finally
+			{
+				ReferenceCountUtil.release(msg);
+			}
+		}
+
+		@Override
+		public void userEventTriggered(ChannelHandlerContext ctx, Object evt) throws Exception
+		{
+			if (evt instanceof Http2ResetFrame)
+			{
+				fail(new IllegalStateException("Stream reset by peer: " + ((Http2ResetFrame) evt).errorCode()));
+			}
+
+			super.userEventTriggered(ctx, evt);
+		}
+
+		@Override
+		public void channelInactive(ChannelHandlerContext ctx) throws Exception
+		{
+			fail(new ClosedChannelException());
+
+			super.channelInactive(ctx);
+		}
+
+		@Override
+		public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause)
+		{
+			fail(cause);
+
+			ctx.close();
+		}
+
+		private void onHeaders(ChannelHandlerContext ctx, Http2HeadersFrame headers)
+		{
+			final CharSequence status = headers.headers().status();
+
+			// Informational (1xx) headers are followed by the actual response headers, trailers carry no status.
+			if (status != null && !"200".contentEquals(status) && status.charAt(0) != '1')
+			{
+				fail(new IllegalStateException("Event stream refused: " + status));
+
+				if (!headers.isEndStream())
+				{
+					ctx.close();
+				}
+
+				return;
+			}
+
+			if (headers.isEndStream())
+			{
+				onEnd();
+			}
+		}
+
+		private void onData(Http2DataFrame data)
+		{
+			final ByteBuf statuses = data.content();
+
+			while (statuses.isReadable())
+			{
+				final CompletableFuture<BatchStatus> ack = pending.poll();
+
+				if (ack == null)
+				{
+					fail(new IllegalStateException("More acknowledgements than events"));
+
+					return;
+				}
+
+				ack.complete(BatchStatus.of(statuses.readByte()));
+			}
+
+			if (data.isEndStream())
+			{
+				onEnd();
+			}
+		}
+
+		private void onEnd()
+		{
+			if (!pending.isEmpty())
+			{
+				fail(new IllegalStateException("Stream ended with " + pending.size() + " unacknowledged event(s)"));
+
+				return;
+			}
+
+			closeFuture.complete(null);
+		}
+	}
+}
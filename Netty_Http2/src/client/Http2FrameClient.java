@@ -1,14 +1,20 @@
 package client;
 
 import static io.netty.buffer.Unpooled.wrappedBuffer;
+import static io.netty.handler.codec.http.HttpHeaderNames.CONTENT_LENGTH;
+import static io.netty.handler.codec.http.HttpHeaderNames.CONTENT_TYPE;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
 
 import io.netty.bootstrap.Bootstrap;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelOption;
 import io.netty.channel.EventLoopGroup;
 import io.netty.channel.WriteBufferWaterMark;
-import io.netty.channel.nio.NioEventLoopGroup;
-import io.netty.channel.socket.nio.NioSocketChannel;
 import io.netty.handler.codec.http2.DefaultHttp2DataFrame;
 import io.netty.handler.codec.http2.DefaultHttp2Headers;
 import io.netty.handler.codec.http2.DefaultHttp2HeadersFrame;
@@ -27,11 +33,18 @@ import io.netty.handler.ssl.SslContextBuilder;
 import io.netty.handler.ssl.SslProvider;
 import io.netty.handler.ssl.SupportedCipherSuiteFilter;
 import io.netty.handler.ssl.util.InsecureTrustManagerFactory;
+import transport.TransportConfig;
 
 /**
  * An HTTP2 client that allows to send HTTP2 frames to a server using the
  * newer HTTP2 approach (via {@link io.netty.handler.codec.http2.Http2FrameCodec}). When run from the
- * command-line, sends a single headers frame (with prior knowledge) to the server configured at host:port/path.
+ * command-line, sends a single POST request (with prior knowledge) to the server configured at host:port/path; with
+ * {@code -Dfile=path} its body is that file, memory-mapped and sent zero-copy (see {@link MappedFileBody}), e.g. to
+ * replay captured events to {@code /batch} with {@code -DcontentType=application/x-ndjson}. The client waits
+ * {@code -DresponseTimeout} seconds for the response (default 5), with a file until the stream ends however long the
+ * upload takes, unless a timeout is set.
+ * The socket transport and options are picked by {@link TransportConfig}.
+ * Started with the {@code load} argument it runs as {@link Http2LoadGenerator} instead.
  * 
  * @author Puspesh.Prakash
  */
@@ -41,17 +54,29 @@ public final class Http2FrameClient
 	static final String HOST = System.getProperty("host", "127.0.0.1");
 	static final int PORT = Integer.parseInt(System.getProperty("port", SSL ? "8443" : "8089"));
 	static final String PATH = System.getProperty("path", "/");
+	static final String FILE = System.getProperty("file");
+	static final String CONTENT_TYPE_VALUE = System.getProperty("contentType");
+	// Seconds, 0 waits until the stream ends; a file is sent at the pace of the flow-control window, so it waits by default.
+	static final long RESPONSE_TIMEOUT = Long.getLong("responseTimeout", FILE != null ? 0 : 5);
+	static final TransportConfig TRANSPORT = TransportConfig.fromSystemProperties();
 
 	private Http2FrameClient(){}
 
 	public static void main(String[] args) throws Exception
 	{
+		if (args.length > 0 && "load".equals(args[0]))
+		{
+			Http2LoadGenerator.main(args);
+			
+			return;
+		}
+		
 		new Http2FrameClient().initiateClient();
 	}
 	
 	public void initiateClient() throws Exception
 	{
-		final EventLoopGroup clientWorkerGroup = new NioEventLoopGroup();
+		final EventLoopGroup clientWorkerGroup = TRANSPORT.transport().newEventLoopGroup(0);
 		
 		final SslContext sslCtx;
 		
@@ -80,13 +105,14 @@ public final class Http2FrameClient
 			final Bootstrap b = new Bootstrap();
 			
 			b.group(clientWorkerGroup)
-			 .channel(NioSocketChannel.class)
 			 .option(ChannelOption.SO_KEEPALIVE, true)
              .option(ChannelOption.SO_SNDBUF, 5242880) //5 MB
              .option(ChannelOption.SO_RCVBUF, 5242880) //5 MB
              .option(ChannelOption.WRITE_BUFFER_WATER_MARK, new WriteBufferWaterMark(3145728, 5242880)) //(low: 3 MB, high: 5 MB)
 			 .remoteAddress(HOST, PORT)
 			 .handler(new Http2ClientFrameInitializer(sslCtx));
+			
+			TRANSPORT.configure(b);
 
 			final Channel channel = b.connect().syncUninterruptibly().channel();
 			
@@ -100,12 +126,20 @@ public final class Http2FrameClient
 			
 			streamChannel.pipeline().addLast(streamFrameResponseHandler);
 			
-			new Http2FrameClient().sendPOSTRequest(streamChannel);
+			if (FILE != null)
+			{
+				new Http2FrameClient().sendPOSTRequest(streamChannel, FileChannel.open(Paths.get(FILE), StandardOpenOption.READ));
+			}
+
+			else
+			{
+				new Http2FrameClient().sendPOSTRequest(streamChannel);
+			}
 			
 			System.out.println("HTTP/2 POST request sent to the server.");
 
 			// Wait for the responses (or for the latch to expire), then clean up the connections
-			if (!streamFrameResponseHandler.responseSuccessfullyCompleted())
+			if (!streamFrameResponseHandler.responseSuccessfullyCompleted(RESPONSE_TIMEOUT, TimeUnit.SECONDS))
 			{
 				System.err.println("Did not get HTTP/2 response in expected time.");
 			}
@@ -157,10 +191,51 @@ public final class Http2FrameClient
 		
 		streamChannel.writeAndFlush(headersFrame);	
 		
-		String requestJson = "{\"array\":[1,7],\"http2\":true,\"type\":\"json\",\"version\":4,\"object\":{\"a\":\"b\",\"c\":\"d\"},\"title\":\"Netty Http2 Client & Server!\"}";
+		final String requestJson = "{\"array\":[1,7],\"http2\":true,\"type\":\"json\",\"version\":4,\"object\":{\"a\":\"b\",\"c\":\"d\"},\"title\":\"Netty Http2 Client & Server!\"}";
 		
 		final Http2DataFrame dataFrame = new DefaultHttp2DataFrame(wrappedBuffer(requestJson.getBytes()), true);
 		
 		streamChannel.writeAndFlush(dataFrame);
 	}
+
+	/**
+	 * Send request (HTTP/2 headers frame - with ':method = POST' and the content of {@code file} as memory-mapped data
+	 * frames, as fast as the stream's flow-control window allows)
+	 *
+	 * @param streamChannel
+	 * @param file owned (and closed) by the request.
+	 */
+	void sendPOSTRequest(Http2StreamChannel streamChannel, FileChannel file) throws IOException
+	{
+		final long length = file.size();
+
+		final DefaultHttp2Headers headers = new DefaultHttp2Headers();
+
+		headers.method("POST");
+		headers.path(PATH);
+		headers.scheme(SSL ? "https" : "http");
+		headers.setLong(CONTENT_LENGTH, length);
+
+		if (CONTENT_TYPE_VALUE != null)
+		{
+			headers.set(CONTENT_TYPE, CONTENT_TYPE_VALUE);
+		}
+
+		if (length == 0)
+		{
+			file.close();
+
+			streamChannel.writeAndFlush(new DefaultHttp2HeadersFrame(headers, true));
+
+			return;
+		}
+
+		final MappedFileBody body = new MappedFileBody(file, length);
+
+		streamChannel.pipeline().addLast(body);
+
+		streamChannel.write(new DefaultHttp2HeadersFrame(headers));
+
+		streamChannel.eventLoop().execute(() -> body.start(streamChannel));
+	}
 }
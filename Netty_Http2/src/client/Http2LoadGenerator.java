@@ -0,0 +1,445 @@
+package client;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.HdrHistogram.Histogram;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.handler.codec.http2.DefaultHttp2DataFrame;
+import io.netty.handler.codec.http2.DefaultHttp2Headers;
+import io.netty.handler.codec.http2.DefaultHttp2HeadersFrame;
+import io.netty.handler.codec.http2.Http2DataFrame;
+import io.netty.handler.codec.http2.Http2FrameCodec;
+import io.netty.handler.codec.http2.Http2Headers;
+import io.netty.handler.codec.http2.Http2HeadersFrame;
+import io.netty.handler.codec.http2.Http2StreamChannel;
+import io.netty.handler.codec.http2.Http2StreamChannelBootstrap;
+import io.netty.handler.codec.http2.Http2StreamFrame;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.GenericFutureListener;
+import transport.TransportConfig;
+
+/**
+ * Load-generator mode of {@link Http2FrameClient}: opens {@code connections} HTTP/2 connections and keeps up to
+ * {@code streams} concurrent streams open on each (bounded by the peer's SETTINGS_MAX_CONCURRENT_STREAMS), every stream
+ * posting one event of {@code payloadSize} bytes.
+ *
+ * <p> With a target {@code rate} the load is open-loop: requests are due at fixed intervals whether or not earlier ones
+ * completed, and latency is measured from the time a request was due rather than from when it could be sent. That way
+ * a stalled server shows up in the latency distribution instead of silently lowering the rate (coordinated omission).
+ * With {@code rate=0} every connection sends as fast as its streams complete (closed-loop).
+ *
+ * <p> The run ends after {@code requests} requests or {@code duration} seconds, whichever comes first, and prints the
+ * throughput and the HdrHistogram latency distribution.
+ *
+ * <p> System properties: host, port, path, connections (default 4), streams (default 100), requests (default 100000),
+ * duration (seconds, default 0 = unlimited), rate (requests/s over all connections, default 0 = closed-loop),
+ * payloadSize (bytes, default 256), plus the {@link TransportConfig} properties.
+ *
+ * @author Puspesh.Prakash
+ */
+public final class Http2LoadGenerator
+{
+	static final int CONNECTIONS = Integer.getInteger("connections", 4);
+	static final int STREAMS = Integer.getInteger("streams", 100);
+	static final long REQUESTS = Long.getLong("requests", 100000);
+	static final long DURATION_SECONDS = Long.getLong("duration", 0);
+	static final long RATE = Long.getLong("rate", 0);
+	static final int PAYLOAD_SIZE = Integer.getInteger("payloadSize", 256);
+
+	/**
+	 * Interval in which the open-loop schedule enqueues the requests that became due.
+	 */
+	private static final long TICK_MICROS = 100;
+
+	/**
+	 * Highest latency tracked by the histograms, higher values are clamped.
+	 */
+	private static final long MAX_LATENCY_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+	private final Http2Headers headers;
+
+	private final ByteBuf payload;
+
+	private final long deadlineNanos;
+
+	private final CountDownLatch finished = new CountDownLatch(CONNECTIONS);
+
+	private Http2LoadGenerator()
+	{
+		headers = new DefaultHttp2Headers().method("POST").path(Http2FrameClient.PATH).scheme("http");
+
+		final byte[] bytes = new byte[PAYLOAD_SIZE];
+
+		Arrays.fill(bytes, (byte) 'x');
+
+		payload = Unpooled.unreleasableBuffer(Unpooled.directBuffer(PAYLOAD_SIZE).writeBytes(bytes));
+
+		deadlineNanos = DURATION_SECONDS > 0 ? System.nanoTime() + TimeUnit.SECONDS.toNanos(DURATION_SECONDS) : Long.MAX_VALUE;
+	}
+
+	public static void main(String[] args) throws Exception
+	{
+		new Http2LoadGenerator().run();
+	}
+
+	private void run() throws Exception
+	{
+		final TransportConfig transportConfig = Http2FrameClient.TRANSPORT;
+
+		final EventLoopGroup group = transportConfig.transport().newEventLoopGroup(0);
+
+		final List<LoadConnection> connections = new ArrayList<>(CONNECTIONS);
+
+		try
+		{
+			final Bootstrap b = new Bootstrap();
+
+			b.group(group)
+			 .option(ChannelOption.SO_KEEPALIVE, true)
+			 .remoteAddress(Http2FrameClient.HOST, Http2FrameClient.PORT)
+			 .handler(new Http2ClientFrameInitializer(null));
+
+			transportConfig.configure(b);
+
+			for (int i = 0; i < CONNECTIONS; i++)
+			{
+				final long quota = REQUESTS / CONNECTIONS + (i < REQUESTS % CONNECTIONS ? 1 : 0);
+
+				connections.add(new LoadConnection(b.connect().syncUninterruptibly().channel(), quota));
+			}
+
+			System.out.println("Connected " + CONNECTIONS + " connection(s) to [" + Http2FrameClient.HOST + ':' + Http2FrameClient.PORT
+					+ "] with " + transportConfig + ", streams: " + STREAMS + ", rate: " + (RATE > 0 ? RATE + "/s" : "closed-loop")
+					+ ", payload: " + PAYLOAD_SIZE + " bytes");
+
+			final long start = System.nanoTime();
+
+			for (LoadConnection connection : connections)
+			{
+				connection.start(start);
+			}
+
+			finished.await();
+
+			final long elapsedNanos = System.nanoTime() - start;
+
+			report(connections, elapsedNanos);
+		}
+
+		finally
+		{
+			for (LoadConnection connection : connections)
+			{
+				connection.channel.close();
+			}
+
+			group.shutdownGracefully();
+		}
+	}
+
+	private static void report(List<LoadConnection> connections, long elapsedNanos)
+	{
+		final Histogram latency = new Histogram(MAX_LATENCY_NANOS, 3);
+
+		long completed = 0;
+
+		long errors = 0;
+
+		for (LoadConnection connection : connections)
+		{
+			latency.add(connection.latency);
+
+			completed += connection.completed;
+
+			errors += connection.errors;
+		}
+
+		final double seconds = elapsedNanos / 1e9;
+
+		System.out.println();
+		System.out.printf("Requests: %d completed, %d errors in %.2f s%n", completed, errors, seconds);
+		System.out.printf("Throughput: %.1f requests/s%n", completed / seconds);
+		System.out.printf("Latency (us): p50=%.1f p90=%.1f p99=%.1f p99.9=%.1f max=%.1f%n",
+				latency.getValueAtPercentile(50) / 1e3, latency.getValueAtPercentile(90) / 1e3,
+				latency.getValueAtPercentile(99) / 1e3, latency.getValueAtPercentile(99.9) / 1e3,
+				latency.getMaxValue() / 1e3);
+		System.out.println();
+
+		latency.outputPercentileDistribution(System.out, 1000.0);
+	}
+
+	/**
+	 * The load of one connection. Everything except {@link #start(long)} runs on the connection's event loop, so no
+	 * field needs synchronization.
+	 */
+	private final class LoadConnection
+	{
+		final Channel channel;
+
+		final Http2StreamChannelBootstrap streamChannelBootstrap;
+
+		final Histogram latency = new Histogram(MAX_LATENCY_NANOS, 3);
+
+		/**
+		 * Due times of requests that are waiting for a free stream (open-loop only).
+		 */
+		private final ArrayDeque<Long> due = new ArrayDeque<>();
+
+		private final long quota;
+
+		private final long intervalNanos;
+
+		private long nextDueNanos;
+
+		private long issued;
+
+		private int inFlight;
+
+		long completed;
+
+		long errors;
+
+		private boolean done;
+
+		private ScheduledFuture<?> schedule;
+
+		LoadConnection(Channel channel, long quota)
+		{
+			this.channel = channel;
+			this.streamChannelBootstrap = new Http2StreamChannelBootstrap(channel);
+			this.quota = quota;
+			this.intervalNanos = RATE > 0 ? Math.max(1, TimeUnit.SECONDS.toNanos(1) * CONNECTIONS / RATE) : 0;
+		}
+
+		void start(final long startNanos)
+		{
+			channel.eventLoop().execute(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					nextDueNanos = startNanos;
+
+					if (intervalNanos > 0)
+					{
+						schedule = channel.eventLoop().scheduleAtFixedRate(LoadConnection.this::tick, 0, TICK_MICROS, TimeUnit.MICROSECONDS);
+					}
+
+					else
+					{
+						drain();
+					}
+				}
+			});
+		}
+
+		/**
+		 * Open-loop schedule: enqueues every request that became due since the last tick.
+		 */
+		private void tick()
+		{
+			final long now = System.nanoTime();
+
+			while (nextDueNanos <= now && mayIssue(now))
+			{
+				due.add(nextDueNanos);
+
+				nextDueNanos += intervalNanos;
+
+				issued++;
+			}
+
+			drain();
+		}
+
+		private boolean mayIssue(long now)
+		{
+			return issued < quota && now < deadlineNanos && channel.isActive();
+		}
+
+		/**
+		 * Sends requests while streams are available: due ones in open-loop mode, new ones in closed-loop mode.
+		 */
+		private void drain()
+		{
+			final int maxStreams = Math.min(STREAMS, channel.pipeline().get(Http2FrameCodec.class).connection().local().maxActiveStreams());
+
+			while (inFlight < maxStreams)
+			{
+				final long dueNanos;
+
+				if (intervalNanos > 0)
+				{
+					if (due.isEmpty())
+					{
+						break;
+					}
+
+					dueNanos = due.poll();
+				}
+
+				else
+				{
+					final long now = System.nanoTime();
+
+					if (!mayIssue(now))
+					{
+						break;
+					}
+
+					issued++;
+
+					dueNanos = now;
+				}
+
+				send(dueNanos);
+			}
+
+			checkDone();
+		}
+
+		private void checkDone()
+		{
+			if (done || inFlight > 0 || !due.isEmpty() || mayIssue(System.nanoTime()))
+			{
+				return;
+			}
+
+			done = true;
+
+			if (schedule != null)
+			{
+				schedule.cancel(false);
+			}
+
+			finished.countDown();
+		}
+
+		private void send(final long dueNanos)
+		{
+			inFlight++;
+
+			streamChannelBootstrap.open().addListener(new GenericFutureListener<Future<Http2StreamChannel>>()
+			{
+				@Override
+				public void operationComplete(Future<Http2StreamChannel> future)
+				{
+					if (!future.isSuccess())
+					{
+						complete(dueNanos, false);
+
+						return;
+					}
+
+					final Http2StreamChannel streamChannel = future.getNow();
+
+					streamChannel.pipeline().addLast(new ResponseHandler(dueNanos));
+
+					streamChannel.write(new DefaultHttp2HeadersFrame(headers));
+
+					streamChannel.writeAndFlush(new DefaultHttp2DataFrame(payload.duplicate(), true));
+				}
+			});
+		}
+
+		private void complete(long dueNanos, boolean success)
+		{
+			inFlight--;
+
+			if (success)
+			{
+				completed++;
+
+				latency.recordValue(Math.min(System.nanoTime() - dueNanos, MAX_LATENCY_NANOS));
+			}
+
+			else
+			{
+				errors++;
+			}
+
+			drain();
+		}
+
+		/**
+		 * Completes a request once its response stream ends, or fails it if the stream closes before.
+		 */
+		private final class ResponseHandler extends SimpleChannelInboundHandler<Http2StreamFrame>
+		{
+			private final long dueNanos;
+
+			private boolean success;
+
+			private boolean completed;
+
+			ResponseHandler(long dueNanos)
+			{
+				this.dueNanos = dueNanos;
+			}
+
+			@Override
+			protected void channelRead0(ChannelHandlerContext ctx, Http2StreamFrame msg)
+			{
+				if (msg instanceof Http2HeadersFrame)
+				{
+					final CharSequence status = ((Http2HeadersFrame) msg).headers().status();
+
+					success = status != null && status.length() == 3 && status.charAt(0) == '2';
+
+					if (((Http2HeadersFrame) msg).isEndStream())
+					{
+						complete();
+					}
+				}
+
+				else if (msg instanceof Http2DataFrame && ((Http2DataFrame) msg).isEndStream())
+				{
+					complete();
+				}
+			}
+
+			@Override
+			public void channelInactive(ChannelHandlerContext ctx) throws Exception
+			{
+				if (!completed)
+				{
+					completed = true;
+
+					LoadConnection.this.complete(dueNanos, false);
+				}
+
+				super.channelInactive(ctx);
+			}
+
+			@Override
+			public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause)
+			{
+				ctx.close();
+			}
+
+			private void complete()
+			{
+				if (!completed)
+				{
+					completed = true;
+
+					LoadConnection.this.complete(dueNanos, success);
+				}
+			}
+		}
+	}
+}
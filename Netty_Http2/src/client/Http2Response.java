@@ -0,0 +1,100 @@
+package client;
+
+import static io.netty.util.internal.ObjectUtil.checkNotNull;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.DefaultByteBufHolder;
+import io.netty.handler.codec.http2.EmptyHttp2Headers;
+import io.netty.handler.codec.http2.Http2Headers;
+
+/**
+ * A complete HTTP/2 response as returned by {@link Http2Client}. The body is aggregated from the pooled buffers of the
+ * received data frames without copying them, so the response must be released once it has been consumed. Trailers
+ * (a headers frame ending the stream after the body) are kept apart from the headers.
+ *
+ * @author Puspesh.Prakash
+ */
+public final class Http2Response extends DefaultByteBufHolder
+{
+	private final Http2Headers headers;
+
+	private final Http2Headers trailers;
+
+	public Http2Response(Http2Headers headers, ByteBuf content)
+	{
+		this(headers, EmptyHttp2Headers.INSTANCE, content);
+	}
+
+	public Http2Response(Http2Headers headers, Http2Headers trailers, ByteBuf content)
+	{
+		super(content);
+
+		this.headers = checkNotNull(headers, "headers");
+		this.trailers = checkNotNull(trailers, "trailers");
+	}
+
+	public Http2Headers headers()
+	{
+		return headers;
+	}
+
+	/**
+	 * @return the trailers, empty if the response had none.
+	 */
+	public Http2Headers trailers()
+	{
+		return trailers;
+	}
+
+	/**
+	 * @return the {@code :status} pseudo header, e.g. "202".
+	 */
+	public CharSequence status()
+	{
+		return headers.status();
+	}
+
+	@Override
+	public Http2Response replace(ByteBuf content)
+	{
+		return new Http2Response(headers, trailers, content);
+	}
+
+	@Override
+	public Http2Response retain()
+	{
+		super.retain();
+
+		return this;
+	}
+
+	@Override
+	public Http2Response retain(int increment)
+	{
+		super.retain(increment);
+
+		return this;
+	}
+
+	@Override
+	public Http2Response touch()
+	{
+		super.touch();
+
+		return this;
+	}
+
+	@Override
+	public Http2Response touch(Object hint)
+	{
+		super.touch(hint);
+
+		return this;
+	}
+
+	@Override
+	public String toString()
+	{
+		return "Http2Response(headers: " + headers + ", trailers: " + trailers + ", content: " + content() + ')';
+	}
+}
@@ -0,0 +1,242 @@
+package client;
+
+import static io.netty.handler.codec.http.HttpHeaderNames.CONTENT_ENCODING;
+import static io.netty.handler.codec.http.HttpHeaderNames.CONTENT_LENGTH;
+import static io.netty.util.internal.ObjectUtil.checkNotNull;
+
+import java.nio.channels.ClosedChannelException;
+import java.util.concurrent.CompletableFuture;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.handler.codec.http2.EmptyHttp2Headers;
+import io.netty.handler.codec.http2.Http2DataFrame;
+import io.netty.handler.codec.http2.Http2Headers;
+import io.netty.handler.codec.http2.Http2HeadersFrame;
+import io.netty.handler.codec.http2.Http2ResetFrame;
+import io.netty.handler.codec.http2.Http2StreamChannel;
+import io.netty.handler.codec.http2.Http2StreamFrame;
+import io.netty.util.ReferenceCountUtil;
+import compression.BodyDecompressor;
+import compression.ContentCoding;
+
+/**
+ * Assembles the response of a single {@link Http2StreamChannel} and completes a {@link CompletableFuture} with it
+ * once the stream ends, whether it ends with the headers (a response without body), a data frame or trailers. The
+ * future fails if the stream is reset or closed before that, and the stream is reset if the future is completed (e.g.
+ * by a deadline or cancelled) first.
+ *
+ * <p> A gzip or deflate body is decompressed frame by frame, the response then carries the decompressed body without
+ * the content-encoding and content-length headers. A body that inflates beyond the max response size fails the future
+ * and resets the stream.
+ *
+ * <p> The future is completed on the event loop of the stream.
+ *
+ * @author Puspesh.Prakash
+ */
+final class Http2ResponseHandler extends ChannelInboundHandlerAdapter
+{
+	private final CompletableFuture<Http2Response> future;
+
+	private Http2Headers headers;
+
+	private Http2Headers trailers = EmptyHttp2Headers.INSTANCE;
+
+	private CompositeByteBuf content;
+
+	private final int maxResponseSize;
+
+	private BodyDecompressor decompressor;
+
+	Http2ResponseHandler(CompletableFuture<Http2Response> future)
+	{
+		this(future, Http2Client.MAX_RESPONSE_SIZE);
+	}
+
+	Http2ResponseHandler(CompletableFuture<Http2Response> future, int maxResponseSize)
+	{
+		this.future = checkNotNull(future, "future");
+		this.maxResponseSize = maxResponseSize;
+	}
+
+	@Override
+	public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception
+	{
+		if (!(msg instanceof Http2StreamFrame))
+		{
+			ctx.fireChannelRead(msg);
+
+			return;
+		}
+
+		try
+		{
+			if (msg instanceof Http2HeadersFrame)
+			{
+				final Http2HeadersFrame headersFrame = (Http2HeadersFrame) msg;
+
+				// Informational (1xx) headers are followed by the actual response headers.
+				if (headers == null || isInformational(headers))
+				{
+					headers = headersFrame.headers();
+
+					if (!isInformational(headers))
+					{
+						prepareDecompression(ctx);
+					}
+				}
+
+				// A later headers frame is the trailers, which end the stream.
+				else
+				{
+					trailers = headersFrame.headers();
+
+					if (decompressor != null)
+					{
+						append(ctx, decompressor.decode(Unpooled.EMPTY_BUFFER, true));
+					}
+				}
+
+				if (headersFrame.isEndStream())
+				{
+					complete(ctx);
+				}
+			}
+
+			else if (msg instanceof Http2DataFrame)
+			{
+				final Http2DataFrame dataFrame = (Http2DataFrame) msg;
+
+				append(ctx, decompressor == null ? dataFrame.content().retain()
+												 : decompressor.decode(dataFrame.content(), dataFrame.isEndStream()));
+
+				if (dataFrame.isEndStream())
+				{
+					complete(ctx);
+				}
+			}
+		}
+
+		finally
+		{
+			ReferenceCountUtil.release(msg);
+		}
+	}
+
+	@Override
+	public void handlerAdded(ChannelHandlerContext ctx) throws Exception
+	{
+		// Nobody waits for the response any more (deadline, cancel): reset the stream instead of reading it to the end.
+		future.whenComplete((response, cause) ->
+		{
+			if (cause != null)
+			{
+				ctx.channel().close();
+			}
+		});
+	}
+
+	@Override
+	public void userEventTriggered(ChannelHandlerContext ctx, Object evt) throws Exception
+	{
+		if (evt instanceof Http2ResetFrame)
+		{
+			fail(new IllegalStateException("Stream reset by peer: " + ((Http2ResetFrame) evt).errorCode()));
+		}
+
+		super.userEventTriggered(ctx, evt);
+	}
+
+	@Override
+	public void channelInactive(ChannelHandlerContext ctx) throws Exception
+	{
+		fail(new ClosedChannelException());
+
+		super.channelInactive(ctx);
+	}
+
+	@Override
+	public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause)
+	{
+		fail(cause);
+
+		ctx.close();
+	}
+
+	/**
+	 * Sets up the decompression of the body if the response has a content-encoding.
+	 */
+	private void prepareDecompression(ChannelHandlerContext ctx)
+	{
+		final ContentCoding coding = ContentCoding.of(headers.get(CONTENT_ENCODING));
+
+		if (coding != null)
+		{
+			decompressor = new BodyDecompressor(ctx.alloc(), coding, maxResponseSize);
+
+			headers.remove(CONTENT_ENCODING);
+
+			headers.remove(CONTENT_LENGTH);
+		}
+	}
+
+	/**
+	 * Adds a chunk of the body, which is owned by the handler from here on.
+	 */
+	private void append(ChannelHandlerContext ctx, ByteBuf data)
+	{
+		if (!data.isReadable())
+		{
+			data.release();
+
+			return;
+		}
+
+		if (content == null)
+		{
+			content = ctx.alloc().compositeBuffer();
+		}
+
+		content.addComponent(true, data);
+	}
+
+	private void complete(ChannelHandlerContext ctx)
+	{
+		final Http2Response response = new Http2Response(headers, trailers, content != null ? content : ctx.alloc().buffer(0, 0));
+
+		content = null;
+
+		if (!future.complete(response))
+		{
+			// Cancelled (or failed) in the meantime, nobody is going to release the response.
+			response.release();
+		}
+	}
+
+	private void fail(Throwable cause)
+	{
+		if (decompressor != null)
+		{
+			decompressor.release();
+		}
+
+		if (content != null)
+		{
+			content.release();
+
+			content = null;
+		}
+
+		future.completeExceptionally(cause);
+	}
+
+	private static boolean isInformational(Http2Headers headers)
+	{
+		final CharSequence status = headers.status();
+
+		return status != null && status.length() == 3 && status.charAt(0) == '1';
+	}
+}
@@ -0,0 +1,203 @@
+package client;
+
+import static io.netty.util.internal.ObjectUtil.checkNotNull;
+import static io.netty.util.internal.ObjectUtil.checkPositive;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.handler.codec.http2.DefaultHttp2DataFrame;
+import io.netty.handler.codec.http2.Http2StreamChannel;
+
+/**
+ * Sends a file as the body of a request on an {@link Http2StreamChannel} without reading it onto the heap: the file is
+ * memory-mapped ({@link FileChannel#map}) one region at a time, and every data frame is a slice of the
+ * {@link Unpooled#wrappedBuffer wrapped} region, so the bytes go from the page cache to the socket without a copy in
+ * user space (with TLS they are copied once, when encrypted).
+ *
+ * <p> Data frames are only written while the stream channel is writable, which covers both the peer's flow-control
+ * window of the stream and the write buffer of the connection; the rest follows on
+ * {@link #channelWritabilityChanged}. However large the file, at most one region is mapped for writing and about a
+ * write buffer's worth of slices is queued. A region that has been written is dropped and unmapped by the GC, not
+ * forcibly, since a slice of it may still sit in a queue of the codec (or the SSL handler) after its write completed.
+ *
+ * <p> System properties: mappedRegionSize (bytes, default 64 MB), mappedChunkSize (bytes per data frame, default 16 KB).
+ *
+ * <p> Lives in the pipeline of its stream channel and is used from its event loop only; it closes the file once the
+ * last region is mapped, or when the stream closes early.
+ *
+ * @author Puspesh.Prakash
+ */
+final class MappedFileBody extends ChannelInboundHandlerAdapter
+{
+	static final int REGION_SIZE = Integer.getInteger("mappedRegionSize", 64 * 1024 * 1024);
+	static final int CHUNK_SIZE = Integer.getInteger("mappedChunkSize", 16 * 1024);
+
+	private final FileChannel file;
+
+	private final long length;
+
+	private final int regionSize;
+
+	private final int chunkSize;
+
+	/**
+	 * Position in the file of the next region to map.
+	 */
+	private long mapped;
+
+	/**
+	 * The unsent rest of the current region, null if none is mapped.
+	 */
+	private ByteBuf region;
+
+	private boolean done;
+
+	/**
+	 * @param file open for reading, owned (and closed) by the body.
+	 * @param length the number of bytes to send from the start of the file, at least 1.
+	 */
+	MappedFileBody(FileChannel file, long length)
+	{
+		this(file, length, REGION_SIZE, CHUNK_SIZE);
+	}
+
+	MappedFileBody(FileChannel file, long length, int regionSize, int chunkSize)
+	{
+		this.file = checkNotNull(file, "file");
+		this.length = checkPositive(length, "length");
+		this.regionSize = checkPositive(regionSize, "regionSize");
+		this.chunkSize = Math.min(checkPositive(chunkSize, "chunkSize"), regionSize);
+	}
+
+	/**
+	 * Writes as much of the body as the stream takes right now, after the request headers have been written.
+	 */
+	void start(Channel channel)
+	{
+		writeChunks(channel);
+	}
+
+	@Override
+	public void channelWritabilityChanged(ChannelHandlerContext ctx) throws Exception
+	{
+		if (ctx.channel().isWritable())
+		{
+			writeChunks(ctx.channel());
+		}
+
+		ctx.fireChannelWritabilityChanged();
+	}
+
+	@Override
+	public void channelInactive(ChannelHandlerContext ctx) throws Exception
+	{
+		release();
+
+		ctx.fireChannelInactive();
+	}
+
+	/**
+	 * Drops the current region and closes the file, for a body that is not (completely) sent.
+	 */
+	void release()
+	{
+		done = true;
+
+		if (region != null)
+		{
+			region.release();
+
+			region = null;
+		}
+
+		closeFile();
+	}
+
+	private void writeChunks(Channel channel)
+	{
+		if (done)
+		{
+			return;
+		}
+
+		try
+		{
+			while (channel.isActive() && channel.isWritable())
+			{
+				if (region == null)
+				{
+					region = map();
+				}
+
+				final ByteBuf chunk = region.readRetainedSlice(Math.min(chunkSize, region.readableBytes()));
+
+				if (!region.isReadable())
+				{
+					region.release();
+
+					region = null;
+				}
+
+				final boolean last = region == null && mapped == length;
+
+				channel.write(new DefaultHttp2DataFrame(chunk, last));
+
+				if (last)
+				{
+					done = true;
+
+					break;
+				}
+			}
+		}
+
+		catch (IOException e)
+		{
+			release();
+
+			// Fails the response, the response handler closes (and so resets) the stream.
+			channel.pipeline().fireExceptionCaught(e);
+		}
+
+		channel.flush();
+	}
+
+	/**
+	 * Maps the next region of the file, and closes the file once the last one is mapped (the mappings stay valid).
+	 */
+	private ByteBuf map() throws IOException
+	{
+		final long size = Math.min(regionSize, length - mapped);
+
+		final ByteBuf mappedRegion = Unpooled.wrappedBuffer(file.map(MapMode.READ_ONLY, mapped, size));
+
+		mapped += size;
+
+		if (mapped == length)
+		{
+			closeFile();
+		}
+
+		return mappedRegion;
+	}
+
+	private void closeFile()
+	{
+		try
+		{
+			file.close();
+		}
+
+		catch (IOException ignored)
+		{
+			// Opened for reading only, nothing is lost.
+		}
+	}
+}
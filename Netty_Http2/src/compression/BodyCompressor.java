@@ -0,0 +1,140 @@
+package compression;
+
+import static io.netty.util.internal.ObjectUtil.checkNotNull;
+
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.util.concurrent.FastThreadLocal;
+
+/**
+ * @author Puspesh.Prakash
+ *
+ * <p> Compresses complete bodies with gzip or deflate. Every thread keeps its {@link Deflater}s, checksum and input
+ * buffer and resets them per body, so compressing allocates nothing but the (pooled) output buffer; creating a
+ * {@link Deflater} per body would also allocate its native state.
+ *
+ * <p> {@link Deflater} only works on arrays, so direct input is copied in chunks through the thread's input buffer and
+ * the output goes to a pooled heap buffer.
+ */
+public final class BodyCompressor
+{
+	public static final int DEFAULT_LEVEL = 6;
+
+	private static final int CHUNK_SIZE = 16 * 1024;
+
+	private static final byte[] GZIP_HEADER = { 0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff };
+
+	private static final FastThreadLocal<State> STATE = new FastThreadLocal<State>()
+	{
+		@Override
+		protected State initialValue()
+		{
+			return new State();
+		}
+
+		@Override
+		protected void onRemoval(State state)
+		{
+			state.gzip.end();
+
+			state.deflate.end();
+		}
+	};
+
+	private BodyCompressor(){}
+
+	/**
+	 * Compresses the readable bytes of {@code body}, which is neither consumed nor released.
+	 *
+	 * @param level 0 (none) to 9 (best), see {@link Deflater}.
+	 * @return the compressed body, owned by the caller.
+	 */
+	public static ByteBuf compress(ByteBufAllocator alloc, ByteBuf body, ContentCoding coding, int level)
+	{
+		checkNotNull(coding, "coding");
+
+		final State state = STATE.get();
+
+		final boolean gzip = coding == ContentCoding.GZIP;
+
+		final Deflater deflater = gzip ? state.gzip : state.deflate;
+
+		deflater.reset();
+
+		deflater.setLevel(level);
+
+		state.crc.reset();
+
+		final int length = body.readableBytes();
+
+		final ByteBuf out = alloc.heapBuffer(Math.max(64, length / 4));
+
+		if (gzip)
+		{
+			out.writeBytes(GZIP_HEADER);
+		}
+
+		for (int index = body.readerIndex(), end = body.writerIndex(); index < end; )
+		{
+			final int chunk = Math.min(CHUNK_SIZE, end - index);
+
+			body.getBytes(index, state.input, 0, chunk);
+
+			index += chunk;
+
+			if (gzip)
+			{
+				state.crc.update(state.input, 0, chunk);
+			}
+
+			deflater.setInput(state.input, 0, chunk);
+
+			while (!deflater.needsInput())
+			{
+				deflate(deflater, out);
+			}
+		}
+
+		deflater.finish();
+
+		while (!deflater.finished())
+		{
+			deflate(deflater, out);
+		}
+
+		if (gzip)
+		{
+			out.writeIntLE((int) state.crc.getValue());
+
+			out.writeIntLE(length);
+		}
+
+		return out;
+	}
+
+	private static void deflate(Deflater deflater, ByteBuf out)
+	{
+		out.ensureWritable(CHUNK_SIZE / 4);
+
+		final int written = deflater.deflate(out.array(), out.arrayOffset() + out.writerIndex(), out.writableBytes());
+
+		out.writerIndex(out.writerIndex() + written);
+	}
+
+	private static final class State
+	{
+		/**
+		 * Raw deflate, gzip header and trailer are written by {@link BodyCompressor#compress}.
+		 */
+		final Deflater gzip = new Deflater(DEFAULT_LEVEL, true);
+
+		final Deflater deflate = new Deflater(DEFAULT_LEVEL);
+
+		final CRC32 crc = new CRC32();
+
+		final byte[] input = new byte[CHUNK_SIZE];
+	}
+}
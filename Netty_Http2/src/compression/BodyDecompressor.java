@@ -0,0 +1,182 @@
+package compression;
+
+import static io.netty.util.internal.ObjectUtil.checkNotNull;
+import static io.netty.util.internal.ObjectUtil.checkPositive;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.TooLongFrameException;
+import io.netty.handler.codec.compression.DecompressionException;
+import io.netty.handler.codec.compression.JdkZlibDecoder;
+
+/**
+ * @author Puspesh.Prakash
+ *
+ * <p> Decompresses a gzip or deflate body chunk by chunk as its frames arrive, like Netty's
+ * {@code DelegatingDecompressorFrameListener} does for the connection-level HTTP/2 API: a zlib decoder in an
+ * {@link EmbeddedChannel} that allocates from the connection's (pooled) allocator.
+ *
+ * <p> Guards against decompression bombs: a body that inflates beyond {@code maxSize} bytes fails with a
+ * {@link TooLongFrameException}, and no single chunk is inflated into a buffer larger than that either, so a tiny but
+ * highly compressed frame cannot exhaust the heap before the check.
+ *
+ * <p> Not thread-safe, a decompressor serves one body and is used from the event loop of its stream.
+ */
+public final class BodyDecompressor
+{
+	private final EmbeddedChannel channel;
+
+	private final BoundedZlibDecoder decoder;
+
+	private final ByteBufAllocator alloc;
+
+	private final long maxSize;
+
+	private long size;
+
+	/**
+	 * @param maxSize the most bytes the body may inflate to.
+	 */
+	public BodyDecompressor(ByteBufAllocator alloc, ContentCoding coding, int maxSize)
+	{
+		this(alloc, coding, maxSize, maxSize);
+	}
+
+	/**
+	 * @param maxChunkSize the most bytes a single chunk may inflate to.
+	 * @param maxSize the most bytes the whole body may inflate to, for a body that is consumed as it arrives.
+	 */
+	public BodyDecompressor(ByteBufAllocator alloc, ContentCoding coding, int maxChunkSize, long maxSize)
+	{
+		this.alloc = checkNotNull(alloc, "alloc");
+		this.maxSize = checkPositive(maxSize, "maxSize");
+		this.decoder = new BoundedZlibDecoder(checkNotNull(coding, "coding"), checkPositive(maxChunkSize, "maxChunkSize"));
+		this.channel = new EmbeddedChannel(decoder);
+
+		channel.config().setAllocator(alloc);
+	}
+
+	/**
+	 * Decompresses the next chunk of the body, which is neither consumed nor released.
+	 *
+	 * @param last true for the final chunk, the decoder is then closed and checks the end of the compressed data.
+	 * @return the bytes inflated from the chunk (possibly none), owned by the caller.
+	 * @throws TooLongFrameException if the body inflates beyond the limit.
+	 * @throws DecompressionException if the body is not validly compressed.
+	 */
+	public ByteBuf decode(ByteBuf chunk, boolean last) throws TooLongFrameException
+	{
+		try
+		{
+			if (chunk.isReadable())
+			{
+				channel.writeInbound(chunk.retainedDuplicate());
+			}
+
+			if (last)
+			{
+				channel.finish();
+			}
+		}
+
+		catch (DecompressionException e)
+		{
+			release();
+
+			if (decoder.exhausted)
+			{
+				throw new TooLongFrameException("Chunk inflates beyond " + decoder.maxAllocation + " bytes");
+			}
+
+			throw e;
+		}
+
+		final ByteBuf out = drain();
+
+		size += out.readableBytes();
+
+		if (size > maxSize)
+		{
+			out.release();
+
+			release();
+
+			throw new TooLongFrameException("Body inflates beyond " + maxSize + " bytes");
+		}
+
+		return out;
+	}
+
+	/**
+	 * @return the number of bytes inflated so far.
+	 */
+	public long size()
+	{
+		return size;
+	}
+
+	/**
+	 * Drops whatever is still buffered, for a body that ends early (e.g. the stream was reset).
+	 */
+	public void release()
+	{
+		channel.finishAndReleaseAll();
+	}
+
+	private ByteBuf drain()
+	{
+		ByteBuf first = channel.readInbound();
+
+		if (first == null)
+		{
+			return Unpooled.EMPTY_BUFFER;
+		}
+
+		ByteBuf next = channel.readInbound();
+
+		if (next == null)
+		{
+			return first;
+		}
+
+		final CompositeByteBuf composite = alloc.compositeBuffer();
+
+		composite.addComponent(true, first);
+
+		for (; next != null; next = channel.readInbound())
+		{
+			composite.addComponent(true, next);
+		}
+
+		return composite;
+	}
+
+	/**
+	 * Notes that the output buffer of a chunk hit its limit, which the decoder reports as a general
+	 * {@link DecompressionException}.
+	 */
+	private static final class BoundedZlibDecoder extends JdkZlibDecoder
+	{
+		final int maxAllocation;
+
+		boolean exhausted;
+
+		BoundedZlibDecoder(ContentCoding coding, int maxAllocation)
+		{
+			super(coding.wrapper(), maxAllocation);
+
+			this.maxAllocation = maxAllocation;
+		}
+
+		@Override
+		protected void decompressionBufferExhausted(ByteBuf buffer)
+		{
+			exhausted = true;
+
+			super.decompressionBufferExhausted(buffer);
+		}
+	}
+}
@@ -0,0 +1,73 @@
+package compression;
+
+import io.netty.handler.codec.compression.ZlibWrapper;
+import io.netty.handler.codec.http.HttpHeaderValues;
+import io.netty.util.AsciiString;
+
+/**
+ * @author Puspesh.Prakash
+ *
+ * <p> The supported {@code content-encoding} values of request and response bodies. {@code deflate} is the zlib
+ * format, as specified for HTTP.
+ */
+public enum ContentCoding
+{
+	GZIP(HttpHeaderValues.GZIP, ZlibWrapper.GZIP),
+
+	DEFLATE(HttpHeaderValues.DEFLATE, ZlibWrapper.ZLIB);
+
+	/**
+	 * The {@code accept-encoding} value announcing all of them.
+	 */
+	public static final AsciiString ACCEPTED = AsciiString.of("gzip, deflate");
+
+	private final AsciiString value;
+
+	private final ZlibWrapper wrapper;
+
+	ContentCoding(AsciiString value, ZlibWrapper wrapper)
+	{
+		this.value = value;
+		this.wrapper = wrapper;
+	}
+
+	/**
+	 * @return the header value, e.g. "gzip".
+	 */
+	public AsciiString value()
+	{
+		return value;
+	}
+
+	ZlibWrapper wrapper()
+	{
+		return wrapper;
+	}
+
+	/**
+	 * @param contentEncoding the {@code content-encoding} header, may be null.
+	 * @return the coding, or null if the body is not encoded (no header or {@code identity}).
+	 * @throws IllegalArgumentException for any other (or a stacked) coding.
+	 */
+	public static ContentCoding of(CharSequence contentEncoding)
+	{
+		if (contentEncoding == null || AsciiString.contentEqualsIgnoreCase(HttpHeaderValues.IDENTITY, contentEncoding))
+		{
+			return null;
+		}
+
+		if (AsciiString.contentEqualsIgnoreCase(HttpHeaderValues.GZIP, contentEncoding)
+				|| AsciiString.contentEqualsIgnoreCase(HttpHeaderValues.X_GZIP, contentEncoding))
+		{
+			return GZIP;
+		}
+
+		if (AsciiString.contentEqualsIgnoreCase(HttpHeaderValues.DEFLATE, contentEncoding)
+				|| AsciiString.contentEqualsIgnoreCase(HttpHeaderValues.X_DEFLATE, contentEncoding))
+		{
+			return DEFLATE;
+		}
+
+		throw new IllegalArgumentException("Unsupported content-encoding: " + contentEncoding);
+	}
+}
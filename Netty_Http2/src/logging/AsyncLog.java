@@ -0,0 +1,300 @@
+package logging;
+
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import io.netty.util.concurrent.DefaultThreadFactory;
+import io.netty.util.internal.PlatformDependent;
+
+/**
+ * @author Puspesh.Prakash
+ *
+ * <p> Asynchronous logging: producers (event loops, sink consumers) put records into a bounded multi-producer ring
+ * buffer and return right away; a single daemon writer thread formats them and writes them to stdout (stderr for
+ * warnings and errors). The event loops therefore never contend on the stdout lock. Records that find the buffer full
+ * are dropped and counted instead of blocking the producer.
+ *
+ * <p> System properties:
+ * <ul>
+ * <li> log.level: default level of every category (default INFO)
+ * <li> log.level.&lt;category&gt;: level of a category and its sub-categories, e.g. {@code -Dlog.level.server.events=WARN}
+ * <li> log.bufferSize: records the ring buffer holds (default 8192)
+ * <li> log.payload.sampleRate: of the enabled payload records log every n-th (default 1, i.e. all)
+ * <li> log.payload.maxPerSecond: payload records per second and category (default 100)
+ * <li> log.payload.maxBytes: payload bytes logged per record (default 1024)
+ * </ul>
+ */
+public final class AsyncLog
+{
+	private static final AsyncLog INSTANCE = new AsyncLog();
+
+	/**
+	 * How often the JVM shutdown checks whether the queued records have been written.
+	 */
+	private static final long DRAIN_POLL_NANOS = 1000000;
+
+	/**
+	 * How long the JVM shutdown waits for queued records to be written.
+	 */
+	private static final long SHUTDOWN_DRAIN_NANOS = 1000000000;
+
+	private final Level defaultLevel = Level.of(System.getProperty("log.level", "INFO"));
+
+	private final int payloadSampleRate = Math.max(1, Integer.getInteger("log.payload.sampleRate", 1));
+
+	private final int payloadMaxPerSecond = Integer.getInteger("log.payload.maxPerSecond", 100);
+
+	private final int payloadMaxBytes = Integer.getInteger("log.payload.maxBytes", 1024);
+
+	private final Queue<LogRecord> ring = PlatformDependent.newFixedMpscQueue(Integer.getInteger("log.bufferSize", 8192));
+
+	private final ConcurrentMap<String, Logger> loggers = new ConcurrentHashMap<>();
+
+	private final AtomicLong dropped = new AtomicLong();
+
+	private final PrintStream out = System.out;
+
+	private final PrintStream err = System.err;
+
+	private final SimpleDateFormat timeFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS");
+
+	private final StringBuilder line = new StringBuilder(256);
+
+	private final Thread writer;
+
+	/**
+	 * Set by the writer before it parks on an empty ring buffer, producers then unpark it.
+	 */
+	private volatile boolean idle;
+
+	private AsyncLog()
+	{
+		writer = new DefaultThreadFactory("async-log", true).newThread(this::write);
+
+		writer.start();
+
+		// The writer is a daemon, give it a moment to write what is still queued when the JVM exits.
+		Runtime.getRuntime().addShutdownHook(new Thread(this::awaitDrained, "async-log-shutdown"));
+	}
+
+	/**
+	 * @return the logger of {@code category}, e.g. "server.events".
+	 */
+	public static Logger logger(String category)
+	{
+		return INSTANCE.loggers.computeIfAbsent(category, c -> new Logger(INSTANCE, c, INSTANCE.levelOf(c)));
+	}
+
+	/**
+	 * @return the number of records dropped so far because the ring buffer was full.
+	 */
+	public static long dropped()
+	{
+		return INSTANCE.dropped.get();
+	}
+
+	int payloadSampleRate()
+	{
+		return payloadSampleRate;
+	}
+
+	int payloadMaxPerSecond()
+	{
+		return payloadMaxPerSecond;
+	}
+
+	int payloadMaxBytes()
+	{
+		return payloadMaxBytes;
+	}
+
+	void enqueue(LogRecord record)
+	{
+		if (!ring.offer(record))
+		{
+			dropped.incrementAndGet();
+
+			if (record.payload != null)
+			{
+				record.payload.release();
+			}
+		}
+
+		else if (idle)
+		{
+			LockSupport.unpark(writer);
+		}
+	}
+
+	private void awaitDrained()
+	{
+		final long deadline = System.nanoTime() + SHUTDOWN_DRAIN_NANOS;
+
+		while (!ring.isEmpty() && System.nanoTime() < deadline)
+		{
+			LockSupport.parkNanos(DRAIN_POLL_NANOS);
+		}
+
+		// The last polled record may still be in formatting.
+		LockSupport.parkNanos(DRAIN_POLL_NANOS);
+	}
+
+	/**
+	 * The most specific {@code log.level.*} property that covers {@code category}, or the default level.
+	 */
+	private Level levelOf(String category)
+	{
+		for (String c = category; !c.isEmpty(); c = c.lastIndexOf('.') > 0 ? c.substring(0, c.lastIndexOf('.')) : "")
+		{
+			final String level = System.getProperty("log.level." + c);
+
+			if (level != null)
+			{
+				return Level.of(level);
+			}
+		}
+
+		return defaultLevel;
+	}
+
+	/**
+	 * Writer loop: drains the ring buffer, flushes once it is empty (if anything was written) and parks until a producer
+	 * unparks it, so an idle logger does not wake up at all.
+	 */
+	private void write()
+	{
+		long reportedDrops = 0;
+
+		boolean written = false;
+
+		for (;;)
+		{
+			LogRecord record = ring.poll();
+
+			if (record == null)
+			{
+				final long drops = dropped.get();
+
+				if (drops != reportedDrops)
+				{
+					err.println("async-log: " + (drops - reportedDrops) + " log record(s) dropped, ring buffer full");
+
+					reportedDrops = drops;
+
+					written = true;
+				}
+
+				if (written)
+				{
+					out.flush();
+
+					err.flush();
+
+					written = false;
+				}
+
+				idle = true;
+
+				// A record enqueued before the flag was set has not unparked the writer.
+				if (ring.isEmpty())
+				{
+					LockSupport.park(this);
+				}
+
+				idle = false;
+
+				continue;
+			}
+
+			written = true;
+
+			try
+			{
+				final PrintStream stream = record.level.compareTo(Level.WARN) <= 0 ? err : out;
+
+				stream.print(format(record));
+			}
+
+			catch (Throwable t)
+			{
+				err.println("async-log: failed to write a record of " + record.category + ": " + t);
+			}
+
+			finally
+			{
+				if (record.payload != null)
+				{
+					record.payload.release();
+				}
+			}
+		}
+	}
+
+	private String format(LogRecord record)
+	{
+		line.setLength(0);
+
+		line.append(timeFormat.format(new Date(record.timeMillis))).append(' ')
+			.append(record.level).append(" [").append(record.thread).append("] ")
+			.append(record.category).append(" - ");
+
+		appendMessage(record.format, record.args);
+
+		if (record.payload != null)
+		{
+			line.append('\n').append(record.payload.toString(record.charset));
+		}
+
+		line.append('\n');
+
+		if (record.cause != null)
+		{
+			final StringWriter trace = new StringWriter();
+
+			record.cause.printStackTrace(new PrintWriter(trace));
+
+			line.append(trace);
+		}
+
+		return line.toString();
+	}
+
+	/**
+	 * Replaces the {@code {}} placeholders of {@code format} by the arguments in order.
+	 */
+	private void appendMessage(String format, Object[] args)
+	{
+		if (args == null || args.length == 0)
+		{
+			line.append(format);
+
+			return;
+		}
+
+		int from = 0;
+
+		for (Object arg : args)
+		{
+			final int placeholder = format.indexOf("{}", from);
+
+			if (placeholder < 0)
+			{
+				break;
+			}
+
+			line.append(format, from, placeholder).append(arg);
+
+			from = placeholder + 2;
+		}
+
+		line.append(format, from, format.length());
+	}
+}
@@ -0,0 +1,19 @@
+package logging;
+
+/**
+ * @author Puspesh.Prakash
+ *
+ * <p> Severity of a log record, a category logs the records at or above its level.
+ */
+public enum Level
+{
+	OFF, ERROR, WARN, INFO, DEBUG, TRACE;
+
+	/**
+	 * Resolves the level from its name, ignoring case.
+	 */
+	public static Level of(String name)
+	{
+		return valueOf(name.trim().toUpperCase());
+	}
+}
@@ -0,0 +1,50 @@
+package logging;
+
+import java.nio.charset.Charset;
+
+import io.netty.buffer.ByteBuf;
+
+/**
+ * @author Puspesh.Prakash
+ *
+ * <p> A log record as queued by the producing thread: the unformatted message and its arguments, plus a retained copy
+ * of the payload if any. Formatting happens on the writer thread of {@link AsyncLog}.
+ */
+final class LogRecord
+{
+	final long timeMillis;
+
+	final String thread;
+
+	final Level level;
+
+	final String category;
+
+	final String format;
+
+	final Object[] args;
+
+	final Throwable cause;
+
+	final ByteBuf payload;
+
+	final Charset charset;
+
+	LogRecord(Level level, String category, String format, Object[] args, Throwable cause)
+	{
+		this(level, category, format, args, cause, null, null);
+	}
+
+	LogRecord(Level level, String category, String format, Object[] args, Throwable cause, ByteBuf payload, Charset charset)
+	{
+		this.timeMillis = System.currentTimeMillis();
+		this.thread = Thread.currentThread().getName();
+		this.level = level;
+		this.category = category;
+		this.format = format;
+		this.args = args;
+		this.cause = cause;
+		this.payload = payload;
+		this.charset = charset;
+	}
+}
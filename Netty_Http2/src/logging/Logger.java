@@ -0,0 +1,139 @@
+package logging;
+
+import static io.netty.util.internal.ObjectUtil.checkNotNull;
+
+import java.nio.charset.Charset;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.netty.buffer.ByteBuf;
+
+/**
+ * @author Puspesh.Prakash
+ *
+ * <p> Logger of one category, obtained from {@link AsyncLog#logger(String)}. Logging never blocks and never formats on
+ * the calling thread: disabled records cost a level check, enabled ones are queued with their (unformatted) arguments
+ * and formatted by the writer thread. Messages use {@code {}} placeholders for the arguments.
+ *
+ * <p> Payloads are additionally sampled and rate limited per category, see {@link #payload(Level, ByteBuf, Charset, String, Object...)}.
+ */
+public final class Logger
+{
+	private final AsyncLog log;
+
+	private final String category;
+
+	private volatile Level level;
+
+	private final AtomicLong payloadCount = new AtomicLong();
+
+	private final AtomicLong rateWindow = new AtomicLong();
+
+	private final AtomicLong rateCount = new AtomicLong();
+
+	Logger(AsyncLog log, String category, Level level)
+	{
+		this.log = log;
+		this.category = category;
+		this.level = level;
+	}
+
+	public String category()
+	{
+		return category;
+	}
+
+	public Level level()
+	{
+		return level;
+	}
+
+	/**
+	 * Changes the level of this category at runtime.
+	 */
+	public void level(Level level)
+	{
+		this.level = checkNotNull(level, "level");
+	}
+
+	public boolean isEnabled(Level level)
+	{
+		return level != Level.OFF && level.compareTo(this.level) <= 0;
+	}
+
+	public void log(Level level, String format, Object... args)
+	{
+		if (isEnabled(level))
+		{
+			log.enqueue(new LogRecord(level, category, format, args, null));
+		}
+	}
+
+	public void log(Level level, String message, Throwable cause)
+	{
+		if (isEnabled(level))
+		{
+			log.enqueue(new LogRecord(level, category, message, null, cause));
+		}
+	}
+
+	public void error(String message, Throwable cause)
+	{
+		log(Level.ERROR, message, cause);
+	}
+
+	public void warn(String format, Object... args)
+	{
+		log(Level.WARN, format, args);
+	}
+
+	public void info(String format, Object... args)
+	{
+		log(Level.INFO, format, args);
+	}
+
+	public void debug(String format, Object... args)
+	{
+		log(Level.DEBUG, format, args);
+	}
+
+	/**
+	 * Logs a message followed by a payload, decoded with {@code charset} (and truncated to the configured max bytes) on
+	 * the writer thread only. Of the payload records that pass the level check, every n-th is logged (sample rate) and
+	 * at most the configured number per second, the others are dropped before anything is retained or formatted.
+	 *
+	 * @param payload not consumed, a retained duplicate is kept until the record has been written.
+	 */
+	public void payload(Level level, ByteBuf payload, Charset charset, String format, Object... args)
+	{
+		if (!isEnabled(level) || !admitPayload())
+		{
+			return;
+		}
+
+		final int length = Math.min(payload.readableBytes(), log.payloadMaxBytes());
+
+		log.enqueue(new LogRecord(level, category, format, args, null,
+								  payload.retainedSlice(payload.readerIndex(), length), charset));
+	}
+
+	private boolean admitPayload()
+	{
+		final int sampleRate = log.payloadSampleRate();
+
+		if (sampleRate > 1 && payloadCount.getAndIncrement() % sampleRate != 0)
+		{
+			return false;
+		}
+
+		final long second = System.nanoTime() / 1000000000L;
+
+		final long window = rateWindow.get();
+
+		if (window != second && rateWindow.compareAndSet(window, second))
+		{
+			rateCount.set(0);
+		}
+
+		return rateCount.incrementAndGet() <= log.payloadMaxPerSecond();
+	}
+}
@@ -0,0 +1,78 @@
+package metrics;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufHolder;
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelHandler.Sharable;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+
+/**
+ * @author Puspesh.Prakash
+ *
+ * <p> First handler of every server connection: counts the connection while it is active (in total and per event
+ * loop) and the bytes read from and written to the socket (so TLS record overhead included).
+ */
+@Sharable
+final class ConnectionMetricsHandler extends ChannelDuplexHandler
+{
+	private final ServerMetrics metrics;
+
+	ConnectionMetricsHandler(ServerMetrics metrics)
+	{
+		this.metrics = metrics;
+	}
+
+	@Override
+	public void channelActive(ChannelHandlerContext ctx) throws Exception
+	{
+		metrics.activeConnections.increment();
+
+		metrics.connectionsOpened.increment();
+
+		metrics.loopConnections(ctx.channel().eventLoop()).opened();
+
+		super.channelActive(ctx);
+	}
+
+	@Override
+	public void channelInactive(ChannelHandlerContext ctx) throws Exception
+	{
+		metrics.activeConnections.decrement();
+
+		metrics.loopConnections(ctx.channel().eventLoop()).closed();
+
+		super.channelInactive(ctx);
+	}
+
+	@Override
+	public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception
+	{
+		metrics.bytesRead.add(size(msg));
+
+		ctx.fireChannelRead(msg);
+	}
+
+	@Override
+	public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception
+	{
+		metrics.bytesWritten.add(size(msg));
+
+		ctx.write(msg, promise);
+	}
+
+	private static int size(Object msg)
+	{
+		if (msg instanceof ByteBuf)
+		{
+			return ((ByteBuf) msg).readableBytes();
+		}
+
+		if (msg instanceof ByteBufHolder)
+		{
+			return ((ByteBufHolder) msg).content().readableBytes();
+		}
+
+		return 0;
+	}
+}
@@ -0,0 +1,140 @@
+package metrics;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.http2.Http2Flags;
+import io.netty.handler.codec.http2.Http2FrameLogger;
+import io.netty.handler.codec.http2.Http2FrameTypes;
+import io.netty.handler.codec.http2.Http2Headers;
+import io.netty.handler.codec.http2.Http2Settings;
+import io.netty.handler.logging.LogLevel;
+
+/**
+ * @author Puspesh.Prakash
+ *
+ * <p> Counts every frame the HTTP/2 codec reads or writes, by direction and type. Plugged into the codec through
+ * {@code Http2FrameCodecBuilder.frameLogger(...)}, it sees the frames after decoding and before encoding, including
+ * the connection-level ones (SETTINGS, PING, GOAWAY, WINDOW_UPDATE) that never reach the stream channels.
+ *
+ * <p> The frames are still logged at TRACE level if that is enabled for this class.
+ */
+final class FrameMetricsLogger extends Http2FrameLogger
+{
+	private final ServerMetrics metrics;
+
+	FrameMetricsLogger(ServerMetrics metrics)
+	{
+		super(LogLevel.TRACE, FrameMetricsLogger.class);
+
+		this.metrics = metrics;
+	}
+
+	@Override
+	public void logData(Direction direction, ChannelHandlerContext ctx, int streamId, ByteBuf data, int padding, boolean endStream)
+	{
+		metrics.frame(direction, Http2FrameTypes.DATA);
+
+		super.logData(direction, ctx, streamId, data, padding, endStream);
+	}
+
+	@Override
+	public void logHeaders(Direction direction, ChannelHandlerContext ctx, int streamId, Http2Headers headers, int padding,
+			boolean endStream)
+	{
+		metrics.frame(direction, Http2FrameTypes.HEADERS);
+
+		super.logHeaders(direction, ctx, streamId, headers, padding, endStream);
+	}
+
+	@Override
+	public void logHeaders(Direction direction, ChannelHandlerContext ctx, int streamId, Http2Headers headers,
+			int streamDependency, short weight, boolean exclusive, int padding, boolean endStream)
+	{
+		metrics.frame(direction, Http2FrameTypes.HEADERS);
+
+		super.logHeaders(direction, ctx, streamId, headers, streamDependency, weight, exclusive, padding, endStream);
+	}
+
+	@Override
+	public void logPriority(Direction direction, ChannelHandlerContext ctx, int streamId, int streamDependency, short weight,
+			boolean exclusive)
+	{
+		metrics.frame(direction, Http2FrameTypes.PRIORITY);
+
+		super.logPriority(direction, ctx, streamId, streamDependency, weight, exclusive);
+	}
+
+	@Override
+	public void logRstStream(Direction direction, ChannelHandlerContext ctx, int streamId, long errorCode)
+	{
+		metrics.frame(direction, Http2FrameTypes.RST_STREAM);
+
+		super.logRstStream(direction, ctx, streamId, errorCode);
+	}
+
+	@Override
+	public void logSettingsAck(Direction direction, ChannelHandlerContext ctx)
+	{
+		metrics.frame(direction, Http2FrameTypes.SETTINGS);
+
+		super.logSettingsAck(direction, ctx);
+	}
+
+	@Override
+	public void logSettings(Direction direction, ChannelHandlerContext ctx, Http2Settings settings)
+	{
+		metrics.frame(direction, Http2FrameTypes.SETTINGS);
+
+		super.logSettings(direction, ctx, settings);
+	}
+
+	@Override
+	public void logPing(Direction direction, ChannelHandlerContext ctx, long data)
+	{
+		metrics.frame(direction, Http2FrameTypes.PING);
+
+		super.logPing(direction, ctx, data);
+	}
+
+	@Override
+	public void logPingAck(Direction direction, ChannelHandlerContext ctx, long data)
+	{
+		metrics.frame(direction, Http2FrameTypes.PING);
+
+		super.logPingAck(direction, ctx, data);
+	}
+
+	@Override
+	public void logPushPromise(Direction direction, ChannelHandlerContext ctx, int streamId, int promisedStreamId,
+			Http2Headers headers, int padding)
+	{
+		metrics.frame(direction, Http2FrameTypes.PUSH_PROMISE);
+
+		super.logPushPromise(direction, ctx, streamId, promisedStreamId, headers, padding);
+	}
+
+	@Override
+	public void logGoAway(Direction direction, ChannelHandlerContext ctx, int lastStreamId, long errorCode, ByteBuf debugData)
+	{
+		metrics.frame(direction, Http2FrameTypes.GO_AWAY);
+
+		super.logGoAway(direction, ctx, lastStreamId, errorCode, debugData);
+	}
+
+	@Override
+	public void logWindowsUpdate(Direction direction, ChannelHandlerContext ctx, int streamId, int windowSizeIncrement)
+	{
+		metrics.frame(direction, Http2FrameTypes.WINDOW_UPDATE);
+
+		super.logWindowsUpdate(direction, ctx, streamId, windowSizeIncrement);
+	}
+
+	@Override
+	public void logUnknownFrame(Direction direction, ChannelHandlerContext ctx, byte frameType, int streamId, Http2Flags flags,
+			ByteBuf data)
+	{
+		metrics.frame(direction, frameType);
+
+		super.logUnknownFrame(direction, ctx, frameType, streamId, flags, data);
+	}
+}
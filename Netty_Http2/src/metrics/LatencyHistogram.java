@@ -0,0 +1,111 @@
+package metrics;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @author Puspesh.Prakash
+ *
+ * <p> Lock-free latency histogram with fixed bucket bounds (50 µs to 10 s), exported as a Prometheus histogram.
+ * Recording is a binary search over the bounds plus two {@link LongAdder} increments, so concurrent event loops do not
+ * contend on a shared cache line.
+ */
+public final class LatencyHistogram
+{
+	private static final long[] BOUNDS_NANOS = {
+		micros(50), micros(100), micros(250), micros(500),
+		millis(1), millis(2) + micros(500), millis(5), millis(10), millis(25), millis(50), millis(100), millis(250),
+		millis(500), millis(1000), millis(2500), millis(5000), millis(10000)
+	};
+
+	/**
+	 * One bucket per bound plus the +Inf bucket, not cumulative.
+	 */
+	private final LongAdder[] buckets = new LongAdder[BOUNDS_NANOS.length + 1];
+
+	private final LongAdder sumNanos = new LongAdder();
+
+	public LatencyHistogram()
+	{
+		for (int i = 0; i < buckets.length; i++)
+		{
+			buckets[i] = new LongAdder();
+		}
+	}
+
+	public void record(long nanos)
+	{
+		buckets[bucket(nanos)].increment();
+
+		sumNanos.add(nanos);
+	}
+
+	/**
+	 * Records the time elapsed since {@code startNanos} (a {@link System#nanoTime()} value).
+	 */
+	public void recordSince(long startNanos)
+	{
+		record(System.nanoTime() - startNanos);
+	}
+
+	void writeTo(PrometheusWriter writer, String name, String help)
+	{
+		writer.type(name, help, "histogram");
+
+		long cumulative = 0;
+
+		for (int i = 0; i < BOUNDS_NANOS.length; i++)
+		{
+			cumulative += buckets[i].sum();
+
+			writer.sample(name + "_bucket", "le", seconds(BOUNDS_NANOS[i]), cumulative);
+		}
+
+		cumulative += buckets[BOUNDS_NANOS.length].sum();
+
+		writer.sample(name + "_bucket", "le", "+Inf", cumulative);
+
+		writer.sample(name + "_sum", sumNanos.sum() / 1e9);
+
+		writer.sample(name + "_count", cumulative);
+	}
+
+	private static int bucket(long nanos)
+	{
+		int low = 0;
+		int high = BOUNDS_NANOS.length;
+
+		while (low < high)
+		{
+			final int mid = (low + high) >>> 1;
+
+			if (nanos <= BOUNDS_NANOS[mid])
+			{
+				high = mid;
+			}
+
+			else
+			{
+				low = mid + 1;
+			}
+		}
+
+		return low;
+	}
+
+	private static String seconds(long nanos)
+	{
+		return BigDecimal.valueOf(nanos, 9).stripTrailingZeros().toPlainString();
+	}
+
+	private static long micros(long micros)
+	{
+		return TimeUnit.MICROSECONDS.toNanos(micros);
+	}
+
+	private static long millis(long millis)
+	{
+		return TimeUnit.MILLISECONDS.toNanos(millis);
+	}
+}
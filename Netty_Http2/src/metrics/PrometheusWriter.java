@@ -0,0 +1,63 @@
+package metrics;
+
+/**
+ * @author Puspesh.Prakash
+ *
+ * <p> Writes samples in the Prometheus text exposition format (version 0.0.4).
+ */
+final class PrometheusWriter
+{
+	static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+	private final StringBuilder out = new StringBuilder(4096);
+
+	void type(String name, String help, String type)
+	{
+		out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+		out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+	}
+
+	void sample(String name, double value)
+	{
+		out.append(name).append(' ');
+
+		value(value);
+	}
+
+	void sample(String name, String label, String labelValue, double value)
+	{
+		out.append(name).append('{').append(label).append("=\"").append(labelValue).append("\"} ");
+
+		value(value);
+	}
+
+	void sample(String name, String label1, String labelValue1, String label2, String labelValue2, double value)
+	{
+		out.append(name).append('{')
+		   .append(label1).append("=\"").append(labelValue1).append("\",")
+		   .append(label2).append("=\"").append(labelValue2).append("\"} ");
+
+		value(value);
+	}
+
+	private void value(double value)
+	{
+		if (value == (long) value)
+		{
+			out.append((long) value);
+		}
+
+		else
+		{
+			out.append(value);
+		}
+
+		out.append('\n');
+	}
+
+	@Override
+	public String toString()
+	{
+		return out.toString();
+	}
+}
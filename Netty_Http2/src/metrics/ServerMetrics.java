@@ -0,0 +1,487 @@
+package metrics;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSessionContext;
+
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufAllocatorMetric;
+import io.netty.buffer.ByteBufAllocatorMetricProvider;
+import io.netty.buffer.PooledByteBufAllocatorMetric;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.EventLoopGroup;
+import io.netty.handler.codec.http2.Http2FrameLogger;
+import io.netty.handler.codec.http2.Http2FrameLogger.Direction;
+import io.netty.handler.ssl.OpenSslSessionContext;
+import io.netty.handler.ssl.OpenSslSessionStats;
+import io.netty.handler.ssl.SslHandler;
+import io.netty.util.concurrent.EventExecutor;
+import io.netty.util.concurrent.SingleThreadEventExecutor;
+
+/**
+ * @author Puspesh.Prakash
+ *
+ * <p> Metrics of the server: connections, TLS handshakes, streams, frames, bytes, flow-control stalls, request service
+ * time, admission control, event loop backlog and lag, and allocator usage. The counters are {@link LongAdder}s, recording is lock-free and does not contend
+ * across event loops; gauges such as pending tasks are read at scrape time only.
+ *
+ * <p> The server pipelines feed the process-wide instance {@link #get()}: the {@link #connectionHandler()} on every
+ * connection, the {@link #frameLogger()} in every HTTP/2 codec and the receiver handlers for streams and latency.
+ * {@link #scrape()} renders everything in the Prometheus text format.
+ */
+public final class ServerMetrics
+{
+	/**
+	 * Frame type names by their code, see {@link io.netty.handler.codec.http2.Http2FrameTypes}.
+	 */
+	private static final String[] FRAME_TYPES = {
+		"data", "headers", "priority", "rst_stream", "settings", "push_promise", "ping", "goaway", "window_update",
+		"continuation"
+	};
+
+	private static final String UNKNOWN_FRAME_TYPE = "unknown";
+
+	private static final ServerMetrics INSTANCE = new ServerMetrics(ByteBufAllocator.DEFAULT);
+
+	final LongAdder activeConnections = new LongAdder();
+
+	final LongAdder connectionsOpened = new LongAdder();
+
+	final LongAdder bytesRead = new LongAdder();
+
+	final LongAdder bytesWritten = new LongAdder();
+
+	private final LongAdder fullHandshakes = new LongAdder();
+
+	private final LongAdder resumedHandshakes = new LongAdder();
+
+	private final LongAdder failedHandshakes = new LongAdder();
+
+	private final LatencyHistogram handshakeTime = new LatencyHistogram();
+
+	private volatile SSLSessionContext sessionContext;
+
+	private final LongAdder openStreams = new LongAdder();
+
+	private final LongAdder streamsOpened = new LongAdder();
+
+	private final LongAdder windowStalls = new LongAdder();
+
+	/**
+	 * [direction][frame type], the last column counts unknown frame types.
+	 */
+	private final LongAdder[][] frames = new LongAdder[Direction.values().length][FRAME_TYPES.length + 1];
+
+	private final LatencyHistogram serviceTime = new LatencyHistogram();
+
+	private final Map<String, LongAdder> admissionRejections = new ConcurrentHashMap<>();
+
+	private volatile LongSupplier admittedRequests = () -> 0;
+
+	private volatile LongSupplier admittedBytes = () -> 0;
+
+	private final Map<String, EventLoopGroup> eventLoopGroups = new ConcurrentHashMap<>();
+
+	private final Map<EventExecutor, LoopConnections> loopConnections = new ConcurrentHashMap<>();
+
+	private final ByteBufAllocator allocator;
+
+	private final ChannelHandler connectionHandler = new ConnectionMetricsHandler(this);
+
+	private final Http2FrameLogger frameLogger = new FrameMetricsLogger(this);
+
+	ServerMetrics(ByteBufAllocator allocator)
+	{
+		this.allocator = allocator;
+
+		for (LongAdder[] byType : frames)
+		{
+			for (int i = 0; i < byType.length; i++)
+			{
+				byType[i] = new LongAdder();
+			}
+		}
+	}
+
+	public static ServerMetrics get()
+	{
+		return INSTANCE;
+	}
+
+	/**
+	 * @return the (sharable) handler that counts connections and socket bytes, to be added first to every connection.
+	 */
+	public ChannelHandler connectionHandler()
+	{
+		return connectionHandler;
+	}
+
+	/**
+	 * @return the frame logger that counts the frames of an HTTP/2 codec.
+	 */
+	public Http2FrameLogger frameLogger()
+	{
+		return frameLogger;
+	}
+
+	/**
+	 * Reports the pending tasks of every event loop of {@code group} under {@code name}.
+	 */
+	public void register(String name, EventLoopGroup group)
+	{
+		eventLoopGroups.put(name, group);
+	}
+
+	/**
+	 * Reports the session cache and ticket statistics of {@code context}, if its provider (OpenSSL) keeps them.
+	 */
+	public void register(SSLSessionContext context)
+	{
+		sessionContext = context;
+	}
+
+	/**
+	 * Reports the requests and buffered body bytes currently admitted by the admission control.
+	 */
+	public void registerAdmission(LongSupplier requests, LongSupplier bufferedBytes)
+	{
+		admittedRequests = requests;
+
+		admittedBytes = bufferedBytes;
+	}
+
+	/**
+	 * Counts a connection, stream or request shed by the admission control, by the limit that was hit.
+	 */
+	public void admissionRejected(String reason)
+	{
+		final LongAdder counter = admissionRejections.get(reason);
+
+		(counter != null ? counter : admissionRejections.computeIfAbsent(reason, r -> new LongAdder())).increment();
+	}
+
+	/**
+	 * Records the last measured lag of the event loop {@code loop}, how late its scheduled tasks run.
+	 */
+	public void eventLoopLag(EventExecutor loop, long lagNanos)
+	{
+		loopConnections(loop).lagNanos = lagNanos;
+	}
+
+	/**
+	 * Counts the handshake of {@code handler} as full, resumed or failed once it completes, and records its duration.
+	 * To be called when the handler is added, i.e. before the handshake starts.
+	 */
+	public void watchHandshake(SslHandler handler)
+	{
+		final long startNanos = System.nanoTime();
+
+		final long startMillis = System.currentTimeMillis();
+
+		handler.handshakeFuture().addListener(future ->
+		{
+			if (!future.isSuccess())
+			{
+				failedHandshakes.increment();
+
+				return;
+			}
+
+			handshakeTime.recordSince(startNanos);
+
+			(isResumed(handler.engine().getSession(), startMillis) ? resumedHandshakes : fullHandshakes).increment();
+		});
+	}
+
+	/**
+	 * A resumed session keeps the creation time of the session it resumes, so it predates the handshake. OpenSSL
+	 * reports the creation time in whole seconds, hence the comparison with the second the handshake started in; a
+	 * resumption within the second of the original handshake counts as a full handshake.
+	 */
+	private static boolean isResumed(SSLSession session, long startMillis)
+	{
+		return session != null && session.getCreationTime() < startMillis - startMillis % 1000;
+	}
+
+	public void streamOpened()
+	{
+		openStreams.increment();
+
+		streamsOpened.increment();
+	}
+
+	public void streamClosed()
+	{
+		openStreams.decrement();
+	}
+
+	/**
+	 * Counts a stream that became unwritable, i.e. whose flow-control window (or the connection's) is exhausted.
+	 */
+	public void windowStalled()
+	{
+		windowStalls.increment();
+	}
+
+	/**
+	 * Records the service time of a request, from its headers to the response.
+	 */
+	public void requestServed(long startNanos)
+	{
+		serviceTime.recordSince(startNanos);
+	}
+
+	/**
+	 * @return the connection counters of the event loop {@code loop}.
+	 */
+	LoopConnections loopConnections(EventExecutor loop)
+	{
+		final LoopConnections connections = loopConnections.get(loop);
+
+		return connections != null ? connections : loopConnections.computeIfAbsent(loop, l -> new LoopConnections());
+	}
+
+	void frame(Direction direction, int type)
+	{
+		frames[direction.ordinal()][type >= 0 && type < FRAME_TYPES.length ? type : FRAME_TYPES.length].increment();
+	}
+
+	/**
+	 * @return the content type of {@link #scrape()}.
+	 */
+	public static String contentType()
+	{
+		return PrometheusWriter.CONTENT_TYPE;
+	}
+
+	/**
+	 * Renders all metrics in the Prometheus text exposition format.
+	 */
+	public String scrape()
+	{
+		final PrometheusWriter w = new PrometheusWriter();
+
+		w.type("http2_connections_active", "Open client connections.", "gauge");
+		w.sample("http2_connections_active", activeConnections.sum());
+
+		w.type("http2_connections_total", "Accepted client connections.", "counter");
+		w.sample("http2_connections_total", connectionsOpened.sum());
+
+		w.type("tls_handshakes_total", "Completed TLS handshakes by result.", "counter");
+		w.sample("tls_handshakes_total", "result", "full", fullHandshakes.sum());
+		w.sample("tls_handshakes_total", "result", "resumed", resumedHandshakes.sum());
+		w.sample("tls_handshakes_total", "result", "failed", failedHandshakes.sum());
+
+		handshakeTime.writeTo(w, "tls_handshake_seconds", "Time from connection setup to the completed TLS handshake.");
+
+		writeSessionStats(w);
+
+		w.type("http2_streams_open", "Open HTTP/2 streams.", "gauge");
+		w.sample("http2_streams_open", openStreams.sum());
+
+		w.type("http2_streams_total", "Opened HTTP/2 streams.", "counter");
+		w.sample("http2_streams_total", streamsOpened.sum());
+
+		w.type("http2_frames_total", "HTTP/2 frames by direction and type.", "counter");
+
+		for (Direction direction : Direction.values())
+		{
+			final String directionName = direction.name().toLowerCase();
+
+			for (int i = 0; i <= FRAME_TYPES.length; i++)
+			{
+				w.sample("http2_frames_total", "direction", directionName, "type",
+						 i < FRAME_TYPES.length ? FRAME_TYPES[i] : UNKNOWN_FRAME_TYPE, frames[direction.ordinal()][i].sum());
+			}
+		}
+
+		w.type("http2_bytes_read_total", "Bytes read from client connections.", "counter");
+		w.sample("http2_bytes_read_total", bytesRead.sum());
+
+		w.type("http2_bytes_written_total", "Bytes written to client connections.", "counter");
+		w.sample("http2_bytes_written_total", bytesWritten.sum());
+
+		w.type("http2_window_stalls_total", "Streams that became unwritable for lack of flow-control window.", "counter");
+		w.sample("http2_window_stalls_total", windowStalls.sum());
+
+		serviceTime.writeTo(w, "http2_request_service_seconds", "Time from request headers to response.");
+
+		w.type("admission_requests_inflight", "Requests (streams) admitted and not yet completed.", "gauge");
+		w.sample("admission_requests_inflight", admittedRequests.getAsLong());
+
+		w.type("admission_buffered_bytes", "Body bytes admitted to be buffered.", "gauge");
+		w.sample("admission_buffered_bytes", admittedBytes.getAsLong());
+
+		w.type("admission_rejections_total", "Connections, streams and requests shed by reason.", "counter");
+
+		for (Map.Entry<String, LongAdder> rejections : admissionRejections.entrySet())
+		{
+			w.sample("admission_rejections_total", "reason", rejections.getKey(), rejections.getValue().sum());
+		}
+
+		w.type("netty_eventloop_pending_tasks", "Tasks queued on an event loop.", "gauge");
+
+		for (Map.Entry<String, EventLoopGroup> group : eventLoopGroups.entrySet())
+		{
+			int index = 0;
+
+			for (EventExecutor executor : group.getValue())
+			{
+				if (executor instanceof SingleThreadEventExecutor)
+				{
+					w.sample("netty_eventloop_pending_tasks", "group", group.getKey(), "loop", Integer.toString(index),
+							 ((SingleThreadEventExecutor) executor).pendingTasks());
+				}
+
+				index++;
+			}
+		}
+
+		writeLoopConnections(w);
+
+		writeAllocator(w);
+
+		return w.toString();
+	}
+
+	/**
+	 * Connections by the event loop serving them, to check how evenly SO_REUSEPORT spreads them across the cores, and
+	 * the lag of the loops, see the admission control.
+	 */
+	private void writeLoopConnections(PrometheusWriter w)
+	{
+		w.type("netty_eventloop_connections_active", "Open client connections by event loop.", "gauge");
+
+		for (Map.Entry<String, EventLoopGroup> group : eventLoopGroups.entrySet())
+		{
+			int index = 0;
+
+			for (EventExecutor executor : group.getValue())
+			{
+				final LoopConnections connections = loopConnections.get(executor);
+
+				w.sample("netty_eventloop_connections_active", "group", group.getKey(), "loop", Integer.toString(index++),
+						 connections != null ? connections.active.sum() : 0);
+			}
+		}
+
+		w.type("netty_eventloop_connections_total", "Accepted client connections by event loop.", "counter");
+
+		for (Map.Entry<String, EventLoopGroup> group : eventLoopGroups.entrySet())
+		{
+			int index = 0;
+
+			for (EventExecutor executor : group.getValue())
+			{
+				final LoopConnections connections = loopConnections.get(executor);
+
+				w.sample("netty_eventloop_connections_total", "group", group.getKey(), "loop", Integer.toString(index++),
+						 connections != null ? connections.opened.sum() : 0);
+			}
+		}
+
+		w.type("netty_eventloop_lag_seconds", "How late the last probe task ran on an event loop.", "gauge");
+
+		for (Map.Entry<String, EventLoopGroup> group : eventLoopGroups.entrySet())
+		{
+			int index = 0;
+
+			for (EventExecutor executor : group.getValue())
+			{
+				final LoopConnections connections = loopConnections.get(executor);
+
+				if (connections != null && connections.lagNanos >= 0)
+				{
+					w.sample("netty_eventloop_lag_seconds", "group", group.getKey(), "loop", Integer.toString(index),
+							 connections.lagNanos / 1e9);
+				}
+
+				index++;
+			}
+		}
+	}
+
+	private void writeSessionStats(PrometheusWriter w)
+	{
+		if (!(sessionContext instanceof OpenSslSessionContext))
+		{
+			return;
+		}
+
+		final OpenSslSessionStats stats = ((OpenSslSessionContext) sessionContext).stats();
+
+		w.type("tls_sessions_cached", "Sessions in the server's session cache.", "gauge");
+		w.sample("tls_sessions_cached", stats.number());
+
+		w.type("tls_session_cache_total", "Session cache lookups of the server's session cache.", "counter");
+		w.sample("tls_session_cache_total", "result", "hit", stats.hits());
+		w.sample("tls_session_cache_total", "result", "miss", stats.misses());
+		w.sample("tls_session_cache_total", "result", "timeout", stats.timeouts());
+
+		w.type("tls_session_tickets_total", "Session tickets by outcome.", "counter");
+		w.sample("tls_session_tickets_total", "result", "resume", stats.ticketKeyResume());
+		w.sample("tls_session_tickets_total", "result", "new", stats.ticketKeyNew());
+		w.sample("tls_session_tickets_total", "result", "renew", stats.ticketKeyRenew());
+		w.sample("tls_session_tickets_total", "result", "fail", stats.ticketKeyFail());
+	}
+
+	private void writeAllocator(PrometheusWriter w)
+	{
+		if (!(allocator instanceof ByteBufAllocatorMetricProvider))
+		{
+			return;
+		}
+
+		final ByteBufAllocatorMetric metric = ((ByteBufAllocatorMetricProvider) allocator).metric();
+
+		w.type("netty_allocator_used_bytes", "Memory held by the default ByteBuf allocator.", "gauge");
+		w.sample("netty_allocator_used_bytes", "memory", "direct", metric.usedDirectMemory());
+		w.sample("netty_allocator_used_bytes", "memory", "heap", metric.usedHeapMemory());
+
+		if (metric instanceof PooledByteBufAllocatorMetric)
+		{
+			final PooledByteBufAllocatorMetric pooled = (PooledByteBufAllocatorMetric) metric;
+
+			w.type("netty_allocator_arenas", "Arenas of the pooled allocator.", "gauge");
+			w.sample("netty_allocator_arenas", "memory", "direct", pooled.numDirectArenas());
+			w.sample("netty_allocator_arenas", "memory", "heap", pooled.numHeapArenas());
+
+			w.type("netty_allocator_thread_local_caches", "Thread-local caches of the pooled allocator.", "gauge");
+			w.sample("netty_allocator_thread_local_caches", pooled.numThreadLocalCaches());
+
+			w.type("netty_allocator_chunk_size_bytes", "Chunk size of the pooled allocator.", "gauge");
+			w.sample("netty_allocator_chunk_size_bytes", pooled.chunkSize());
+		}
+	}
+
+	/**
+	 * Connection counters (and the lag) of one event loop.
+	 */
+	static final class LoopConnections
+	{
+		final LongAdder active = new LongAdder();
+
+		final LongAdder opened = new LongAdder();
+
+		/**
+		 * -1 until the lag of the loop is measured.
+		 */
+		volatile long lagNanos = -1;
+
+		void opened()
+		{
+			active.increment();
+
+			opened.increment();
+		}
+
+		void closed()
+		{
+			active.decrement();
+		}
+	}
+}
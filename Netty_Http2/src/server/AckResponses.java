@@ -0,0 +1,197 @@
+package server;
+
+import static io.netty.handler.codec.http.HttpHeaderNames.CONNECTION;
+import static io.netty.handler.codec.http.HttpHeaderNames.CONTENT_LENGTH;
+import static io.netty.handler.codec.http.HttpHeaderNames.CONTENT_TYPE;
+import static io.netty.handler.codec.http.HttpHeaderNames.RETRY_AFTER;
+import static io.netty.handler.codec.http.HttpHeaderValues.APPLICATION_JSON;
+import static io.netty.handler.codec.http.HttpHeaderValues.CLOSE;
+import static io.netty.handler.codec.http.HttpHeaderValues.KEEP_ALIVE;
+import static io.netty.handler.codec.http.HttpHeaderValues.ZERO;
+import static io.netty.handler.codec.http.HttpResponseStatus.ACCEPTED;
+import static io.netty.handler.codec.http.HttpResponseStatus.OK;
+import static io.netty.handler.codec.http.HttpResponseStatus.REQUEST_ENTITY_TOO_LARGE;
+import static io.netty.handler.codec.http.HttpResponseStatus.SERVICE_UNAVAILABLE;
+import static io.netty.handler.codec.http.HttpVersion.HTTP_1_0;
+import static io.netty.handler.codec.http.HttpVersion.HTTP_1_1;
+
+import java.nio.charset.StandardCharsets;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.EmptyHttpHeaders;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpHeaders;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpUtil;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.handler.codec.http.ReadOnlyHttpHeaders;
+import io.netty.handler.codec.http2.DefaultHttp2DataFrame;
+import io.netty.handler.codec.http2.DefaultHttp2HeadersFrame;
+import io.netty.handler.codec.http2.Http2DataFrame;
+import io.netty.handler.codec.http2.Http2Headers;
+import io.netty.handler.codec.http2.Http2HeadersFrame;
+import io.netty.handler.codec.http2.ReadOnlyHttp2Headers;
+import io.netty.util.AsciiString;
+import batch.BatchFraming;
+
+/**
+ * @author Puspesh.Prakash
+ *
+ * <p> Precomputed Event ACK responses. The body lives in a single static, unreleasable direct buffer that every
+ * response only duplicates, and the headers are read-only templates shared by all connections, so acknowledging an
+ * event allocates nothing but the frame (or response) objects and a buffer duplicate.
+ *
+ * <p> The templates must not be modified, which the read-only header types enforce.
+ */
+final class AckResponses
+{
+	private static final ByteBuf ACCEPTED_BODY = Unpooled.unreleasableBuffer(Unpooled.directBuffer()
+			.writeBytes("{\"response-code\":\"202\",\"response-message\":\"Accepted\"}".getBytes(StandardCharsets.US_ASCII))
+			.asReadOnly());
+
+	private static final AsciiString ACCEPTED_BODY_LENGTH = AsciiString.of(Integer.toString(ACCEPTED_BODY.readableBytes()));
+
+	private static final Http2Headers HTTP2_ACCEPTED = ReadOnlyHttp2Headers.serverHeaders(false, ACCEPTED.codeAsText(),
+			CONTENT_TYPE, APPLICATION_JSON, CONTENT_LENGTH, ACCEPTED_BODY_LENGTH);
+
+	private static final Http2Headers HTTP2_EVENT_STREAM = ReadOnlyHttp2Headers.serverHeaders(false, OK.codeAsText(),
+			CONTENT_TYPE, BatchFraming.STATUS_CONTENT_TYPE);
+
+	private static final Http2Headers HTTP2_SERVICE_UNAVAILABLE = ReadOnlyHttp2Headers.serverHeaders(false,
+			SERVICE_UNAVAILABLE.codeAsText());
+
+	private static final Http2Headers HTTP2_REQUEST_ENTITY_TOO_LARGE = ReadOnlyHttp2Headers.serverHeaders(false,
+			REQUEST_ENTITY_TOO_LARGE.codeAsText());
+
+	/**
+	 * HTTP/1.x headers by outcome, indexed by {@link #connectionIndex(HttpVersion, boolean)}.
+	 */
+	private static final HttpHeaders[] HTTP1_OK = http1Headers(ACCEPTED_BODY_LENGTH);
+
+	private static final HttpHeaders[] HTTP1_SERVICE_UNAVAILABLE = http1Headers(ZERO);
+
+	private AckResponses(){}
+
+	/**
+	 * @return the 202 headers frame, followed by {@link #http2AcceptedBody()}.
+	 */
+	static Http2HeadersFrame http2AcceptedHeaders()
+	{
+		return new DefaultHttp2HeadersFrame(HTTP2_ACCEPTED);
+	}
+
+	/**
+	 * @return the ACK body as the last data frame of the stream.
+	 */
+	static Http2DataFrame http2AcceptedBody()
+	{
+		return new DefaultHttp2DataFrame(ACCEPTED_BODY.retainedDuplicate(), true);
+	}
+
+	/**
+	 * @return a headers-only response ending the stream, for the statuses without a body.
+	 */
+	static Http2HeadersFrame http2Status(HttpResponseStatus status)
+	{
+		if (status.code() == SERVICE_UNAVAILABLE.code())
+		{
+			return new DefaultHttp2HeadersFrame(HTTP2_SERVICE_UNAVAILABLE, true);
+		}
+
+		if (status.code() == REQUEST_ENTITY_TOO_LARGE.code())
+		{
+			return new DefaultHttp2HeadersFrame(HTTP2_REQUEST_ENTITY_TOO_LARGE, true);
+		}
+
+		return new DefaultHttp2HeadersFrame(ReadOnlyHttp2Headers.serverHeaders(false, status.codeAsText()), true);
+	}
+
+	/**
+	 * @return a 503 ending the stream, telling the client after how many seconds to retry.
+	 */
+	static Http2HeadersFrame http2Overloaded(AsciiString retryAfter)
+	{
+		return new DefaultHttp2HeadersFrame(ReadOnlyHttp2Headers.serverHeaders(false, SERVICE_UNAVAILABLE.codeAsText(),
+																			   RETRY_AFTER, retryAfter), true);
+	}
+
+	/**
+	 * @return the headers of a batch response, followed by the status vector of {@code events} bytes.
+	 */
+	static Http2HeadersFrame http2BatchHeaders(int events)
+	{
+		return new DefaultHttp2HeadersFrame(ReadOnlyHttp2Headers.serverHeaders(false, OK.codeAsText(),
+				CONTENT_TYPE, BatchFraming.STATUS_CONTENT_TYPE, CONTENT_LENGTH, AsciiString.of(Integer.toString(events))));
+	}
+
+	/**
+	 * @return the headers of a duplex stream, followed by a data frame of statuses whenever events are completed.
+	 */
+	static Http2HeadersFrame http2EventStreamHeaders()
+	{
+		return new DefaultHttp2HeadersFrame(HTTP2_EVENT_STREAM);
+	}
+
+	/**
+	 * @return the HTTP/1.x Event ACK (200 with the JSON body), or 503 if the event was not accepted.
+	 */
+	static FullHttpResponse http1(HttpVersion protocolVersion, boolean keepAlive, boolean accepted)
+	{
+		final int index = connectionIndex(protocolVersion, keepAlive);
+
+		return accepted ? new DefaultFullHttpResponse(HTTP_1_1, OK, ACCEPTED_BODY.retainedDuplicate(), HTTP1_OK[index],
+																 EmptyHttpHeaders.INSTANCE)
+						: new DefaultFullHttpResponse(HTTP_1_1, SERVICE_UNAVAILABLE, Unpooled.EMPTY_BUFFER,
+																 HTTP1_SERVICE_UNAVAILABLE[index], EmptyHttpHeaders.INSTANCE);
+	}
+
+	/**
+	 * @return a 503 without body, telling the client after how many seconds to retry.
+	 */
+	static FullHttpResponse http1Overloaded(HttpVersion protocolVersion, boolean keepAlive, AsciiString retryAfter)
+	{
+		final FullHttpResponse response = new DefaultFullHttpResponse(HTTP_1_1, SERVICE_UNAVAILABLE, Unpooled.EMPTY_BUFFER);
+
+		response.headers().add(HTTP1_SERVICE_UNAVAILABLE[connectionIndex(protocolVersion, keepAlive)]).set(RETRY_AFTER, retryAfter);
+
+		return response;
+	}
+
+	/**
+	 * @return a response without body for the other statuses, e.g. 413 or 500.
+	 */
+	static FullHttpResponse http1Status(HttpVersion protocolVersion, boolean keepAlive, HttpResponseStatus status)
+	{
+		final FullHttpResponse response = new DefaultFullHttpResponse(HTTP_1_1, status, Unpooled.EMPTY_BUFFER);
+
+		response.headers().set(CONTENT_LENGTH, ZERO);
+
+		HttpUtil.setKeepAlive(response.headers(), protocolVersion, keepAlive);
+
+		return response;
+	}
+
+	/**
+	 * 0: keep-alive (HTTP/1.1), 1: keep-alive (HTTP/1.0, needs the header), 2: close.
+	 */
+	private static int connectionIndex(HttpVersion protocolVersion, boolean keepAlive)
+	{
+		if (!keepAlive)
+		{
+			return 2;
+		}
+
+		return protocolVersion.equals(HTTP_1_0) ? 1 : 0;
+	}
+
+	private static HttpHeaders[] http1Headers(AsciiString contentLength)
+	{
+		return new HttpHeaders[] {
+			new ReadOnlyHttpHeaders(true, CONTENT_TYPE, APPLICATION_JSON, CONTENT_LENGTH, contentLength),
+			new ReadOnlyHttpHeaders(true, CONTENT_TYPE, APPLICATION_JSON, CONTENT_LENGTH, contentLength, CONNECTION, KEEP_ALIVE),
+			new ReadOnlyHttpHeaders(true, CONTENT_TYPE, APPLICATION_JSON, CONTENT_LENGTH, contentLength, CONNECTION, CLOSE)
+		};
+	}
+}
@@ -0,0 +1,432 @@
+package server;
+
+import static io.netty.util.internal.ObjectUtil.checkNotNull;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandler.Sharable;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.EventLoopGroup;
+import io.netty.util.AsciiString;
+import io.netty.util.AttributeKey;
+import io.netty.util.concurrent.EventExecutor;
+import logging.AsyncLog;
+import logging.Logger;
+import metrics.ServerMetrics;
+
+/**
+ * @author Puspesh.Prakash
+ *
+ * <p> Admission control: bounds what the server holds at once, so that under overload it sheds requests instead of
+ * growing the heap. Tracked are connections, in-flight requests (HTTP/2 streams or HTTP/1.x requests) and buffered body
+ * bytes, each globally and the latter two also per connection (see {@link ServerConfig}):
+ * <ul>
+ * <li> a connection above maxConnections is closed right after the accept;
+ * <li> a new HTTP/2 stream above the limits, or while its event loop lags behind by more than maxEventLoopLag, is
+ *      refused with RST_STREAM(REFUSED_STREAM), which tells the client the request was not processed and may be retried;
+ * <li> a body that grows beyond the byte limits, and an HTTP/1.x request above any limit, is answered with 503 and a
+ *      Retry-After header.
+ * </ul>
+ *
+ * <p> The global counters are atomics updated with compare-and-set, the per-connection ones live in an attribute of the
+ * connection and are only touched from its event loop. The {@link #connectionHandler()} returns whatever a connection
+ * still holds to the global counters once it closes, so aborted streams and requests cannot leak admissions.
+ *
+ * <p> The same handler stops reading from a connection while it is unwritable, i.e. above the high
+ * {@link io.netty.channel.WriteBufferWaterMark}: a client that does not read its responses cannot make the server buffer
+ * more of them.
+ *
+ * <p> The event loop lag is measured by a probe task that every worker event loop runs every
+ * {@link #LAG_PROBE_INTERVAL_MILLIS}, see {@link #start(EventLoopGroup)}.
+ */
+public final class AdmissionController
+{
+	static final long LAG_PROBE_INTERVAL_MILLIS = 100;
+
+	private static final Logger LOG = AsyncLog.logger("server");
+
+	private static final AttributeKey<ConnectionAdmission> KEY = AttributeKey.valueOf(AdmissionController.class, "admission");
+
+	/**
+	 * Why a connection, stream or request was not admitted, also the label of the rejection metric.
+	 */
+	enum Rejection
+	{
+		CONNECTIONS, STREAMS, BUFFERED_BYTES, EVENT_LOOP_LAG;
+
+		final String label = name().toLowerCase();
+	}
+
+	private final int maxConnections;
+
+	private final int maxStreams;
+
+	private final int maxConnectionStreams;
+
+	private final long maxBufferedBytes;
+
+	private final long maxConnectionBufferedBytes;
+
+	private final long maxLagNanos;
+
+	private final AsciiString retryAfter;
+
+	private final AtomicInteger connections = new AtomicInteger();
+
+	private final AtomicInteger streams = new AtomicInteger();
+
+	private final AtomicLong bufferedBytes = new AtomicLong();
+
+	private final ChannelHandler connectionHandler = new AdmissionHandler();
+
+	private volatile Map<EventExecutor, LagProbe> probes = Collections.emptyMap();
+
+	/**
+	 * @param config the limits: maxConnections, maxStreams, maxConcurrentStreams (per connection), maxBufferedBytes,
+	 *        maxConnectionBufferedBytes, maxEventLoopLag and retryAfter.
+	 */
+	public AdmissionController(ServerConfig config)
+	{
+		checkNotNull(config, "config");
+
+		this.maxConnections = config.maxConnections();
+		this.maxStreams = config.maxStreams();
+		this.maxConnectionStreams = (int) Math.min(Integer.MAX_VALUE, config.maxConcurrentStreams());
+		this.maxBufferedBytes = config.maxBufferedBytes();
+		this.maxConnectionBufferedBytes = config.maxConnectionBufferedBytes();
+		this.maxLagNanos = TimeUnit.MILLISECONDS.toNanos(config.maxEventLoopLag());
+		this.retryAfter = AsciiString.of(Long.toString(config.retryAfter()));
+	}
+
+	/**
+	 * Starts measuring the lag of the event loops of {@code group}, the loops serving the connections. Without it (or
+	 * with maxEventLoopLag 0) streams are not refused for lag.
+	 */
+	public void start(EventLoopGroup group)
+	{
+		if (maxLagNanos == 0)
+		{
+			return;
+		}
+
+		final Map<EventExecutor, LagProbe> started = new IdentityHashMap<>();
+
+		for (EventExecutor loop : group)
+		{
+			final LagProbe probe = new LagProbe(loop);
+
+			started.put(loop, probe);
+
+			probe.schedule();
+		}
+
+		probes = started;
+	}
+
+	/**
+	 * @return the (sharable) handler that counts connections, releases their admissions once closed and suspends reads
+	 *         while they are unwritable; to be added to every connection in front of the protocol handlers.
+	 */
+	ChannelHandler connectionHandler()
+	{
+		return connectionHandler;
+	}
+
+	/**
+	 * @return the requests (HTTP/2 streams) admitted and not yet completed, on all connections.
+	 */
+	public long requests()
+	{
+		return streams.get();
+	}
+
+	/**
+	 * @return the body bytes admitted to be buffered, on all connections.
+	 */
+	public long bufferedBytes()
+	{
+		return bufferedBytes.get();
+	}
+
+	/**
+	 * @return the Retry-After value in seconds sent with 503.
+	 */
+	AsciiString retryAfter()
+	{
+		return retryAfter;
+	}
+
+	/**
+	 * Admits a new request (an HTTP/2 stream or an HTTP/1.x request) on {@code connection}, which is released with
+	 * {@link #releaseRequest(Channel)}. To be called on the event loop of the connection.
+	 *
+	 * @return null if admitted, otherwise the limit that has been hit.
+	 */
+	Rejection admitRequest(Channel connection)
+	{
+		final ConnectionAdmission admission = admission(connection);
+
+		if (admission == null || admission.closed)
+		{
+			return null;
+		}
+
+		Rejection rejection = null;
+
+		if (admission.probe != null && admission.probe.lagNanos > maxLagNanos)
+		{
+			rejection = Rejection.EVENT_LOOP_LAG;
+		}
+
+		else if (admission.streams >= maxConnectionStreams || !tryAcquire(streams, maxStreams))
+		{
+			rejection = Rejection.STREAMS;
+		}
+
+		if (rejection != null)
+		{
+			ServerMetrics.get().admissionRejected(rejection.label);
+
+			return rejection;
+		}
+
+		admission.streams++;
+
+		return null;
+	}
+
+	void releaseRequest(Channel connection)
+	{
+		final ConnectionAdmission admission = admission(connection);
+
+		// Once the connection is closed, the connection handler has already released what it held.
+		if (admission != null && !admission.closed)
+		{
+			admission.streams--;
+
+			streams.decrementAndGet();
+		}
+	}
+
+	/**
+	 * Admits {@code bytes} of body to be buffered for a request on {@code connection}, they are released with
+	 * {@link #releaseBytes(Channel, long)}. To be called on the event loop of the connection.
+	 *
+	 * @return null if admitted, otherwise the limit that has been hit.
+	 */
+	Rejection admitBytes(Channel connection, int bytes)
+	{
+		final ConnectionAdmission admission = admission(connection);
+
+		if (admission == null || admission.closed || bytes == 0)
+		{
+			return null;
+		}
+
+		if (admission.bufferedBytes + bytes > maxConnectionBufferedBytes || !tryAcquire(bufferedBytes, bytes, maxBufferedBytes))
+		{
+			ServerMetrics.get().admissionRejected(Rejection.BUFFERED_BYTES.label);
+
+			return Rejection.BUFFERED_BYTES;
+		}
+
+		admission.bufferedBytes += bytes;
+
+		return null;
+	}
+
+	void releaseBytes(Channel connection, long bytes)
+	{
+		final ConnectionAdmission admission = admission(connection);
+
+		if (admission != null && !admission.closed && bytes > 0)
+		{
+			admission.bufferedBytes -= bytes;
+
+			bufferedBytes.addAndGet(-bytes);
+		}
+	}
+
+	/**
+	 * @return the admission of a connection that went through the {@link #connectionHandler()}, null for any other,
+	 *         including none at all (a stream handler tested on its own), whose requests are not admission-controlled.
+	 */
+	private static ConnectionAdmission admission(Channel connection)
+	{
+		return connection != null ? connection.attr(KEY).get() : null;
+	}
+
+	private static boolean tryAcquire(AtomicInteger counter, int limit)
+	{
+		while (true)
+		{
+			final int current = counter.get();
+
+			if (current >= limit)
+			{
+				return false;
+			}
+
+			if (counter.compareAndSet(current, current + 1))
+			{
+				return true;
+			}
+		}
+	}
+
+	private static boolean tryAcquire(AtomicLong counter, int amount, long limit)
+	{
+		while (true)
+		{
+			final long current = counter.get();
+
+			if (current + amount > limit)
+			{
+				return false;
+			}
+
+			if (counter.compareAndSet(current, current + amount))
+			{
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * Admissions of one connection, only accessed from its event loop.
+	 */
+	private static final class ConnectionAdmission
+	{
+		final LagProbe probe;
+
+		int streams;
+
+		long bufferedBytes;
+
+		boolean readSuspended;
+
+		boolean closed;
+
+		ConnectionAdmission(LagProbe probe)
+		{
+			this.probe = probe;
+		}
+	}
+
+	@Sharable
+	private final class AdmissionHandler extends ChannelInboundHandlerAdapter
+	{
+		@Override
+		public void channelActive(ChannelHandlerContext ctx) throws Exception
+		{
+			if (!tryAcquire(connections, maxConnections))
+			{
+				ServerMetrics.get().admissionRejected(Rejection.CONNECTIONS.label);
+
+				LOG.debug("Connection limit {} reached, closing {}", maxConnections, ctx.channel());
+
+				ctx.close();
+
+				return;
+			}
+
+			ctx.channel().attr(KEY).set(new ConnectionAdmission(probes.get(ctx.channel().eventLoop())));
+
+			super.channelActive(ctx);
+		}
+
+		/**
+		 * Runs before the protocol handlers see the close, so the releases of their streams that follow are ignored.
+		 */
+		@Override
+		public void channelInactive(ChannelHandlerContext ctx) throws Exception
+		{
+			final ConnectionAdmission admission = ctx.channel().attr(KEY).get();
+
+			if (admission != null)
+			{
+				admission.closed = true;
+
+				connections.decrementAndGet();
+
+				streams.addAndGet(-admission.streams);
+
+				bufferedBytes.addAndGet(-admission.bufferedBytes);
+			}
+
+			super.channelInactive(ctx);
+		}
+
+		@Override
+		public void channelWritabilityChanged(ChannelHandlerContext ctx) throws Exception
+		{
+			final ConnectionAdmission admission = ctx.channel().attr(KEY).get();
+
+			if (admission != null)
+			{
+				final boolean writable = ctx.channel().isWritable();
+
+				if (!writable && !admission.readSuspended)
+				{
+					admission.readSuspended = true;
+
+					ReadSuspension.suspend(ctx.channel());
+				}
+
+				else if (writable && admission.readSuspended)
+				{
+					admission.readSuspended = false;
+
+					ReadSuspension.resume(ctx.channel());
+				}
+			}
+
+			super.channelWritabilityChanged(ctx);
+		}
+	}
+
+	/**
+	 * Measures how late a task scheduled on an event loop runs, i.e. how far the loop lags behind its queue.
+	 */
+	private static final class LagProbe implements Runnable
+	{
+		private final EventExecutor loop;
+
+		private long scheduledNanos;
+
+		volatile long lagNanos;
+
+		LagProbe(EventExecutor loop)
+		{
+			this.loop = loop;
+		}
+
+		void schedule()
+		{
+			scheduledNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(LAG_PROBE_INTERVAL_MILLIS);
+
+			loop.schedule(this, LAG_PROBE_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+		}
+
+		@Override
+		public void run()
+		{
+			lagNanos = Math.max(0, System.nanoTime() - scheduledNanos);
+
+			ServerMetrics.get().eventLoopLag(loop, lagNanos);
+
+			if (!loop.isShuttingDown())
+			{
+				schedule();
+			}
+		}
+	}
+}
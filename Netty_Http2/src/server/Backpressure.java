@@ -0,0 +1,28 @@
+package server;
+
+/**
+ * @author Puspesh.Prakash
+ *
+ * <p> What the receiver handlers do with a completed event while the {@link EventSink} is full.
+ */
+public enum Backpressure
+{
+	/**
+	 * Answers the request with 503 (Service Unavailable) right away.
+	 */
+	REJECT,
+
+	/**
+	 * Stops reading from the connection until the event is accepted. For HTTP/2 this withholds the WINDOW_UPDATE frames
+	 * of the connection, so the client runs out of flow-control window instead of the server buffering more events.
+	 */
+	PAUSE;
+
+	/**
+	 * Resolves the backpressure mode from its name, ignoring case.
+	 */
+	public static Backpressure of(String name)
+	{
+		return valueOf(name.trim().toUpperCase());
+	}
+}
@@ -0,0 +1,118 @@
+package server;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import io.netty.handler.codec.http2.Http2Headers;
+import batch.BatchStatus;
+import batch.RecordSplitter;
+import batch.RecordSplitter.RecordListener;
+
+/**
+ * @author Puspesh.Prakash
+ *
+ * <p> State of a batch stream, see {@link Router.Builder#batch}: the splitter of its body and the status vector of the
+ * events split so far. Every event is offered to the sink as soon as it is complete, sharing the headers of the stream.
+ * An event the sink does not take is reported as {@link BatchStatus#REJECTED} instead of applying the
+ * {@link Backpressure}, so the client resends just those and one full sink does not hold up the rest of the batch.
+ *
+ * <p> On a duplex route (see {@link Router.Builder#duplex}) the statuses are taken after every data frame instead of
+ * once at the end, so every event is acknowledged as soon as the frame completing it has been read.
+ *
+ * <p> Only accessed from the event loop of its stream channel.
+ */
+final class BatchRequest implements RecordListener
+{
+	private final RecordSplitter splitter;
+
+	private final EventSink sink;
+
+	private final Http2Headers headers;
+
+	private final ByteBufAllocator alloc;
+
+	/**
+	 * The statuses not taken by {@link #statuses()} yet, null if there are none.
+	 */
+	private ByteBuf statuses;
+
+	BatchRequest(RecordSplitter splitter, EventSink sink, Http2Headers headers, ByteBufAllocator alloc)
+	{
+		this.splitter = splitter;
+		this.sink = sink;
+		this.headers = headers;
+		this.alloc = alloc;
+	}
+
+	/**
+	 * Splits the events completed by {@code chunk} and hands them over to the sink.
+	 */
+	void split(ByteBuf chunk, boolean last)
+	{
+		splitter.split(chunk, last, this);
+	}
+
+	@Override
+	public void onRecord(ByteBuf record)
+	{
+		final ReceivedEvent event = new ReceivedEvent(headers, record);
+
+		if (sink.offer(event))
+		{
+			status(BatchStatus.ACCEPTED);
+		}
+
+		else
+		{
+			event.release();
+
+			status(BatchStatus.REJECTED);
+		}
+	}
+
+	@Override
+	public void onInvalid()
+	{
+		status(BatchStatus.INVALID);
+	}
+
+	/**
+	 * @return the statuses of the events split since the previous call, one byte per event (possibly none); ownership
+	 *         is passed to the caller.
+	 */
+	ByteBuf statuses()
+	{
+		if (statuses == null)
+		{
+			return Unpooled.EMPTY_BUFFER;
+		}
+
+		final ByteBuf taken = statuses;
+
+		statuses = null;
+
+		return taken;
+	}
+
+	void release()
+	{
+		splitter.release();
+
+		if (statuses != null)
+		{
+			statuses.release();
+
+			statuses = null;
+		}
+	}
+
+	private void status(BatchStatus status)
+	{
+		if (statuses == null)
+		{
+			statuses = alloc.buffer();
+		}
+
+		statuses.writeByte(status.code());
+	}
+}
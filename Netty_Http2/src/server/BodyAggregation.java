@@ -0,0 +1,29 @@
+package server;
+
+import io.netty.buffer.CompositeByteBuf;
+
+/**
+ * @author Puspesh.Prakash
+ *
+ * <p> Strategies used by {@link EventBody} to aggregate the data frames of a single stream.
+ */
+public enum BodyAggregation
+{
+	/**
+	 * Retains every frame buffer as a component of one {@link CompositeByteBuf}, no bytes are copied.
+	 */
+	COMPOSITE,
+
+	/**
+	 * Copies every frame into a single pooled buffer so the frame (and the read buffer it slices) is released right away.
+	 */
+	POOLED;
+
+	/**
+	 * Resolves the aggregation mode from its name, ignoring case.
+	 */
+	public static BodyAggregation of(String name)
+	{
+		return valueOf(name.trim().toUpperCase());
+	}
+}
@@ -0,0 +1,41 @@
+package server;
+
+import java.util.concurrent.CompletionStage;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.handler.codec.http2.Http2Headers;
+
+/**
+ * @author Puspesh.Prakash
+ *
+ * <p> Consumes request bodies chunk by chunk as they arrive, instead of {@link Http2EventReceiverHandler} aggregating
+ * them into an event (streaming mode).
+ *
+ * <p> A stream has at most one chunk in flight: the next data frame of a stream is only read once the stage returned
+ * for the previous chunk completed. Until then the stream's flow-control window is not replenished, so a slow consumer
+ * throttles the client instead of the server buffering the body, and a body of any size takes about one stream
+ * window of memory.
+ *
+ * <p> Invoked on the event loop of the stream, implementations must not block it; the returned stage may be completed
+ * from any thread.
+ */
+public interface BodyConsumer
+{
+	/**
+	 * Processes the next chunk of a request body. The chunk is released once the returned stage completes, consumers
+	 * that keep it beyond that must retain it.
+	 *
+	 * @param headers the request headers of the stream.
+	 * @param chunk the bytes of one data frame, empty for a request without a body.
+	 * @param last true for the final chunk of the stream, the request is acknowledged with 202 once it completed.
+	 * @return a stage completed once the chunk has been processed, a failed stage answers the request with 500.
+	 */
+	CompletionStage<?> onChunk(Http2Headers headers, ByteBuf chunk, boolean last);
+
+	/**
+	 * Called instead of a last chunk if the stream is reset or its connection closed before the body ended.
+	 */
+	default void onAborted(Http2Headers headers)
+	{
+	}
+}
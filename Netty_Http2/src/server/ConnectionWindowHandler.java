@@ -0,0 +1,63 @@
+package server;
+
+import static io.netty.util.internal.ObjectUtil.checkPositive;
+
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.handler.codec.http2.DefaultHttp2WindowUpdateFrame;
+import io.netty.handler.codec.http2.Http2Connection;
+import io.netty.handler.codec.http2.Http2FrameCodec;
+
+/**
+ * @author Puspesh.Prakash
+ *
+ * <p> Sizes the receive window of an HTTP/2 connection to the configured value. SETTINGS only set the initial window
+ * of the streams, but the {@link Http2FrameCodec} already widens the connection window (by about twice the initial
+ * stream window) when it is added; this handler, added right behind the codec, tops the window up to the configured
+ * size with one connection-level WINDOW_UPDATE, or sends none if it is large enough already, and removes itself.
+ */
+final class ConnectionWindowHandler extends ChannelInboundHandlerAdapter
+{
+	private final int windowSize;
+
+	ConnectionWindowHandler(int windowSize)
+	{
+		this.windowSize = checkPositive(windowSize, "windowSize");
+	}
+
+	/**
+	 * On the ALPN and upgrade paths the connection is already active when the HTTP/2 handlers are added.
+	 */
+	@Override
+	public void handlerAdded(ChannelHandlerContext ctx) throws Exception
+	{
+		if (ctx.channel().isActive())
+		{
+			openWindow(ctx);
+		}
+	}
+
+	@Override
+	public void channelActive(ChannelHandlerContext ctx) throws Exception
+	{
+		openWindow(ctx);
+
+		super.channelActive(ctx);
+	}
+
+	private void openWindow(ChannelHandlerContext ctx)
+	{
+		final Http2Connection connection = ctx.pipeline().get(Http2FrameCodec.class).connection();
+
+		// The size the codec keeps the window at; the window itself only lags behind it while data is being received.
+		final int current = connection.local().flowController().initialWindowSize(connection.connectionStream());
+
+		if (windowSize > current)
+		{
+			// Without a stream the codec grows the connection window and sends the WINDOW_UPDATE for stream 0.
+			ctx.writeAndFlush(new DefaultHttp2WindowUpdateFrame(windowSize - current));
+		}
+
+		ctx.pipeline().remove(this);
+	}
+}
@@ -0,0 +1,104 @@
+package server;
+
+import static io.netty.util.internal.ObjectUtil.checkNotNull;
+import static io.netty.util.internal.ObjectUtil.checkPositive;
+
+import java.nio.charset.Charset;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.CompositeByteBuf;
+
+/**
+ * @author Puspesh.Prakash
+ *
+ * <p> Accumulates the payload of a single stream without decoding it. The bytes are only turned into a
+ * {@link String} when a consumer asks for it via {@link #toString(Charset)}.
+ *
+ * <p> Instances are not thread-safe, they are meant to be used from the event loop of their stream.
+ */
+final class EventBody
+{
+	/**
+	 * Upper bound of components before the {@link CompositeByteBuf} consolidates them.
+	 */
+	private static final int MAX_COMPONENTS = 1024;
+
+	private final BodyAggregation aggregation;
+
+	private final int maxBodySize;
+
+	private final ByteBuf content;
+
+	EventBody(ByteBufAllocator alloc, BodyAggregation aggregation, int maxBodySize)
+	{
+		this.aggregation = checkNotNull(aggregation, "aggregation");
+		this.maxBodySize = checkPositive(maxBodySize, "maxBodySize");
+
+		content = aggregation == BodyAggregation.COMPOSITE ? alloc.compositeBuffer(MAX_COMPONENTS) : alloc.buffer();
+	}
+
+	/**
+	 * Appends the readable bytes of a data frame. The caller keeps its own reference to {@code data}.
+	 *
+	 * @return false if the body would grow beyond the configured max body size, nothing is appended in that case.
+	 */
+	boolean append(ByteBuf data)
+	{
+		final int length = data.readableBytes();
+
+		if (length > maxBodySize - content.readableBytes())
+		{
+			return false;
+		}
+
+		if (length == 0)
+		{
+			return true;
+		}
+
+		if (aggregation == BodyAggregation.COMPOSITE)
+		{
+			((CompositeByteBuf) content).addComponent(true, data.retain());
+		}
+
+		else
+		{
+			content.writeBytes(data, data.readerIndex(), length);
+		}
+
+		return true;
+	}
+
+	/**
+	 * @return the aggregated bytes, still owned by this body.
+	 */
+	ByteBuf content()
+	{
+		return content;
+	}
+
+	int size()
+	{
+		return content.readableBytes();
+	}
+
+	/**
+	 * Decodes the aggregated bytes, this is the only place the payload is copied into a {@link String}.
+	 */
+	String toString(Charset charset)
+	{
+		return content.toString(charset);
+	}
+
+	/**
+	 * Releases the aggregated bytes (and thereby every retained frame). Safe to call more than once.
+	 */
+	void release()
+	{
+		if (content.refCnt() > 0)
+		{
+			content.release();
+		}
+	}
+}
@@ -0,0 +1,105 @@
+package server;
+
+import static io.netty.util.internal.ObjectUtil.checkNotNull;
+
+import java.util.concurrent.TimeUnit;
+
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+
+/**
+ * @author Puspesh.Prakash
+ *
+ * <p> Hands completed events from the receiver handlers to the {@link EventSink} and applies the configured
+ * {@link Backpressure} while the sink is full. Shared by all connections, every method is called on the event loop of
+ * the handler that completed the event.
+ */
+public final class EventDispatcher
+{
+	/**
+	 * Delay between two attempts to hand over an event while reads are paused.
+	 */
+	private static final long RETRY_DELAY_MICROS = 500;
+
+	/**
+	 * Notified on the event loop once the sink accepted the event, or once it has been rejected.
+	 */
+	interface DispatchListener
+	{
+		void onDispatched(ChannelHandlerContext ctx, boolean accepted);
+	}
+
+	private final EventSink sink;
+
+	private final Backpressure backpressure;
+
+	public EventDispatcher(EventSink sink, Backpressure backpressure)
+	{
+		this.sink = checkNotNull(sink, "sink");
+		this.backpressure = checkNotNull(backpressure, "backpressure");
+	}
+
+	public EventSink sink()
+	{
+		return sink;
+	}
+
+	/**
+	 * Offers the event to the sink, ownership of the event is passed to this method.
+	 *
+	 * @param connection the channel whose reads are paused while the sink is full, i.e. the parent of an HTTP/2 stream channel.
+	 */
+	void dispatch(ChannelHandlerContext ctx, Channel connection, ReceivedEvent event, DispatchListener listener)
+	{
+		if (sink.offer(event))
+		{
+			listener.onDispatched(ctx, true);
+		}
+
+		else if (backpressure == Backpressure.REJECT)
+		{
+			event.release();
+
+			listener.onDispatched(ctx, false);
+		}
+
+		else
+		{
+			ReadSuspension.suspend(connection);
+
+			retryLater(ctx, connection, event, listener);
+		}
+	}
+
+	private void retryLater(final ChannelHandlerContext ctx, final Channel connection, final ReceivedEvent event, final DispatchListener listener)
+	{
+		ctx.executor().schedule(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				if (!ctx.channel().isActive())
+				{
+					// The stream was reset (or the connection closed) while waiting, nobody is left to ACK.
+					event.release();
+
+					ReadSuspension.resume(connection);
+				}
+
+				else if (sink.offer(event))
+				{
+					ReadSuspension.resume(connection);
+
+					listener.onDispatched(ctx, true);
+
+					ctx.flush();
+				}
+
+				else
+				{
+					retryLater(ctx, connection, event, listener);
+				}
+			}
+		}, RETRY_DELAY_MICROS, TimeUnit.MICROSECONDS);
+	}
+}
@@ -0,0 +1,20 @@
+package server;
+
+import java.util.List;
+
+/**
+ * @author Puspesh.Prakash
+ *
+ * <p> Downstream processing of received events. Implementations are invoked by an {@link EventSink} off the Netty
+ * event loops, so they are free to block.
+ *
+ * <p> The events of a batch are released by the sink once {@link #process(List)} returns, implementations that keep
+ * an event (or its payload) beyond that call must retain it.
+ */
+public interface EventProcessor
+{
+	/**
+	 * Processes a batch of events, in the order they were accepted by the sink.
+	 */
+	void process(List<ReceivedEvent> events) throws Exception;
+}
@@ -0,0 +1,34 @@
+package server;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author Puspesh.Prakash
+ *
+ * <p> Receives completed events from the receiver handlers. {@link #offer(ReceivedEvent)} is called on the Netty event
+ * loop and must never block.
+ */
+public interface EventSink
+{
+	/**
+	 * Hands a completed event over to the sink.
+	 *
+	 * @return true if the sink took ownership of the event, false if it is full (or closed) and the caller still owns it.
+	 */
+	boolean offer(ReceivedEvent event);
+
+	/**
+	 * Stops accepting events. Events accepted before are still processed.
+	 */
+	void close();
+
+	/**
+	 * Waits until the events accepted before {@link #close()} are processed.
+	 *
+	 * @return true if all events were processed in time.
+	 */
+	default boolean awaitDrained(long timeout, TimeUnit unit) throws InterruptedException
+	{
+		return true;
+	}
+}
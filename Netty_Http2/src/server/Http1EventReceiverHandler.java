@@ -2,88 +2,494 @@ package server;
 
 
 
-import static io.netty.buffer.Unpooled.wrappedBuffer;
-import static io.netty.handler.codec.http.HttpHeaderNames.CONNECTION;
-import static io.netty.handler.codec.http.HttpHeaderNames.CONTENT_LENGTH;
-import static io.netty.handler.codec.http.HttpHeaderNames.CONTENT_TYPE;
-import static io.netty.handler.codec.http.HttpHeaderValues.CLOSE;
-import static io.netty.handler.codec.http.HttpHeaderValues.KEEP_ALIVE;
+import static io.netty.handler.codec.http.HttpResponseStatus.BAD_REQUEST;
 import static io.netty.handler.codec.http.HttpResponseStatus.CONTINUE;
+import static io.netty.handler.codec.http.HttpResponseStatus.INTERNAL_SERVER_ERROR;
 import static io.netty.handler.codec.http.HttpResponseStatus.OK;
-import static io.netty.handler.codec.http.HttpVersion.HTTP_1_0;
+import static io.netty.handler.codec.http.HttpResponseStatus.REQUEST_ENTITY_TOO_LARGE;
+import static io.netty.handler.codec.http.HttpResponseStatus.SERVICE_UNAVAILABLE;
 import static io.netty.handler.codec.http.HttpVersion.HTTP_1_1;
 import static io.netty.util.internal.ObjectUtil.checkNotNull;
+import static io.netty.util.internal.ObjectUtil.checkPositive;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
 
 import io.netty.buffer.ByteBuf;
-import io.netty.buffer.ByteBufUtil;
 import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
 import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelHandlerContext;
-import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.ChannelInboundHandlerAdapter;
 import io.netty.handler.codec.http.DefaultFullHttpResponse;
-import io.netty.handler.codec.http.FullHttpRequest;
 import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpContent;
+import io.netty.handler.codec.http.HttpObjectAggregator;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpServerCodec;
 import io.netty.handler.codec.http.HttpUtil;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.handler.codec.http.LastHttpContent;
+import io.netty.handler.codec.http2.DefaultHttp2Headers;
+import io.netty.handler.codec.http2.Http2Headers;
+import io.netty.handler.codec.http2.HttpConversionUtil;
+import io.netty.util.ReferenceCountUtil;
+import logging.AsyncLog;
+import logging.Logger;
+import metrics.ServerMetrics;
+import server.AdmissionController.Rejection;
 
 /**
  * @author Puspesh.Prakash
- * 
- * HTTP handler that responds with a Event ACK.
+ *
+ * HTTP handler that hands every request as an event to the {@link EventSink} and responds with a Event ACK.
+ *
+ * <p> Requests come straight from the {@link HttpServerCodec}, without an {@link HttpObjectAggregator}: the body is
+ * collected chunk by chunk into an {@link EventBody} like the data frames of an HTTP/2 stream, or passed to the
+ * {@link BodyConsumer} in streaming mode, reading from the connection paused while a chunk is consumed. Bodies larger
+ * than the max content length are answered with 413.
+ *
+ * <p> Pipelined keep-alive requests are answered in order: every request takes a place in a queue of exchanges when its
+ * headers arrive, and responses are only written from the head of that queue, so an event still waiting for the sink
+ * (see {@link Backpressure#PAUSE}) holds back the responses behind it. All responses of a read batch go out with one
+ * flush on read-complete.
+ *
+ * <p> Every request needs an admission of the {@link AdmissionController} for itself and its buffered body, otherwise
+ * it is answered with 503 and Retry-After. A rejected body is read and discarded, so the connection stays usable.
+ *
+ * <p> Once the connection is {@link #drain(Channel) draining} the last response closes it, HTTP/1.x has no GOAWAY.
+ *
+ * <p> Not sharable, the handler keeps the state of its connection and is only called from its event loop.
  */
-public class Http1EventReceiverHandler extends SimpleChannelInboundHandler<FullHttpRequest> 
+public class Http1EventReceiverHandler extends ChannelInboundHandlerAdapter
 {
+    private static final Logger LOG = AsyncLog.logger("server");
+
     private final String establishApproach;
 
-    public Http1EventReceiverHandler(String establishApproach) 
+    private final EventDispatcher dispatcher;
+
+    private final AdmissionController admission;
+
+    private final BodyAggregation aggregation;
+
+    private final int maxContentLength;
+
+    private final BodyConsumer bodyConsumer;
+
+    /**
+     * Requests not yet answered, in the order they arrived.
+     */
+    private final ArrayDeque<Exchange> exchanges = new ArrayDeque<>();
+
+    /**
+     * Messages read while a chunk is being consumed (streaming mode), handled once the consumer is ready.
+     */
+    private final ArrayDeque<Object> pendingMessages = new ArrayDeque<>();
+
+    /**
+     * The request whose body is being read, null between requests.
+     */
+    private Exchange current;
+
+    private boolean reading;
+
+    private boolean consuming;
+
+    private boolean draining;
+
+    /**
+     * Set once a response closes the connection, later requests are ignored.
+     */
+    private boolean closing;
+
+    public Http1EventReceiverHandler(String establishApproach, EventDispatcher dispatcher)
+    {
+        this(establishApproach, dispatcher, new AdmissionController(ServerConfig.of(ServerProfile.DEFAULT)));
+    }
+
+    public Http1EventReceiverHandler(String establishApproach, EventDispatcher dispatcher, AdmissionController admission)
+    {
+        this(establishApproach, dispatcher, admission, Http2EventReceiverHandler.AGGREGATION,
+             ServerConfig.of(ServerProfile.DEFAULT).maxContentLength(), null);
+    }
+
+    /**
+     * @param maxContentLength the largest body, larger ones are answered with 413.
+     * @param bodyConsumer switches to streaming mode if not null, see {@link Http2EventReceiverHandler}.
+     */
+    public Http1EventReceiverHandler(String establishApproach, EventDispatcher dispatcher, AdmissionController admission,
+                                     BodyAggregation aggregation, int maxContentLength, BodyConsumer bodyConsumer)
     {
         this.establishApproach = checkNotNull(establishApproach, "establishApproach");
+        this.dispatcher = checkNotNull(dispatcher, "dispatcher");
+        this.admission = checkNotNull(admission, "admission");
+        this.aggregation = checkNotNull(aggregation, "aggregation");
+        this.maxContentLength = checkPositive(maxContentLength, "maxContentLength");
+        this.bodyConsumer = bodyConsumer;
     }
 
     /**
      * Reads the channel for incoming data from client(s).
      */
     @Override
-    public void channelRead0(ChannelHandlerContext ctx, FullHttpRequest req) throws Exception 
+    public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception
+    {
+        reading = true;
+
+        if (consuming)
+        {
+            pendingMessages.add(msg);
+
+            return;
+        }
+
+        handle(ctx, msg);
+    }
+
+    private void handle(ChannelHandlerContext ctx, Object msg)
+    {
+        try
+        {
+            if (msg instanceof HttpRequest)
+            {
+                onRequest(ctx, (HttpRequest) msg);
+            }
+
+            if (msg instanceof HttpContent)
+            {
+                onContent(ctx, (HttpContent) msg);
+            }
+        }
+
+        finally
+        {
+            ReferenceCountUtil.release(msg);
+        }
+    }
+
+    private void onRequest(ChannelHandlerContext ctx, HttpRequest req)
+    {
+        if (closing)
+        {
+            return;
+        }
+
+        final Exchange exchange = new Exchange(req.protocolVersion(), HttpUtil.isKeepAlive(req));
+
+        exchanges.add(exchange);
+
+        if (req.decoderResult().isFailure())
+        {
+            LOG.debug("Bad request on {}: {}", ctx.channel(), req.decoderResult().cause());
+
+            // The framing of the connection is lost, it is closed after the response.
+            exchange.keepAlive = false;
+
+            closing = true;
+
+            exchange.ready(BAD_REQUEST);
+
+            writeResponses(ctx);
+
+            return;
+        }
+
+        current = exchange;
+
+        final Http2Headers headers = new DefaultHttp2Headers(false).method(req.method().asciiName()).path(req.uri());
+
+        HttpConversionUtil.toHttp2Headers(req.headers(), headers);
+
+        exchange.request.headers(headers);
+
+        final Rejection rejection = admission.admitRequest(ctx.channel());
+
+        if (rejection != null)
+        {
+            LOG.debug("Shedding request on {}: {} limit reached", ctx.channel(), rejection.label);
+
+            reject(ctx, req, exchange, SERVICE_UNAVAILABLE);
+
+            return;
+        }
+
+        exchange.request.admitted(true);
+
+        if (HttpUtil.getContentLength(req, -1L) > maxContentLength)
+        {
+            reject(ctx, req, exchange, REQUEST_ENTITY_TOO_LARGE);
+
+            return;
+        }
+
+        // Only the request at the head of the queue may be answered right away, a 100 would overtake earlier responses.
+        if (HttpUtil.is100ContinueExpected(req) && exchanges.peek() == exchange)
+        {
+            ctx.writeAndFlush(new DefaultFullHttpResponse(HTTP_1_1, CONTINUE, Unpooled.EMPTY_BUFFER));
+        }
+    }
+
+    /**
+     * Answers a request without reading its body. A client waiting for 100-continue has not sent the body, so it is
+     * answered right away and the connection closed; otherwise the body is discarded as it arrives.
+     */
+    private void reject(ChannelHandlerContext ctx, HttpRequest req, Exchange exchange, HttpResponseStatus status)
+    {
+        exchange.discard(status);
+
+        if (HttpUtil.is100ContinueExpected(req))
+        {
+            exchange.keepAlive = false;
+
+            closing = true;
+
+            current = null;
+
+            exchange.ready(exchange.discardStatus);
+
+            writeResponses(ctx);
+        }
+    }
+
+    private void onContent(ChannelHandlerContext ctx, HttpContent content)
+    {
+        final Exchange exchange = current;
+
+        if (exchange == null)
+        {
+            return;
+        }
+
+        final boolean last = content instanceof LastHttpContent;
+
+        if (last)
+        {
+            current = null;
+        }
+
+        if (exchange.discardStatus != null)
+        {
+            if (last)
+            {
+                exchange.ready(exchange.discardStatus);
+
+                writeResponses(ctx);
+            }
+
+            return;
+        }
+
+        if (bodyConsumer != null)
+        {
+            onChunk(ctx, exchange, content.content().retain(), last);
+
+            return;
+        }
+
+        final ByteBuf data = content.content();
+
+        final int bytes = data.readableBytes();
+
+        if (admission.admitBytes(ctx.channel(), bytes) != null)
+        {
+            LOG.debug("Buffered bytes limit reached, shedding request on {}", ctx.channel());
+
+            discardOrAnswer(ctx, exchange, SERVICE_UNAVAILABLE, last);
+
+            return;
+        }
+
+        exchange.request.addAdmittedBytes(bytes);
+
+        if (!exchange.request.body(ctx.alloc(), aggregation, maxContentLength).append(data))
+        {
+            LOG.warn("Payload exceeds {} bytes on {}", maxContentLength, ctx.channel());
+
+            discardOrAnswer(ctx, exchange, REQUEST_ENTITY_TOO_LARGE, last);
+
+            return;
+        }
+
+        if (last)
+        {
+            dispatch(ctx, exchange);
+        }
+    }
+
+    private void discardOrAnswer(ChannelHandlerContext ctx, Exchange exchange, HttpResponseStatus status, boolean last)
+    {
+        exchange.discard(status);
+
+        if (last)
+        {
+            exchange.ready(status);
+
+            writeResponses(ctx);
+        }
+    }
+
+    /**
+     * Turns the completed request into an event and hands it over to the sink, the body moves into the event.
+     */
+    private void dispatch(ChannelHandlerContext ctx, Exchange exchange)
+    {
+        final EventBody body = exchange.request.body();
+
+        final ByteBuf content = body == null ? Unpooled.EMPTY_BUFFER : body.content().retain();
+
+        final ReceivedEvent event = new ReceivedEvent(exchange.request.headers(), content);
+
+        exchange.request.release();
+
+        dispatcher.dispatch(ctx, ctx.channel(), event, (c, accepted) ->
+        {
+            exchange.ready(accepted ? OK : SERVICE_UNAVAILABLE);
+
+            writeResponses(c);
+        });
+    }
+
+    /**
+     * Passes a chunk of the body to the {@link BodyConsumer} (streaming mode) and stops handling further messages until
+     * it has been consumed.
+     */
+    private void onChunk(ChannelHandlerContext ctx, Exchange exchange, ByteBuf chunk, boolean last)
+    {
+        CompletionStage<?> consumed;
+
+        try
+        {
+            consumed = bodyConsumer.onChunk(exchange.request.headers(), chunk, last);
+        }
+
+        catch (Throwable t)
+        {
+            CompletableFuture<?> failed = new CompletableFuture<>();
+
+            failed.completeExceptionally(t);
+
+            consumed = failed;
+        }
+
+        consuming = true;
+
+        ReadSuspension.suspend(ctx.channel());
+
+        consumed.whenComplete((result, cause) ->
+        {
+            if (ctx.executor().inEventLoop())
+            {
+                onChunkConsumed(ctx, exchange, chunk, last, cause);
+            }
+
+            else
+            {
+                ctx.executor().execute(() -> onChunkConsumed(ctx, exchange, chunk, last, cause));
+            }
+        });
+    }
+
+    private void onChunkConsumed(ChannelHandlerContext ctx, Exchange exchange, ByteBuf chunk, boolean last, Throwable cause)
     {
-        if (HttpUtil.is100ContinueExpected(req)) 
+        chunk.release();
+
+        consuming = false;
+
+        ReadSuspension.resume(ctx.channel());
+
+        if (!ctx.channel().isActive())
         {
-            ctx.write(new DefaultFullHttpResponse(HTTP_1_1, CONTINUE, Unpooled.EMPTY_BUFFER));
+            return;
         }
-           
-        boolean keepAlive = HttpUtil.isKeepAlive(req);
-        
-        String responseJson = "{\"response-code\":\"202\",\"response-message\":\"Accepted\"}";
 
-        ByteBuf content = ctx.alloc().buffer();     
-        
-        ByteBuf responseBytes = wrappedBuffer(responseJson.getBytes());
-        
-        content.writeBytes(responseBytes.duplicate()); 
-        
-        ByteBufUtil.writeAscii(content, " - via " + req.protocolVersion() + " (" + establishApproach + ")");
+        if (cause != null)
+        {
+            LOG.error("Body consumer failed on " + ctx.channel(), cause);
 
-        FullHttpResponse response = new DefaultFullHttpResponse(HTTP_1_1, OK, responseBytes);
-        
-        response.headers().set(CONTENT_TYPE, "application/json");
-        
-        response.headers().setInt(CONTENT_LENGTH, response.content().readableBytes());
+            discardOrAnswer(ctx, exchange, INTERNAL_SERVER_ERROR, last);
+        }
 
-        if (keepAlive) 
+        else if (last)
         {
-            if (req.protocolVersion().equals(HTTP_1_0)) 
+            exchange.request.release();
+
+            exchange.ready(OK);
+
+            writeResponses(ctx);
+        }
+
+        // Handles what arrived in the meantime, until the next chunk is handed to the consumer.
+        while (!consuming && !pendingMessages.isEmpty())
+        {
+            handle(ctx, pendingMessages.poll());
+        }
+
+        if (!reading)
+        {
+            ctx.flush();
+        }
+    }
+
+    /**
+     * Writes the responses that are ready from the head of the queue, in the order of their requests. They are flushed
+     * on read-complete, or right away if no read is in progress (an event dispatched later).
+     */
+    private void writeResponses(ChannelHandlerContext ctx)
+    {
+        while (!exchanges.isEmpty() && exchanges.peek().status != null)
+        {
+            final Exchange exchange = exchanges.poll();
+
+            // A draining connection is closed by the response to its last request.
+            final boolean keepAlive = exchange.keepAlive && !(draining && exchanges.isEmpty() && current == null);
+
+            final FullHttpResponse response = exchange.response(keepAlive, admission);
+
+            if (exchange.request.admitted())
+            {
+                admission.releaseRequest(ctx.channel());
+
+                admission.releaseBytes(ctx.channel(), exchange.request.admittedBytes());
+            }
+
+            ServerMetrics.get().requestServed(exchange.request.startNanos());
+
+            if (keepAlive)
             {
-                response.headers().set(CONNECTION, KEEP_ALIVE);
+                ctx.write(response);
             }
-            
-            ctx.write(response);
-        } 
-        
-        else 
+
+            else
+            {
+                // Tells the client (via the Connection header of the response) that it is going to close the connection.
+                ctx.write(response).addListener(ChannelFutureListener.CLOSE);
+
+                closing = true;
+
+                break;
+            }
+        }
+
+        if (!reading)
         {
-            // Tells the client that it is going to close the connection.
-            response.headers().set(CONNECTION, CLOSE);
-            
-            ctx.write(response).addListener(ChannelFutureListener.CLOSE);
+            ctx.flush();
+        }
+    }
+
+    /**
+     * Closes the connection after the responses of the requests in flight, or right away if there are none. To be
+     * called on the event loop of {@code channel}.
+     */
+    void drain(Channel channel)
+    {
+        draining = true;
+
+        if (exchanges.isEmpty() && current == null)
+        {
+            channel.close();
         }
     }
 
@@ -91,9 +497,41 @@ public class Http1EventReceiverHandler extends SimpleChannelInboundHandler<FullH
      * Flushes the channel when it is fired for accepting new requests.
      */
     @Override
-    public void channelReadComplete(ChannelHandlerContext ctx) throws Exception 
+    public void channelReadComplete(ChannelHandlerContext ctx) throws Exception
     {
+        reading = false;
+
         ctx.flush();
+
+        super.channelReadComplete(ctx);
+    }
+
+    /**
+     * Releases the requests that are still buffered, the admissions are returned by the connection handler.
+     */
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception
+    {
+        if (current != null && bodyConsumer != null && current.request.headers() != null)
+        {
+            bodyConsumer.onAborted(current.request.headers());
+        }
+
+        current = null;
+
+        for (Exchange exchange : exchanges)
+        {
+            exchange.request.release();
+        }
+
+        exchanges.clear();
+
+        while (!pendingMessages.isEmpty())
+        {
+            ReferenceCountUtil.release(pendingMessages.poll());
+        }
+
+        super.channelInactive(ctx);
     }
 
     /**
@@ -102,8 +540,69 @@ public class Http1EventReceiverHandler extends SimpleChannelInboundHandler<FullH
     @Override
     public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause)
     {
-        cause.printStackTrace();
-        
+        LOG.error("HTTP/1.x connection established via " + establishApproach + " failed", cause);
+
         ctx.close();
     }
+
+    /**
+     * One request and, once known, the status of its response.
+     */
+    private static final class Exchange
+    {
+        final StreamRequest request = new StreamRequest();
+
+        final HttpVersion protocolVersion;
+
+        boolean keepAlive;
+
+        /**
+         * The status the request is answered with once its body has been read and discarded.
+         */
+        HttpResponseStatus discardStatus;
+
+        /**
+         * Null until the response is ready to be written.
+         */
+        HttpResponseStatus status;
+
+        Exchange(HttpVersion protocolVersion, boolean keepAlive)
+        {
+            this.protocolVersion = protocolVersion;
+            this.keepAlive = keepAlive;
+        }
+
+        void discard(HttpResponseStatus status)
+        {
+            discardStatus = status;
+
+            request.release();
+        }
+
+        void ready(HttpResponseStatus status)
+        {
+            this.status = status;
+        }
+
+        /**
+         * @return the precomputed Event ACK (see {@link AckResponses}) for an accepted event, 503 if the sink or the
+         *         admission control did not take it, otherwise a response with the status alone.
+         */
+        FullHttpResponse response(boolean keepAlive, AdmissionController admission)
+        {
+            if (status.code() == OK.code())
+            {
+                return AckResponses.http1(protocolVersion, keepAlive, true);
+            }
+
+            if (status.code() == SERVICE_UNAVAILABLE.code())
+            {
+                // Without admission the request was shed, otherwise the sink was full.
+                return request.admitted() && discardStatus == null ? AckResponses.http1(protocolVersion, keepAlive, false)
+                                                                   : AckResponses.http1Overloaded(protocolVersion, keepAlive, admission.retryAfter());
+            }
+
+            return AckResponses.http1Status(protocolVersion, keepAlive, status);
+        }
+    }
 }
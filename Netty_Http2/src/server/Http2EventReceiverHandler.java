@@ -1,38 +1,160 @@
 package server;
 
 
-import static io.netty.buffer.Unpooled.wrappedBuffer;
+import static io.netty.handler.codec.http.HttpHeaderNames.CONTENT_ENCODING;
+import static io.netty.handler.codec.http.HttpHeaderNames.CONTENT_LENGTH;
+import static io.netty.handler.codec.http.HttpHeaderNames.CONTENT_TYPE;
 import static io.netty.handler.codec.http.HttpResponseStatus.ACCEPTED;
+import static io.netty.handler.codec.http.HttpResponseStatus.BAD_REQUEST;
+import static io.netty.handler.codec.http.HttpResponseStatus.INTERNAL_SERVER_ERROR;
+import static io.netty.handler.codec.http.HttpResponseStatus.REQUEST_ENTITY_TOO_LARGE;
+import static io.netty.handler.codec.http.HttpResponseStatus.SERVICE_UNAVAILABLE;
+import static io.netty.handler.codec.http.HttpResponseStatus.UNSUPPORTED_MEDIA_TYPE;
+import static io.netty.util.internal.ObjectUtil.checkNotNull;
+import static io.netty.util.internal.ObjectUtil.checkPositive;
 
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.RejectedExecutionException;
 
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
 import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelHandler.Sharable;
 import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.TooLongFrameException;
+import io.netty.handler.codec.compression.DecompressionException;
 import io.netty.handler.codec.http.HttpResponseStatus;
 import io.netty.handler.codec.http2.DefaultHttp2DataFrame;
-import io.netty.handler.codec.http2.DefaultHttp2Headers;
-import io.netty.handler.codec.http2.DefaultHttp2HeadersFrame;
+import io.netty.handler.codec.http2.DefaultHttp2ResetFrame;
 import io.netty.handler.codec.http2.Http2DataFrame;
+import io.netty.handler.codec.http2.Http2Error;
 import io.netty.handler.codec.http2.Http2Headers;
 import io.netty.handler.codec.http2.Http2HeadersFrame;
-import io.netty.util.CharsetUtil;
+import io.netty.handler.codec.http2.Http2MultiplexHandler;
+import io.netty.util.Attribute;
 import io.netty.util.ReferenceCountUtil;
+import batch.BatchFraming;
+import batch.RecordSplitter;
+import compression.BodyDecompressor;
+import compression.ContentCoding;
+import logging.AsyncLog;
+import logging.Logger;
+import metrics.ServerMetrics;
+import server.AdmissionController.Rejection;
 
 /**
  * @author Puspesh.Prakash
  * 
  * <p> This class handles requests received in dedicated http2 netty channel.
  * 
+ * <p> Request state is kept per stream in a {@link StreamRequest} attribute of the stream's child channel, see
+ * {@link Http2MultiplexHandler}. Data frames are aggregated into its {@link EventBody} (see {@link BodyAggregation})
+ * and are only decoded once the complete payload is consumed. Bodies larger than the configured max body size are answered with 413.
+ *
+ * <p> Completed events are handed to an {@link EventSink} through the {@link EventDispatcher} and acknowledged with 202
+ * as soon as the sink accepted them, processing happens off the event loop. The ACKs are precomputed
+ * {@link AckResponses} and go out with one flush per read batch.
+ *
+ * <p> Bodies with a gzip or deflate content-encoding are decompressed frame by frame as they arrive, the event (or the
+ * {@link BodyConsumer}) gets the decompressed bytes and the max body size applies to them, see {@link BodyDecompressor}.
+ *
+ * <p> On a batch route the body carries many events, which are split from the data frames as they arrive and handed to
+ * the sink one by one; the response is a status vector with one byte per event, see {@link BatchRequest}. On a duplex
+ * route the stream stays open and the statuses go back after every data frame, so a long-lived stream gets its events
+ * acknowledged as they arrive.
+ *
+ * <p> In streaming mode the body is not aggregated but passed to a {@link BodyConsumer} frame by frame. The stream
+ * channel stops auto-reading once the headers arrived and reads the next data frame only after the consumer processed
+ * the previous one. The stream channel returns a frame's bytes to the flow-control window when the frame is read, so
+ * the client never gets further than a window ahead of the consumer.
+ *
+ * <p> Every new stream needs an admission of the {@link AdmissionController}, otherwise it is refused with
+ * RST_STREAM(REFUSED_STREAM). Aggregated bodies are counted against its buffered bytes limits as they grow, a body
+ * beyond them is answered with 503 and Retry-After.
+ *
+ * <p> With a {@link Router} every stream is routed by its {@code :method} and {@code :path} as soon as the headers
+ * arrive, a stream without a route is answered with 404 (or 405) and reset. The completed request goes to the
+ * dispatcher or {@link RouteHandler} of its route, the latter runs inline or on its executor. In streaming mode the
+ * router only rejects the unrouted streams, the bodies of the others go to the {@link BodyConsumer}. Without a router
+ * every request goes to the dispatcher.
+ *
+ * <p> Open streams, flow-control stalls and the service time of every request are recorded in {@link ServerMetrics}.
+ *
  * @Sharable : To share this channel handler with multiple clients/connections.
  */
 @Sharable
 public class Http2EventReceiverHandler extends ChannelDuplexHandler 
 {	
-	private Map <String, StringBuilder> requestMap = new ConcurrentHashMap<>(); 
-	
-	private Map <String, Http2Headers> headerMap = new ConcurrentHashMap<>(); 
+	static final BodyAggregation AGGREGATION = BodyAggregation.of(System.getProperty("aggregation", "composite"));
+
+	static final int MAX_BODY_SIZE = Integer.parseInt(System.getProperty("maxBodySize", "5242880")); //5 MB
+
+	private static final Logger LOG = AsyncLog.logger("server");
+
+	private final EventDispatcher dispatcher;
+
+	private final BodyAggregation aggregation;
+
+	private final int maxBodySize;
+
+	private final BodyConsumer bodyConsumer;
+
+	private final AdmissionController admission;
+
+	private final Router router;
+
+	public Http2EventReceiverHandler(EventDispatcher dispatcher)
+	{
+		this(dispatcher, AGGREGATION, MAX_BODY_SIZE);
+	}
+
+	public Http2EventReceiverHandler(EventDispatcher dispatcher, BodyAggregation aggregation, int maxBodySize)
+	{
+		this(dispatcher, aggregation, maxBodySize, null, new AdmissionController(ServerConfig.of(ServerProfile.DEFAULT)), null);
+	}
+
+	/**
+	 * @param bodyConsumer switches to streaming mode if not null, bodies are then passed on chunk by chunk instead of
+	 *        being dispatched as events.
+	 * @param admission admits the streams and their buffered bodies, it only counts on connections that carry its
+	 *        {@link AdmissionController#connectionHandler()}.
+	 * @param router routes the requests to the dispatchers and handlers of their paths, null to dispatch all of them to
+	 *        {@code dispatcher}.
+	 */
+	public Http2EventReceiverHandler(EventDispatcher dispatcher, BodyAggregation aggregation, int maxBodySize, BodyConsumer bodyConsumer,
+									 AdmissionController admission, Router router)
+	{
+		this.dispatcher = checkNotNull(dispatcher, "dispatcher");
+		this.aggregation = checkNotNull(aggregation, "aggregation");
+		this.maxBodySize = checkPositive(maxBodySize, "maxBodySize");
+		this.bodyConsumer = bodyConsumer;
+		this.admission = checkNotNull(admission, "admission");
+		this.router = router;
+	}
+
+	/**
+	 * @return true if bodies are passed to a {@link BodyConsumer} chunk by chunk.
+	 */
+	boolean isStreaming()
+	{
+		return bodyConsumer != null;
+	}
+
+	BodyAggregation aggregation()
+	{
+		return aggregation;
+	}
+
+	/**
+	 * @return the consumer of the bodies in streaming mode, null if bodies are aggregated.
+	 */
+	BodyConsumer bodyConsumer()
+	{
+		return bodyConsumer;
+	}
 	
 	/**
 	 * Handles exceptions caught while processing incoming data from client.
@@ -40,7 +162,7 @@ public class Http2EventReceiverHandler extends ChannelDuplexHandler
 	@Override
 	public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) throws Exception 
 	{
-		cause.printStackTrace();
+		LOG.error("Exception caught on " + ctx.channel(), cause);
 		
 		ctx.close();
 	}
@@ -84,92 +206,713 @@ public class Http2EventReceiverHandler extends ChannelDuplexHandler
 		ctx.flush();
 	}
 
+	@Override
+	public void channelActive(ChannelHandlerContext ctx) throws Exception
+	{
+		ServerMetrics.get().streamOpened();
+
+		super.channelActive(ctx);
+	}
+
+	/**
+	 * A stream channel becomes unwritable once its flow-control window (or the connection's) is used up.
+	 */
+	@Override
+	public void channelWritabilityChanged(ChannelHandlerContext ctx) throws Exception
+	{
+		if (!ctx.channel().isWritable())
+		{
+			ServerMetrics.get().windowStalled();
+		}
+
+		super.channelWritabilityChanged(ctx);
+	}
+
+	/**
+	 * Releases whatever is still aggregated for the stream. The stream channel becomes inactive once the stream is closed,
+	 * which also covers a RST_STREAM received before END_STREAM and the close of the parent connection.
+	 */
+	@Override
+	public void channelInactive(ChannelHandlerContext ctx) throws Exception
+	{
+		StreamRequest request = ctx.channel().attr(StreamRequest.KEY).getAndSet(null);
+
+		if (request != null)
+		{
+			// In streaming mode the headers are kept until the last chunk has been consumed.
+			if (bodyConsumer != null && request.headers() != null)
+			{
+				bodyConsumer.onAborted(request.headers());
+			}
+
+			request.release();
+
+			if (request.admitted())
+			{
+				admission.releaseRequest(ctx.channel().parent());
+
+				admission.releaseBytes(ctx.channel().parent(), request.admittedBytes());
+			}
+		}
+
+		ServerMetrics.get().streamClosed();
+
+		super.channelInactive(ctx);
+	}
+
 	/**
 	 * Receives data frames from channel and synchronizes that data with its headers for a request once all the data frames has been received.
 	 */
 	private void onDataRead(ChannelHandlerContext ctx, Http2DataFrame data) throws Exception 
 	{				
-		String key = data.stream().id() + ctx.channel().id().asLongText();
+		StreamRequest request = streamRequest(ctx);
+
+		// A refused stream is reset, but the rest of its read batch still arrives; it admitted nothing to give back.
+		if (!request.admitted() || request.answered())
+		{
+			return;
+		}
+
+		if (request.batch() != null)
+		{
+			onBatchData(ctx, request, data);
+
+			return;
+		}
 		
-      	requestMap.putIfAbsent(key, new StringBuilder());
-      	
-      	requestMap.get(key).append(data.content().toString(CharsetUtil.UTF_8));
+		if (bodyConsumer != null)
+		{
+			if (request.headers() == null)
+			{
+				LOG.warn("Headers not received for stream:  {}", data.stream().id());
+
+				ctx.close();
+			}
+
+			else
+			{
+				final ByteBuf chunk = content(ctx, request, data);
+
+				if (chunk != null)
+				{
+					onChunk(ctx, request, chunk, data.isEndStream());
+				}
+			}
+
+			return;
+		}
+
+		final ByteBuf content = content(ctx, request, data);
+
+		if (content == null)
+		{
+			return;
+		}
+
+		try
+		{
+			final int bytes = content.readableBytes();
+
+			final Rejection rejection = admission.admitBytes(ctx.channel().parent(), bytes);
+
+			if (rejection != null)
+			{
+				LOG.debug("Buffered bytes limit reached, shedding stream:  {}", data.stream().id());
+
+				request.release();
+
+				request.answered(true);
+
+				ctx.writeAndFlush(AckResponses.http2Overloaded(admission.retryAfter()));
+
+				// Resets the stream right away, so the rest of this read batch does not reach the handler any more.
+				ctx.close();
+
+				return;
+			}
+
+			request.addAdmittedBytes(bytes);
+
+			EventBody body = request.body(ctx.alloc(), aggregation, maxBodySize);
+
+			if (!body.append(content))
+			{
+				LOG.warn("Payload exceeds {} bytes for stream:  {}", maxBodySize, data.stream().id());
+
+				reject(ctx, request, REQUEST_ENTITY_TOO_LARGE);
+
+				return;
+			}
+		}
+
+		finally
+		{
+			content.release();
+		}
 
         if (data.isEndStream()) 
         {	        
-	        if(!headerMap.containsKey(key))
+	        if(request.headers() == null)
 	        {
-	        	System.out.println("Headers not received for key:  " + key);
+	        	LOG.warn("Headers not received for stream:  {}", data.stream().id());
+
+	        	request.release();
 	        }
 	        
 	        else
 	        {
-                System.out.println("Received Headers:  " + headerMap.get(key) + "\nReceived Payload:  " + requestMap.get(key));
-
-                Http2Headers headers = new DefaultHttp2Headers();
-                
-                headers.add("key", key);
-                
-                String responseJson = "{\"response-code\":\"202\",\"response-message\":\"Accepted\"}";
-                
-                sendResponse(ctx, headers, responseJson);
-	        	
-	        	headerMap.remove(key);
-	        	
-	        	requestMap.remove(key);
+	        	onEndStream(ctx, request);
 	        }
         }
 	}
 
 	/**
-	 * Receives header frame from channel and adds it to headerMap with streamId + channelId as its key.
+	 * Receives header frame from channel and keeps it in the request state of its stream.
 	 */
 	private void onHeadersRead(ChannelHandlerContext ctx, Http2HeadersFrame headers) throws Exception 
 	{ 		
-		headerMap.put(headers.stream().id() + ctx.channel().id().asLongText(), headers.headers());
+		StreamRequest request = streamRequest(ctx);
+
+		if (request.answered())
+		{
+			return;
+		}
+
+		// Trailers never replace the request headers (a batch does not keep them), they end the stream like an empty
+		// last data frame would, so a batch is answered with its statuses and a compressed body is finished.
+		if (request.headers() != null || request.batch() != null)
+		{
+			if (headers.isEndStream())
+			{
+				onDataRead(ctx, new DefaultHttp2DataFrame(Unpooled.EMPTY_BUFFER, true).stream(headers.stream()));
+			}
+
+			return;
+		}
+
+		if (!request.admitted())
+		{
+			final Rejection rejection = admission.admitRequest(ctx.channel().parent());
+
+			if (rejection != null)
+			{
+				LOG.debug("Refusing stream {}: {} limit reached", headers.stream().id(), rejection.label);
+
+				// The stream is closed by the reset, the client knows the request was not processed and may retry it.
+				ctx.writeAndFlush(new DefaultHttp2ResetFrame(Http2Error.REFUSED_STREAM));
+
+				request.answered(true);
+
+				return;
+			}
+
+			request.admitted(true);
+		}
+
+		if (router != null && request.route() == null && !route(ctx, request, headers))
+		{
+			return;
+		}
+
+		if (request.headers() == null && !prepareDecompression(ctx, request, headers))
+		{
+			return;
+		}
+
+		if (request.route() != null && request.route().batch() && request.batch() == null)
+		{
+			onBatchHeaders(ctx, request, headers);
+
+			return;
+		}
+
+		request.headers(headers.headers());
+
+		if (bodyConsumer != null)
+		{
+			if (headers.isEndStream())
+			{
+				onChunk(ctx, request, Unpooled.EMPTY_BUFFER, true);
+			}
+
+			else
+			{
+				// From here on data frames are read one at a time, whenever the consumer is ready for the next one.
+				ctx.channel().config().setAutoRead(false);
+
+				ctx.read();
+			}
+
+			return;
+		}
+
+		// Requests without a body (e.g. GET) end with their headers.
+		if (headers.isEndStream())
+		{
+			onEndStream(ctx, request);
+		}
 	}
-	
+
 	/**
-	 * Sends HTTP/2 header and data frames to the dedicated channel.
-	 * @param ctx
-	 * @param headers
-	 * @param payload
+	 * Looks up the route of a new stream and keeps it in the request state.
+	 *
+	 * @return false if there is none, the stream has then been answered with 404 or 405 and is reset.
 	 */
-	void sendResponse(ChannelHandlerContext ctx, Http2Headers headers, String payload) 
+	private boolean route(ChannelHandlerContext ctx, StreamRequest request, Http2HeadersFrame headers)
 	{
+		final Http2Headers h = headers.headers();
+
+		final Route route = router.find(h.method(), h.path());
+
+		if (route.status() != null)
+		{
+			LOG.debug("No route for {} {} on stream:  {}", h.method(), h.path(), headers.stream().id());
+
+			reject(ctx, request, route.status());
+
+			return false;
+		}
+
+		request.route(route, route.params(h.path()));
+
+		return true;
+	}
+
+	/**
+	 * Sets up the decompression of a body with a content-encoding. The event then carries the decompressed body, so the
+	 * content-encoding and content-length headers are removed.
+	 *
+	 * @return false for an unsupported content-encoding, the stream has then been answered with 415 and is reset.
+	 */
+	private boolean prepareDecompression(ChannelHandlerContext ctx, StreamRequest request, Http2HeadersFrame headers)
+	{
+		final ContentCoding coding;
+
 		try
-		{			
-			ctx.writeAndFlush(new DefaultHttp2HeadersFrame(headers.status(ACCEPTED.codeAsText())));
-			
-			ctx.writeAndFlush(new DefaultHttp2DataFrame(wrappedBuffer(payload.getBytes()), true));		
+		{
+			coding = ContentCoding.of(headers.headers().get(CONTENT_ENCODING));
 		}
-		
-		catch(Exception e)
+
+		catch (IllegalArgumentException e)
+		{
+			LOG.debug("{} on stream:  {}", e.getMessage(), headers.stream().id());
+
+			reject(ctx, request, UNSUPPORTED_MEDIA_TYPE);
+
+			return false;
+		}
+
+		if (coding != null)
+		{
+			// A batch is split into events as it inflates, so only its chunks are bounded; see onBatchHeaders.
+			request.decompressor(request.route() != null && request.route().batch()
+					? new BodyDecompressor(ctx.alloc(), coding, maxBodySize, Long.MAX_VALUE)
+					: new BodyDecompressor(ctx.alloc(), coding, maxBodySize));
+
+			headers.headers().remove(CONTENT_ENCODING);
+
+			headers.headers().remove(CONTENT_LENGTH);
+		}
+
+		return true;
+	}
+
+	/**
+	 * @return the (decompressed) content of a data frame, owned by the caller; null if decompressing failed, the stream
+	 *         has then been answered with 413 (decompression bomb) or 400 and is reset.
+	 */
+	private ByteBuf content(ChannelHandlerContext ctx, StreamRequest request, Http2DataFrame data)
+	{
+		final BodyDecompressor decompressor = request.decompressor();
+
+		if (decompressor == null)
+		{
+			return data.content().retain();
+		}
+
+		try
+		{
+			return decompressor.decode(data.content(), data.isEndStream());
+		}
+
+		catch (TooLongFrameException e)
+		{
+			LOG.warn("Payload inflates beyond {} bytes for stream:  {}", maxBodySize, data.stream().id());
+
+			reject(ctx, request, REQUEST_ENTITY_TOO_LARGE);
+		}
+
+		catch (DecompressionException e)
 		{
-			e.printStackTrace();
+			LOG.debug("Invalid compressed payload on stream {}: {}", data.stream().id(), e.getMessage());
+
+			reject(ctx, request, BAD_REQUEST);
+		}
+
+		return null;
+	}
+
+	/**
+	 * Answers a stream with a headers-only status and resets it, the client is not going to be read any further. The
+	 * stream is closed once the response is written, which may be after the read batch (flush consolidation); its
+	 * frames up to then are dropped.
+	 *
+	 * <p> A duplex batch has sent its 200 already: it gets the statuses of the events read so far and is reset, with
+	 * ENHANCE_YOUR_CALM for a body that inflates too much and CANCEL otherwise, instead of a second status.
+	 */
+	private void reject(ChannelHandlerContext ctx, StreamRequest request, HttpResponseStatus status)
+	{
+		final ChannelFuture answered;
+
+		if (request.batch() != null && request.route().duplex())
+		{
+			sendStatuses(ctx, request.batch().statuses(), false);
+
+			answered = ctx.writeAndFlush(new DefaultHttp2ResetFrame(REQUEST_ENTITY_TOO_LARGE.equals(status)
+					? Http2Error.ENHANCE_YOUR_CALM : Http2Error.CANCEL));
+		}
+
+		else
+		{
+			answered = ctx.writeAndFlush(AckResponses.http2Status(status));
+		}
+
+		request.release();
+
+		request.answered(true);
+
+		// Closing the stream channel resets the stream (if it is not reset already).
+		answered.addListener(ChannelFutureListener.CLOSE);
+
+		recordServiceTime(ctx);
+	}
+
+	/**
+	 * Starts a batch: its events are split from the body by the framing of its content-type, unknown ones are answered
+	 * with 415. The max body size applies to every single event.
+	 */
+	private void onBatchHeaders(ChannelHandlerContext ctx, StreamRequest request, Http2HeadersFrame headers)
+	{
+		final BatchFraming framing = BatchFraming.of(headers.headers().get(CONTENT_TYPE));
+
+		if (framing == null)
+		{
+			LOG.debug("Unknown batch content-type {} on stream:  {}", headers.headers().get(CONTENT_TYPE), headers.stream().id());
+
+			reject(ctx, request, UNSUPPORTED_MEDIA_TYPE);
+
+			return;
+		}
+
+		request.batch(new BatchRequest(new RecordSplitter(framing, ctx.alloc(), maxBodySize), request.route().dispatcher().sink(),
+									   headers.headers(), ctx.alloc()));
+
+		if (request.route().duplex())
+		{
+			ctx.write(AckResponses.http2EventStreamHeaders());
+		}
+
+		if (headers.isEndStream())
+		{
+			sendBatchResponse(ctx, request);
+		}
+	}
+
+	/**
+	 * Hands the events completed by a data frame of a batch to the sink right away, the frame is not aggregated.
+	 */
+	private void onBatchData(ChannelHandlerContext ctx, StreamRequest request, Http2DataFrame data)
+	{
+		final ByteBuf content = content(ctx, request, data);
+
+		if (content == null)
+		{
+			return;
+		}
+
+		try
+		{
+			request.batch().split(content, data.isEndStream());
+		}
+
+		finally
+		{
+			content.release();
+		}
+
+		if (data.isEndStream())
+		{
+			sendBatchResponse(ctx, request);
+		}
+
+		else if (request.route().duplex())
+		{
+			sendStatuses(ctx, request.batch().statuses(), false);
+		}
+	}
+
+	/**
+	 * Answers a batch with 200 and the status vector, one byte per event. A duplex stream has sent its headers and
+	 * most statuses already, it is ended with the remaining ones.
+	 */
+	private void sendBatchResponse(ChannelHandlerContext ctx, StreamRequest request)
+	{
+		final ByteBuf statuses = request.batch().statuses();
+
+		final boolean duplex = request.route().duplex();
+
+		request.release();
+
+		if (!duplex)
+		{
+			ctx.write(AckResponses.http2BatchHeaders(statuses.readableBytes()));
+		}
+
+		sendStatuses(ctx, statuses, true);
+
+		recordServiceTime(ctx);
+	}
+
+	/**
+	 * Writes the statuses of a batch as a data frame, which goes out with the flush at the end of the read batch.
+	 */
+	private static void sendStatuses(ChannelHandlerContext ctx, ByteBuf statuses, boolean endStream)
+	{
+		if (statuses.isReadable() || endStream)
+		{
+			ctx.write(new DefaultHttp2DataFrame(statuses, endStream));
+		}
+
+		else
+		{
+			statuses.release();
+		}
+	}
+
+	/**
+	 * Passes a chunk of the body to the {@link BodyConsumer} (streaming mode). Once it has been consumed, the next data
+	 * frame is read, or the request is acknowledged if it was the last chunk.
+	 */
+	private void onChunk(ChannelHandlerContext ctx, StreamRequest request, ByteBuf chunk, boolean last)
+	{
+		CompletionStage<?> consumed;
+
+		try
+		{
+			consumed = bodyConsumer.onChunk(request.headers(), chunk, last);
+		}
+
+		catch (Throwable t)
+		{
+			CompletableFuture<?> failed = new CompletableFuture<>();
+
+			failed.completeExceptionally(t);
+
+			consumed = failed;
+		}
+
+		consumed.whenComplete((result, cause) ->
+		{
+			if (ctx.executor().inEventLoop())
+			{
+				onChunkConsumed(ctx, request, chunk, last, cause);
+			}
+
+			else
+			{
+				ctx.executor().execute(() -> onChunkConsumed(ctx, request, chunk, last, cause));
+			}
+		});
+	}
+
+	private void onChunkConsumed(ChannelHandlerContext ctx, StreamRequest request, ByteBuf chunk, boolean last, Throwable cause)
+	{
+		chunk.release();
+
+		if (cause != null)
+		{
+			LOG.error("Body consumer failed for stream:  " + ctx.channel(), cause);
+
+			request.release();
+
+			// The client may still be sending, closing the stream channel resets the stream.
+			ctx.writeAndFlush(AckResponses.http2Status(INTERNAL_SERVER_ERROR)).addListener(ChannelFutureListener.CLOSE);
+		}
+
+		else if (last)
+		{
+			request.release();
+
+			sendResponse(ctx);
+
+			ctx.flush();
+		}
+
+		else
+		{
+			ctx.read();
 		}
 	}
+
+	/**
+	 * Turns the completed request of a stream into an event and hands it over to the sink, or to the handler of its
+	 * route. The payload moves into the event, the request state of the stream is released.
+	 */
+	private void onEndStream(ChannelHandlerContext ctx, StreamRequest request)
+	{
+		EventBody body = request.body();
+
+		ByteBuf content = body == null ? Unpooled.EMPTY_BUFFER : body.content().retain();
+
+		ReceivedEvent event = new ReceivedEvent(request.headers(), content);
+
+		request.release();
+
+		final Route route = request.route();
+
+		if (route == null)
+		{
+			dispatcher.dispatch(ctx, ctx.channel().parent(), event, this::onDispatched);
+		}
+
+		else if (route.dispatcher() != null)
+		{
+			route.dispatcher().dispatch(ctx, ctx.channel().parent(), event, this::onDispatched);
+		}
+
+		else
+		{
+			handle(ctx, route, request.params(), event);
+		}
+	}
+
+	/**
+	 * Runs the handler of a route inline, or on its executor and answers back on the event loop.
+	 */
+	private void handle(ChannelHandlerContext ctx, Route route, PathParams params, ReceivedEvent event)
+	{
+		if (route.executor() == null)
+		{
+			onHandled(ctx, route.handle(event, params));
+
+			return;
+		}
+
+		try
+		{
+			route.executor().execute(() ->
+			{
+				final HttpResponseStatus status = route.handle(event, params);
+
+				ctx.executor().execute(() ->
+				{
+					onHandled(ctx, status);
+
+					ctx.flush();
+				});
+			});
+		}
+
+		catch (RejectedExecutionException e)
+		{
+			event.release();
+
+			sendHttpAckResponse(ctx, SERVICE_UNAVAILABLE);
+		}
+	}
+
+	/**
+	 * Answers a handled request: 202 with the Event ACK, any other status without a body.
+	 */
+	private void onHandled(ChannelHandlerContext ctx, HttpResponseStatus status)
+	{
+		// The stream may have been reset while the handler ran.
+		if (!ctx.channel().isActive())
+		{
+			return;
+		}
+
+		if (status.code() == ACCEPTED.code())
+		{
+			sendResponse(ctx);
+		}
+
+		else
+		{
+			sendHttpAckResponse(ctx, status);
+		}
+	}
+
+	/**
+	 * Acknowledges an event with 202 once the sink accepted it, or answers 503 if the sink is full.
+	 */
+	private void onDispatched(ChannelHandlerContext ctx, boolean accepted)
+	{
+		if (accepted)
+		{
+			sendResponse(ctx);
+		}
+
+		else
+		{
+			sendHttpAckResponse(ctx, SERVICE_UNAVAILABLE);
+		}
+	}
+
+	/**
+	 * Returns the request state of the stream served by the given (stream) channel, creating it on first use.
+	 */
+	private static StreamRequest streamRequest(ChannelHandlerContext ctx)
+	{
+		Attribute<StreamRequest> attr = ctx.channel().attr(StreamRequest.KEY);
+
+		StreamRequest request = attr.get();
+
+		if (request == null)
+		{
+			request = new StreamRequest();
+
+			attr.set(request);
+		}
+
+		return request;
+	}
 	
 	/**
-	 * Sends HTTP/2 header frames to the dedicated channel.
+	 * Writes the precomputed 202 header and data frames (see {@link AckResponses}) to the dedicated channel. They are
+	 * flushed once per read batch by {@link #channelReadComplete(ChannelHandlerContext)}, or by the
+	 * {@link EventDispatcher} if the event was dispatched later.
 	 * @param ctx
-	 * @param headers
-	 * @param payload
+	 */
+	void sendResponse(ChannelHandlerContext ctx) 
+	{
+		ctx.write(AckResponses.http2AcceptedHeaders());
+		
+		ctx.write(AckResponses.http2AcceptedBody());
+
+		recordServiceTime(ctx);
+	}
+	
+	/**
+	 * Writes a headers-only HTTP/2 status response (see {@link AckResponses}) to the dedicated channel.
+	 * @param ctx
+	 * @param status
 	 */
 	void sendHttpAckResponse(ChannelHandlerContext ctx, HttpResponseStatus status) 
 	{
-		try 
-		{
-			System.out.println("Sending HTTP/2 status ACK to client with status code");
+		ctx.write(AckResponses.http2Status(status));
 
-			Http2Headers headers = new DefaultHttp2Headers().status(status.codeAsText());
-			
-			ctx.write(new DefaultHttp2HeadersFrame(headers, true));
-		} 
-		
-		catch (Exception e) 
+		recordServiceTime(ctx);
+	}
+
+	private static void recordServiceTime(ChannelHandlerContext ctx)
+	{
+		// The request state stays attached to the stream channel until it closes, even once released.
+		StreamRequest request = ctx.channel().attr(StreamRequest.KEY).get();
+
+		if (request != null)
 		{
-			e.printStackTrace();
+			ServerMetrics.get().requestServed(request.startNanos());
 		}
 	}
 }
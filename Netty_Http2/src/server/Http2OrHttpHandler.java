@@ -1,10 +1,9 @@
 package server;
 
+import static io.netty.util.internal.ObjectUtil.checkNotNull;
+
 import io.netty.channel.ChannelHandlerContext;
-import io.netty.handler.codec.http.HttpObjectAggregator;
 import io.netty.handler.codec.http.HttpServerCodec;
-import io.netty.handler.codec.http2.Http2FrameCodecBuilder;
-import io.netty.handler.codec.http2.Http2MultiplexHandler;
 import io.netty.handler.ssl.ApplicationProtocolNames;
 import io.netty.handler.ssl.ApplicationProtocolNegotiationHandler;
 
@@ -16,13 +15,40 @@ import io.netty.handler.ssl.ApplicationProtocolNegotiationHandler;
  */
 public class Http2OrHttpHandler extends ApplicationProtocolNegotiationHandler {
 
-    private static final int MAX_CONTENT_LENGTH = 1024 * 1024; //1 MB
+    private final EventDispatcher dispatcher;
+
+    private final Http2EventReceiverHandler http2Handler;
+
+    private final ServerConfig config;
 
-    protected Http2OrHttpHandler() 
+    private final AdmissionController admission;
+
+    protected Http2OrHttpHandler(EventDispatcher dispatcher) 
+    {
+    	this(dispatcher, new Http2EventReceiverHandler(dispatcher), ServerConfig.of(ServerProfile.DEFAULT));
+    }
+
+    protected Http2OrHttpHandler(EventDispatcher dispatcher, Http2EventReceiverHandler http2Handler, ServerConfig config) 
+    {
+    	this(dispatcher, http2Handler, config, new AdmissionController(config));
+    }
+
+    /**
+     * @param http2Handler the (sharable) handler of the HTTP/2 streams.
+     * @param config the HTTP/2 settings and limits, the same as on the clear-text pipeline.
+     * @param admission admits the HTTP/1.1 requests, the same as the one of {@code http2Handler}.
+     */
+    protected Http2OrHttpHandler(EventDispatcher dispatcher, Http2EventReceiverHandler http2Handler, ServerConfig config,
+                                 AdmissionController admission) 
     {
     	super(ApplicationProtocolNames.HTTP_2);
     	
 //        super(ApplicationProtocolNames.HTTP_1_1);
+    	
+    	this.dispatcher = checkNotNull(dispatcher, "dispatcher");
+    	this.http2Handler = checkNotNull(http2Handler, "http2Handler");
+    	this.config = checkNotNull(config, "config");
+    	this.admission = checkNotNull(admission, "admission");
     }
 
     @Override
@@ -30,18 +56,19 @@ public class Http2OrHttpHandler extends ApplicationProtocolNegotiationHandler {
     {
         if (ApplicationProtocolNames.HTTP_2.equals(protocol)) 
         {
-            ctx.pipeline().addLast(Http2FrameCodecBuilder.forServer().build());
+            ctx.pipeline().addLast(config.newFrameCodec(http2Handler.isStreaming()));
             
-            ctx.pipeline().addLast(new Http2MultiplexHandler(new Http2EventReceiverHandler()));
+            ctx.pipeline().addLast(Http2ServerInitializer.newHttp2Handlers(config, http2Handler));
             
             return;
         }
 
         if (ApplicationProtocolNames.HTTP_1_1.equals(protocol)) 
         {
+            // Bodies are read chunk by chunk like HTTP/2 data frames, with the same aggregation or body consumer.
             ctx.pipeline().addLast(new HttpServerCodec(),
-                                   new HttpObjectAggregator(MAX_CONTENT_LENGTH),
-                                   new Http1EventReceiverHandler("ALPN Negotiation"));
+                                   new Http1EventReceiverHandler("ALPN Negotiation", dispatcher, admission, http2Handler.aggregation(),
+                                                                 config.maxContentLength(), http2Handler.bodyConsumer()));
             return;
         }
 
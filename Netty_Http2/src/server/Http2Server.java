@@ -1,29 +1,27 @@
 package server;
 
 
-import java.net.InetSocketAddress;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
 
-import io.netty.bootstrap.ServerBootstrap;
-import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelOption;
 import io.netty.channel.EventLoopGroup;
 import io.netty.channel.WriteBufferWaterMark;
-import io.netty.channel.nio.NioEventLoopGroup;
-import io.netty.channel.socket.nio.NioServerSocketChannel;
-import io.netty.handler.codec.http2.Http2SecurityUtil;
+import io.netty.channel.group.ChannelGroup;
+import io.netty.channel.group.DefaultChannelGroup;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpResponseStatus;
 import io.netty.handler.logging.LogLevel;
 import io.netty.handler.logging.LoggingHandler;
-import io.netty.handler.ssl.ApplicationProtocolConfig;
-import io.netty.handler.ssl.ApplicationProtocolConfig.Protocol;
-import io.netty.handler.ssl.ApplicationProtocolConfig.SelectedListenerFailureBehavior;
-import io.netty.handler.ssl.ApplicationProtocolConfig.SelectorFailureBehavior;
-import io.netty.handler.ssl.ApplicationProtocolNames;
 import io.netty.handler.ssl.SslContext;
-import io.netty.handler.ssl.SslContextBuilder;
-import io.netty.handler.ssl.SslProvider;
-import io.netty.handler.ssl.SupportedCipherSuiteFilter;
-import io.netty.handler.ssl.util.SelfSignedCertificate;
 import io.netty.util.NettyRuntime;
+import io.netty.util.concurrent.GlobalEventExecutor;
+import admin.AdminServer;
+import logging.AsyncLog;
+import logging.Level;
+import metrics.ServerMetrics;
+import transport.TransportConfig;
 
 /**
  * @author Puspesh.Prakash
@@ -31,6 +29,36 @@ import io.netty.util.NettyRuntime;
  * A HTTP/2 Server that responds to requests with an event. 
  *
  * <p> This class is making use of the "multiplexing" http2 API, where streams are mapped to child Channels. 
+ *
+ * <p> The socket transport (io_uring, epoll or NIO) is picked by {@link TransportConfig}. The server binds the
+ * addresses of {@code -Dlisten} (default 127.0.0.1:port), with SO_REUSEPORT one channel per worker event loop, so the
+ * kernel spreads incoming connections across the cores, see {@link ServerListeners}.
+ *
+ * <p> With {@code -Dstreaming=true} HTTP/2 request bodies are consumed chunk by chunk (see {@link BodyConsumer}) instead
+ * of being aggregated into events.
+ *
+ * <p> With {@code -Dssl} connections are secured by {@link ServerTls}: certificates from files, OpenSSL, session
+ * resumption and optional OCSP stapling.
+ *
+ * <p> HTTP/2 settings, limits and thread counts come from a {@link ServerConfig}: a {@link ServerProfile} preset
+ * ({@code -Dprofile=default|small-events|large-uploads}), a properties file ({@code -Dconfig=path}) and system properties.
+ *
+ * <p> Metrics are served in the Prometheus text format at {@code http://adminHost:adminPort/metrics} (default
+ * 127.0.0.1:9090, a negative adminPort disables the admin endpoint).
+ *
+ * <p> The server shuts down gracefully on SIGTERM/SIGINT or a {@code POST} to {@code /shutdown} on the admin endpoint:
+ * it stops accepting, sends GOAWAY on every HTTP/2 connection and waits up to {@code shutdownTimeout} seconds for the
+ * in-flight streams and queued events, see {@link ShutdownController}.
+ *
+ * <p> HTTP/2 requests are routed by method and path (see {@link Router}): events are accepted at {@code /} and
+ * {@code /events/{type}}, batches of events at {@code /batch}, long-lived
+ * event streams at {@code /stream}, {@code GET /health} is answered inline with 200, anything else with 404.
+ *
+ * <p> Under overload new streams and requests are shed by the {@link AdmissionController} (REFUSED_STREAM, or 503 with
+ * Retry-After) instead of being buffered.
+ *
+ * <p> Logging goes through {@link AsyncLog}, off the event loops; {@code -Dlog.level.netty=DEBUG} additionally installs
+ * Netty's (synchronous) {@link LoggingHandler} on the acceptor.
  */
 
 public final class Http2Server 
@@ -39,73 +67,137 @@ public final class Http2Server
 
     static final int PORT = Integer.parseInt(System.getProperty("port", SSL? "8443" : "8089"));
 
+    static final String LISTEN = System.getProperty("listen", "127.0.0.1:" + PORT);
+
+    static final int SINK_CAPACITY = Integer.parseInt(System.getProperty("sinkCapacity", "65536"));
+
+    static final int SINK_BATCH_SIZE = Integer.parseInt(System.getProperty("sinkBatchSize", "256"));
+
+    static final int SINK_CONSUMERS = Integer.parseInt(System.getProperty("sinkConsumers", String.valueOf(NettyRuntime.availableProcessors())));
+
+    static final Backpressure BACKPRESSURE = Backpressure.of(System.getProperty("backpressure", "reject"));
+
+    static final boolean STREAMING = Boolean.getBoolean("streaming");
+
+    static final String ADMIN_HOST = System.getProperty("adminHost", "127.0.0.1");
+
+    static final int ADMIN_PORT = Integer.parseInt(System.getProperty("adminPort", "9090"));
+
     public static void main(String[] args) throws Exception 
     {
-    	final SslContext sslCtx;
+    	final ServerTls tls = SSL ? ServerTls.fromSystemProperties() : null;
+    	
+        final SslContext sslCtx = tls != null ? tls.context() : null;
+    	
+        // Events are processed off the event loops, the handlers only enqueue them.
+        EventSink eventSink = new QueueingEventSink(new LoggingEventProcessor(), SINK_CAPACITY, SINK_BATCH_SIZE, SINK_CONSUMERS);
         
-        if (SSL) 
-        {
-            SslProvider provider = SslProvider.isAlpnSupported(SslProvider.OPENSSL) ? SslProvider.OPENSSL : SslProvider.JDK;
-            
-            SelfSignedCertificate ssc = new SelfSignedCertificate();
-            
-            sslCtx = SslContextBuilder.forServer(ssc.certificate(), ssc.privateKey())
-					                  .sslProvider(provider)
-					                  /* NOTE: the cipher filter may not include all ciphers required by the HTTP/2 specification.
-					                   * Please refer to the HTTP/2 specification for cipher requirements. */
-					                  .ciphers(Http2SecurityUtil.CIPHERS, SupportedCipherSuiteFilter.INSTANCE)
-					                  .applicationProtocolConfig(new ApplicationProtocolConfig(Protocol.ALPN,
-					                     // NO_ADVERTISE is currently the only mode supported by both OpenSsl and JDK providers.
-					                     SelectorFailureBehavior.NO_ADVERTISE,
-					                     // ACCEPT is currently the only mode supported by both OpenSsl and JDK providers.
-					                     SelectedListenerFailureBehavior.ACCEPT, ApplicationProtocolNames.HTTP_2, 
-					                     ApplicationProtocolNames.HTTP_1_1))
-					                  .build();
-        } 
+        EventDispatcher dispatcher = new EventDispatcher(eventSink, BACKPRESSURE);
         
-        else 
-        {
-            sslCtx = null;
-        }
-    	
-        ChannelFuture f = null;
+        ServerConfig config = ServerConfig.fromSystemProperties();
+        
+        TransportConfig transportConfig = config.transportConfig();
+        
+        // With SO_REUSEPORT the workers accept their connections themselves, the parent group only runs the admin
+        // endpoint, housekeeping tasks and the acceptor of the fallback listener.
+        EventLoopGroup parentGroup = transportConfig.newEventLoopGroup("acceptor", 1, false);
+		EventLoopGroup workerGroup = transportConfig.newEventLoopGroup("worker", config.workerThreads(), true);
+		
+		System.out.println("Worker Threads: " + (config.workerThreads() > 0 ? config.workerThreads() : NettyRuntime.availableProcessors() * 2));
+		
+		System.out.println("Transport: " + transportConfig);
+		
+		System.out.println("Config: " + config);
+		
+		ServerMetrics.get().register("acceptor", parentGroup);
+		
+		ServerMetrics.get().register("worker", workerGroup);
+		
+		List<ScheduledFuture<?>> tlsTasks = Collections.emptyList();
+		
+		if (tls != null)
+		{
+			System.out.println("TLS provider: " + tls.provider());
+			
+			ServerMetrics.get().register(tls.sessionContext());
+			
+			// Ticket key rotation and OCSP refresh are rare and cheap, the acceptor loop runs them.
+			tlsTasks = tls.start(parentGroup);
+		}
+		
+		ChannelGroup connections = new DefaultChannelGroup("connections", GlobalEventExecutor.INSTANCE);
+		
+		AdmissionController admission = new AdmissionController(config);
+		
+		admission.start(workerGroup);
+		
+		ServerMetrics.get().registerAdmission(admission::requests, admission::bufferedBytes);
         
-        EventLoopGroup parentGroup = new NioEventLoopGroup();
-		EventLoopGroup workerGroup = new NioEventLoopGroup();
+		Router router = Router.builder()
+				.route(HttpMethod.POST, "/", dispatcher)
+				.route(HttpMethod.GET, "/", dispatcher)
+				.route(HttpMethod.POST, "/events/{type}", dispatcher)
+				.batch(HttpMethod.POST, "/batch", dispatcher)
+				.duplex(HttpMethod.POST, "/stream", dispatcher)
+				.route(HttpMethod.GET, "/health", (event, params) -> HttpResponseStatus.OK)
+				.build();
+        
+		Http2ServerInitializer initializer = new Http2ServerInitializer(sslCtx, config, dispatcher, STREAMING ? new LoggingBodyConsumer() : null,
+																		connections, admission, router);
+		
+		ServerListeners listeners = new ServerListeners(transportConfig, parentGroup, workerGroup, b ->
+		{
+			b.option(ChannelOption.SO_BACKLOG, 4096)
+			 .option(ChannelOption.SO_RCVBUF, 5242880) //5 MB
+			 .option(ChannelOption.WRITE_BUFFER_WATER_MARK, new WriteBufferWaterMark(3145728, 5242880)) //(low: 3 MB, high: 5 MB)
+			 .childHandler(initializer);
+			
+			// Netty's LoggingHandler logs synchronously on the event loop, so it is only installed for debugging.
+			if (AsyncLog.logger("netty").isEnabled(Level.DEBUG))
+			{
+				b.handler(new LoggingHandler(LogLevel.INFO));
+			}
+		});
 		
-		System.out.println("Available Threads: " + NettyRuntime.availableProcessors() * 2);
+		ShutdownController shutdownController = new ShutdownController(listeners, connections, eventSink, config.shutdownTimeout(),
+																	   workerGroup, parentGroup);
+		
+		shutdownController.cancelOnShutdown(tlsTasks).installShutdownHook();
+		
+		AdminServer adminServer = new AdminServer(parentGroup, transportConfig.transport())
+				.route("/metrics", ServerMetrics.contentType(), request -> ServerMetrics.get().scrape())
+				.route(HttpMethod.POST, "/shutdown", "text/plain", request ->
+				{
+					shutdownController.shutdownAsync();
+					
+					return "Shutting down\n";
+				});
         
         try 
         {
-            ServerBootstrap b = new ServerBootstrap();
-
-            b.group(parentGroup, workerGroup)
-             .option(ChannelOption.SO_BACKLOG, 4096)
-             .option(ChannelOption.SO_RCVBUF, 5242880) //5 MB
-             .option(ChannelOption.WRITE_BUFFER_WATER_MARK, new WriteBufferWaterMark(3145728, 5242880)) //(low: 3 MB, high: 5 MB)
-             .channel(NioServerSocketChannel.class)
-             .handler(new LoggingHandler(LogLevel.INFO))
-             .childHandler(new Http2ServerInitializer(sslCtx));
+            listeners.bind(ServerListeners.addresses(LISTEN));
             
-            f = b.bind(new InetSocketAddress("127.0.0.1", 8089)).sync();
-            
-			System.out.println("Server running on " + f.channel().localAddress());
+			System.out.println("Server running: " + listeners);
+			
+			if (ADMIN_PORT >= 0)
+			{
+				System.out.println("Admin endpoint on " + adminServer.bind(ADMIN_HOST, ADMIN_PORT).sync().channel().localAddress());
+			}
         } 
         
         catch (Exception e) 
         {
         	e.printStackTrace();
+        	
+        	shutdownController.shutdownAsync();
 		}
         
         finally 
         {
         	try 
         	{
-        		f.channel().closeFuture().sync();
-        		
-				parentGroup.shutdownGracefully().sync();
-				
-				workerGroup.shutdownGracefully().sync();
+        		// The listeners, connections, event sink and event loops are closed by the shutdown controller.
+        		shutdownController.awaitTermination();
 			} 
         	
         	catch (InterruptedException e) 
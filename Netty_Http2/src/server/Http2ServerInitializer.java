@@ -1,56 +1,111 @@
 package server;
 
+import static io.netty.util.internal.ObjectUtil.checkNotNull;
+
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerAdapter;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelInitializer;
 import io.netty.channel.ChannelPipeline;
-import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.group.ChannelGroup;
 import io.netty.channel.socket.SocketChannel;
-import io.netty.handler.codec.http.HttpMessage;
-import io.netty.handler.codec.http.HttpObjectAggregator;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.HttpHeaders;
 import io.netty.handler.codec.http.HttpServerCodec;
 import io.netty.handler.codec.http.HttpServerUpgradeHandler;
 import io.netty.handler.codec.http.HttpServerUpgradeHandler.UpgradeCodec;
 import io.netty.handler.codec.http.HttpServerUpgradeHandler.UpgradeCodecFactory;
+import io.netty.handler.codec.http2.CleartextHttp2ServerUpgradeHandler;
 import io.netty.handler.codec.http2.Http2CodecUtil;
-import io.netty.handler.codec.http2.Http2FrameCodecBuilder;
 import io.netty.handler.codec.http2.Http2MultiplexHandler;
 import io.netty.handler.codec.http2.Http2ServerUpgradeCodec;
-import io.netty.handler.codec.http2.Http2Settings;
+import io.netty.handler.flush.FlushConsolidationHandler;
 import io.netty.handler.ssl.SslContext;
+import io.netty.handler.ssl.SslHandler;
+import io.netty.handler.timeout.IdleStateHandler;
 import io.netty.util.AsciiString;
-import io.netty.util.ReferenceCountUtil;
+import logging.AsyncLog;
+import logging.Logger;
+import metrics.ServerMetrics;
 
 /**
  * @author Puspesh.Prakash
  * 
  *  <p>    Sets up the Netty pipeline for the example server. 
- *  	   Depending on the end-point configuration, sets up the pipeline for NPN or clear-text HTTP upgrade to HTTP/2.
+ *  	   With TLS the protocol is negotiated by ALPN, in clear text HTTP/2 with prior knowledge, the h2c upgrade and
+ *  	   plain HTTP/1.1 are told apart on the same port, see {@link #configureClearText(SocketChannel)}.
+ *
+ *  <p>    All paths to HTTP/2 get the same {@link ServerConfig}: SETTINGS, connection window and idle timeout.
+ *
+ *  <p>    Every connection passes the {@link AdmissionController}, which bounds connections, streams and buffered bytes.
  */
 public class Http2ServerInitializer extends ChannelInitializer<SocketChannel>
 {
+    private static final Logger LOG = AsyncLog.logger("server");
+
     private final SslContext sslCtx;
-    private final int maxHttpContentLength;
+    private final ServerConfig config;
+    private final EventDispatcher dispatcher;
+    private final Http2EventReceiverHandler http2Handler;
+    private final boolean streaming;
+    private final ChannelGroup connections;
+    private final AdmissionController admission;
 
-    public Http2ServerInitializer(SslContext sslCtx) 
+    public Http2ServerInitializer(SslContext sslCtx, EventDispatcher dispatcher) 
     {
-        this(sslCtx, Integer.MAX_VALUE);
+        this(sslCtx, Integer.MAX_VALUE, dispatcher);
     }
 
-    public Http2ServerInitializer(SslContext sslCtx, int maxHttpContentLength) 
+    public Http2ServerInitializer(SslContext sslCtx, int maxHttpContentLength, EventDispatcher dispatcher) 
+    {
+        this(sslCtx, ServerConfig.of(ServerProfile.DEFAULT).with("maxContentLength", maxHttpContentLength), dispatcher,
+             null, null, null, null);
+    }
+
+    /**
+     * @param config the HTTP/2 settings and limits, applied alike to the clear-text, TLS and upgrade pipelines.
+     * @param bodyConsumer switches the HTTP/2 handler to streaming mode if not null, see {@link Http2EventReceiverHandler}.
+     * @param connections collects the accepted connections (they leave it when closed) for a graceful shutdown, see
+     *        {@link ShutdownController}; may be null.
+     * @param admission the admission control of the server, its event loop lag probes are started separately, see
+     *        {@link AdmissionController#start(io.netty.channel.EventLoopGroup)}; null for one of its own, after
+     *        {@code config} and without the probes.
+     * @param router routes the HTTP/2 requests by method and path, null to dispatch all of them, see {@link Router}.
+     */
+    public Http2ServerInitializer(SslContext sslCtx, ServerConfig config, EventDispatcher dispatcher, BodyConsumer bodyConsumer,
+                                  ChannelGroup connections, AdmissionController admission, Router router) 
     {
-        if (maxHttpContentLength < 0) 
-        {
-            throw new IllegalArgumentException("maxHttpContentLength (expected >= 0): " + maxHttpContentLength);
-        }
-        
         this.sslCtx = sslCtx;
-        this.maxHttpContentLength = maxHttpContentLength;
+        this.config = checkNotNull(config, "config");
+        this.dispatcher = checkNotNull(dispatcher, "dispatcher");
+        this.admission = admission != null ? admission : new AdmissionController(config);
+        this.http2Handler = new Http2EventReceiverHandler(dispatcher, Http2EventReceiverHandler.AGGREGATION,
+                                                          config.maxBodySize(), bodyConsumer, this.admission, router);
+        this.streaming = bodyConsumer != null;
+        this.connections = connections;
     }
     
 	
 	@Override
 	public void initChannel(SocketChannel ch)
 	{
+		if (connections != null)
+		{
+			connections.add(ch);
+		}
+
+		ch.pipeline().addLast(ServerMetrics.get().connectionHandler());
+
+		ch.pipeline().addLast(admission.connectionHandler());
+
+		if (config.idleTimeout() > 0)
+		{
+			ch.pipeline().addLast(new IdleStateHandler(0, 0, config.idleTimeout(), TimeUnit.SECONDS), IdleTimeoutHandler.INSTANCE);
+		}
+
 		if (sslCtx != null) 
         {
             configureSsl(ch);
@@ -58,21 +113,88 @@ public class Http2ServerInitializer extends ChannelInitializer<SocketChannel>
         
         else 
         {
-        	// Pipeline for clear-text upgrade from HTTP to HTTP/2.0
-//            configureClearTextHttp1(ch);
-        	
-        	// Pipeline for direct HTTP/2.0 requests.
+        	// Prior knowledge, h2c upgrade and plain HTTP/1.1 on the same port.
         	configureClearText(ch); 
         }
 	}
 
+	/**
+	 * Configures the clear-text pipeline, which serves three kinds of clients on one port without an extra round trip:
+	 * <ul>
+	 * <li> HTTP/2 with prior knowledge: the {@link CleartextHttp2ServerUpgradeHandler} detects the connection preface and
+	 *      puts the HTTP/2 handlers in place of the HTTP/1.1 handlers before the first frame is decoded;
+	 * <li> HTTP/1.1 with {@code Upgrade: h2c}: the {@link HttpServerUpgradeHandler} switches to HTTP/2 and the upgrade
+	 *      request is served as stream 1;
+	 * <li> plain HTTP/1.1: the requests pass the upgrade handler on to the {@link Http1EventReceiverHandler}.
+	 * </ul>
+	 */
 	private void configureClearText(SocketChannel ch)
 	{
-		Http2FrameCodecBuilder frameCodecBuilder = Http2FrameCodecBuilder.forServer().initialSettings(Http2Settings.defaultSettings()
-																		 .maxFrameSize(5242880).initialWindowSize(5242880)) 
-																		 .autoAckPingFrame(true);
+		final ChannelPipeline p = ch.pipeline();
+
+		// Stays in front of the HTTP/2 codec once the connection is upgraded.
+		addFlushConsolidation(p);
+
+		final HttpServerCodec sourceCodec = new HttpServerCodec();
+
+		final HttpServerUpgradeHandler upgradeHandler = new HttpServerUpgradeHandler(sourceCodec, upgradeCodecFactory,
+																					 config.maxContentLength());
+
+		p.addLast(new CleartextHttp2ServerUpgradeHandler(sourceCodec, upgradeHandler, newPriorKnowledgeHandler()));
+
+		p.addLast(new Http1EventReceiverHandler("Clear-text HTTP/1.1", dispatcher, admission, http2Handler.aggregation(),
+												config.maxContentLength(), http2Handler.bodyConsumer()));
+	}
+
+	/**
+	 * @return the handler added once a client with prior knowledge sent the preface: it installs the HTTP/2 handlers in
+	 *         its place and removes the HTTP/1.1 handler.
+	 */
+	private ChannelHandler newPriorKnowledgeHandler()
+	{
+		return new ChannelHandlerAdapter()
+		{
+			@Override
+			public void handlerAdded(ChannelHandlerContext ctx)
+			{
+				LOG.debug("HTTP/2 with prior knowledge on {}", ctx.channel());
+
+				final ChannelPipeline p = ctx.pipeline();
+
+				final ChannelHandler frameCodec = config.newFrameCodec(streaming);
+
+				p.addAfter(ctx.name(), null, frameCodec);
+
+				final String codecName = p.context(frameCodec).name();
+
+				// Last one first, each right behind the codec: the multiplex handler looks for the codec when it is
+				// added, and the connection window handler removes itself once added.
+				final ChannelHandler[] handlers = newHttp2Handlers();
+
+				for (int i = handlers.length - 1; i >= 0; i--)
+				{
+					p.addAfter(codecName, null, handlers[i]);
+				}
+
+				p.remove(Http1EventReceiverHandler.class);
+
+				p.remove(this);
+			}
+		};
+	}
+
+	/**
+	 * @return the handlers behind the frame codec, the same on every path to HTTP/2.
+	 */
+	static ChannelHandler[] newHttp2Handlers(ServerConfig config, Http2EventReceiverHandler http2Handler)
+	{
+		return new ChannelHandler[] { new ConnectionWindowHandler(config.connectionWindowSize()),
+									  new Http2MultiplexHandler(http2Handler) };
+	}
 
-		ch.pipeline().addLast(frameCodecBuilder.build(), new Http2MultiplexHandler(new Http2EventReceiverHandler()));
+	private ChannelHandler[] newHttp2Handlers()
+	{
+		return newHttp2Handlers(config, http2Handler);
 	}
 
     /**
@@ -80,18 +202,40 @@ public class Http2ServerInitializer extends ChannelInitializer<SocketChannel>
      */
     private void configureSsl(SocketChannel ch) 
     {
-        ch.pipeline().addLast(sslCtx.newHandler(ch.alloc()), new Http2OrHttpHandler());
+        SslHandler sslHandler = sslCtx.newHandler(ch.alloc());
+
+        ServerMetrics.get().watchHandshake(sslHandler);
+
+        ch.pipeline().addLast(sslHandler);
+
+        // Behind the SslHandler, so coalesced writes are also encrypted into fewer TLS records.
+        addFlushConsolidation(ch.pipeline());
+
+        ch.pipeline().addLast(new Http2OrHttpHandler(dispatcher, http2Handler, config, admission));
+    }
+
+    /**
+     * Coalesces the flushes of the streams (and of the HTTP/2 codec) of a connection, so a read batch of many small
+     * streams is answered with one write syscall instead of one or more per stream, see {@link FlushConsolidationHandler}.
+     * Flushes outside of a read (e.g. of events dispatched later) are coalesced as well, they go out from a task on the
+     * event loop.
+     */
+    private void addFlushConsolidation(ChannelPipeline p)
+    {
+        if (config.flushConsolidation() > 0)
+        {
+            p.addLast(new FlushConsolidationHandler(config.flushConsolidation(), true));
+        }
     }
     
-	private static final UpgradeCodecFactory upgradeCodecFactory = new UpgradeCodecFactory() 
+	private final UpgradeCodecFactory upgradeCodecFactory = new UpgradeCodecFactory() 
 	{
         @Override
         public UpgradeCodec newUpgradeCodec(CharSequence protocol) 
         {
             if (AsciiString.contentEquals(Http2CodecUtil.HTTP_UPGRADE_PROTOCOL_NAME, protocol)) 
             {
-                return new Http2ServerUpgradeCodec(Http2FrameCodecBuilder.forServer().build(),
-                         new Http2MultiplexHandler(new Http2EventReceiverHandler()));
+                return new Http1RemovingUpgradeCodec(new Http2ServerUpgradeCodec(config.newFrameCodec(streaming), newHttp2Handlers()));
             } 
             
             else 
@@ -100,35 +244,39 @@ public class Http2ServerInitializer extends ChannelInitializer<SocketChannel>
             }
         }
     };
-    
+
     /**
-     * Configures the pipeline for a clear-text upgrade from HTTP to HTTP/2.0
+     * Upgrades to HTTP/2 like its delegate and removes the HTTP/1.1 handler, which is not going to see requests any more.
      */
-    @SuppressWarnings("unused")
-	private void configureClearTextHttp1(SocketChannel ch) 
+    private static final class Http1RemovingUpgradeCodec implements UpgradeCodec
     {
-        final ChannelPipeline p = ch.pipeline();
-        
-        final HttpServerCodec sourceCodec = new HttpServerCodec();
+        private final UpgradeCodec delegate;
 
-        p.addLast(sourceCodec);
-        
-        p.addLast(new HttpServerUpgradeHandler(sourceCodec, upgradeCodecFactory));
-        
-        p.addLast(new SimpleChannelInboundHandler<HttpMessage>() 
+        Http1RemovingUpgradeCodec(UpgradeCodec delegate)
+        {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public Collection<CharSequence> requiredUpgradeHeaders()
+        {
+            return delegate.requiredUpgradeHeaders();
+        }
+
+        @Override
+        public boolean prepareUpgradeResponse(ChannelHandlerContext ctx, FullHttpRequest upgradeRequest, HttpHeaders upgradeHeaders)
         {
-           @Override
-           protected void channelRead0(ChannelHandlerContext ctx, HttpMessage msg) throws Exception 
-           {
-               // If this handler is hit then no upgrade has been attempted and the client is just talking HTTP.
-               System.err.println("Directly talking: " + msg.protocolVersion() + " (no upgrade was attempted)");
-               
-               ChannelPipeline pipeline = ctx.pipeline();
-//               pipeline.addAfter(ctx.name(), null, new HelloWorldHttp2Handler("Direct. No Upgrade Attempted."));
-               pipeline.replace(this, null, new HttpObjectAggregator(maxHttpContentLength));
-               
-               ctx.fireChannelRead(ReferenceCountUtil.retain(msg));
-           }
-       });
-   }
+            return delegate.prepareUpgradeResponse(ctx, upgradeRequest, upgradeHeaders);
+        }
+
+        @Override
+        public void upgradeTo(ChannelHandlerContext ctx, FullHttpRequest upgradeRequest)
+        {
+            LOG.debug("Upgrading {} to h2c", ctx.channel());
+
+            ctx.pipeline().remove(Http1EventReceiverHandler.class);
+
+            delegate.upgradeTo(ctx, upgradeRequest);
+        }
+    }
 }
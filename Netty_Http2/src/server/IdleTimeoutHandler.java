@@ -0,0 +1,43 @@
+package server;
+
+import io.netty.channel.ChannelHandler.Sharable;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.handler.timeout.IdleStateEvent;
+import io.netty.handler.timeout.IdleStateHandler;
+import logging.AsyncLog;
+import logging.Logger;
+
+/**
+ * @author Puspesh.Prakash
+ *
+ * <p> Closes a connection once its {@link IdleStateHandler} reports it idle. The close of an HTTP/2 connection goes
+ * through the codec, which sends a GOAWAY first.
+ */
+@Sharable
+final class IdleTimeoutHandler extends ChannelInboundHandlerAdapter
+{
+	static final IdleTimeoutHandler INSTANCE = new IdleTimeoutHandler();
+
+	private static final Logger LOG = AsyncLog.logger("server");
+
+	private IdleTimeoutHandler()
+	{
+	}
+
+	@Override
+	public void userEventTriggered(ChannelHandlerContext ctx, Object evt) throws Exception
+	{
+		if (evt instanceof IdleStateEvent)
+		{
+			LOG.debug("Closing idle connection {}", ctx.channel());
+
+			// From the tail, so the close passes the HTTP/2 codec further up the pipeline.
+			ctx.channel().close();
+
+			return;
+		}
+
+		super.userEventTriggered(ctx, evt);
+	}
+}
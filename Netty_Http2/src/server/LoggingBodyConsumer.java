@@ -0,0 +1,35 @@
+package server;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.handler.codec.http2.Http2Headers;
+import logging.AsyncLog;
+import logging.Logger;
+
+/**
+ * @author Puspesh.Prakash
+ *
+ * <p> Default {@link BodyConsumer} which logs the size of every chunk (category "server.body") and completes right away.
+ */
+public final class LoggingBodyConsumer implements BodyConsumer
+{
+	private static final Logger LOG = AsyncLog.logger("server.body");
+
+	private static final CompletableFuture<Void> DONE = CompletableFuture.completedFuture(null);
+
+	@Override
+	public CompletionStage<?> onChunk(Http2Headers headers, ByteBuf chunk, boolean last)
+	{
+		LOG.info("Received Chunk:  {} bytes for {}{}", chunk.readableBytes(), headers.path(), last ? " (last)" : "");
+
+		return DONE;
+	}
+
+	@Override
+	public void onAborted(Http2Headers headers)
+	{
+		LOG.warn("Aborted Body:  {}", headers.path());
+	}
+}
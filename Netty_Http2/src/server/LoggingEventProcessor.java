@@ -0,0 +1,29 @@
+package server;
+
+import java.util.List;
+
+import io.netty.util.CharsetUtil;
+import logging.AsyncLog;
+import logging.Level;
+import logging.Logger;
+
+/**
+ * @author Puspesh.Prakash
+ *
+ * <p> Default {@link EventProcessor} which logs the headers and payload of every event to the "server.events"
+ * category. The payloads are subject to the sampling and rate limits of {@link AsyncLog} and are only decoded if the
+ * record is written.
+ */
+public final class LoggingEventProcessor implements EventProcessor
+{
+	private static final Logger LOG = AsyncLog.logger("server.events");
+
+	@Override
+	public void process(List<ReceivedEvent> events)
+	{
+		for (ReceivedEvent event : events)
+		{
+			LOG.payload(Level.INFO, event.content(), CharsetUtil.UTF_8, "Received Headers:  {}\nReceived Payload:", event.headers());
+		}
+	}
+}
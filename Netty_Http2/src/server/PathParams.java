@@ -0,0 +1,66 @@
+package server;
+
+/**
+ * @author Puspesh.Prakash
+ *
+ * <p> The values of the path parameters of a routed request, e.g. {@code type=orders} for the route
+ * {@code /events/{type}} and the path {@code /events/orders}. The values are percent-decoded.
+ */
+public final class PathParams
+{
+	static final PathParams EMPTY = new PathParams(new String[0], new String[0]);
+
+	private final String[] names;
+
+	private final String[] values;
+
+	PathParams(String[] names, String[] values)
+	{
+		this.names = names;
+		this.values = values;
+	}
+
+	/**
+	 * @return the value of the parameter {@code name}, null if the route has no such parameter.
+	 */
+	public String get(String name)
+	{
+		for (int i = 0; i < names.length; i++)
+		{
+			if (names[i].equals(name))
+			{
+				return values[i];
+			}
+		}
+
+		return null;
+	}
+
+	public int size()
+	{
+		return names.length;
+	}
+
+	public String name(int index)
+	{
+		return names[index];
+	}
+
+	public String value(int index)
+	{
+		return values[index];
+	}
+
+	@Override
+	public String toString()
+	{
+		final StringBuilder sb = new StringBuilder("PathParams(");
+
+		for (int i = 0; i < names.length; i++)
+		{
+			sb.append(i == 0 ? "" : ", ").append(names[i]).append(": ").append(values[i]);
+		}
+
+		return sb.append(')').toString();
+	}
+}
@@ -0,0 +1,168 @@
+package server;
+
+import static io.netty.util.internal.ObjectUtil.checkNotNull;
+import static io.netty.util.internal.ObjectUtil.checkPositive;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import io.netty.util.ReferenceCountUtil;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import logging.AsyncLog;
+import logging.Logger;
+
+/**
+ * @author Puspesh.Prakash
+ *
+ * <p> {@link EventSink} backed by a bounded queue that is drained in batches by a fixed number of consumer threads,
+ * which hand every batch to an {@link EventProcessor}. {@link #offer(ReceivedEvent)} never blocks, a full queue is
+ * reported to the caller which then applies its {@link Backpressure}.
+ */
+public final class QueueingEventSink implements EventSink
+{
+	private static final Logger LOG = AsyncLog.logger("server.events");
+
+	private static final long POLL_TIMEOUT_MILLIS = 100;
+
+	private final BlockingQueue<ReceivedEvent> queue;
+
+	private final EventProcessor processor;
+
+	private final int batchSize;
+
+	private final Thread[] consumers;
+
+	private volatile boolean running = true;
+
+	public QueueingEventSink(EventProcessor processor, int capacity, int batchSize, int consumers)
+	{
+		this.processor = checkNotNull(processor, "processor");
+		this.queue = new ArrayBlockingQueue<>(checkPositive(capacity, "capacity"));
+		this.batchSize = checkPositive(batchSize, "batchSize");
+		this.consumers = new Thread[checkPositive(consumers, "consumers")];
+
+		final ThreadFactory threadFactory = new DefaultThreadFactory("event-sink", true);
+
+		for (int i = 0; i < this.consumers.length; i++)
+		{
+			this.consumers[i] = threadFactory.newThread(this::consume);
+
+			this.consumers[i].start();
+		}
+	}
+
+	/**
+	 * An event queued while {@link #close()} runs may miss the consumers, which exit once they see the queue empty. It is
+	 * taken back and reported as not accepted then, unless a consumer got hold of it. It is taken back by identity,
+	 * events with equal payloads (every empty GET) are equal.
+	 */
+	@Override
+	public boolean offer(ReceivedEvent event)
+	{
+		if (!running || !queue.offer(event))
+		{
+			return false;
+		}
+
+		return running || !queue.removeIf(queued -> queued == event);
+	}
+
+	/**
+	 * @return the number of events waiting to be processed.
+	 */
+	public int pending()
+	{
+		return queue.size();
+	}
+
+	@Override
+	public void close()
+	{
+		running = false;
+	}
+
+	/**
+	 * Waits for the consumer threads, which exit once the queue is empty after {@link #close()}.
+	 */
+	@Override
+	public boolean awaitDrained(long timeout, TimeUnit unit) throws InterruptedException
+	{
+		final long deadline = System.nanoTime() + unit.toNanos(timeout);
+
+		for (Thread consumer : consumers)
+		{
+			final long remainingMillis = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+
+			if (remainingMillis <= 0)
+			{
+				break;
+			}
+
+			consumer.join(remainingMillis);
+		}
+
+		for (Thread consumer : consumers)
+		{
+			if (consumer.isAlive())
+			{
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Consumer loop: waits for one event, then drains whatever else is queued up to the batch size.
+	 * After {@link #close()} the loop keeps going until the queue is empty.
+	 */
+	private void consume()
+	{
+		final List<ReceivedEvent> batch = new ArrayList<>(batchSize);
+
+		while (running || !queue.isEmpty())
+		{
+			try
+			{
+				final ReceivedEvent first = queue.poll(POLL_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+
+				if (first == null)
+				{
+					continue;
+				}
+
+				batch.add(first);
+
+				queue.drainTo(batch, batchSize - 1);
+
+				processor.process(batch);
+			}
+
+			catch (InterruptedException ie)
+			{
+				Thread.currentThread().interrupt();
+
+				return;
+			}
+
+			catch (Throwable t)
+			{
+				LOG.error("Event processor failed", t);
+			}
+
+			finally
+			{
+				for (ReceivedEvent event : batch)
+				{
+					ReferenceCountUtil.release(event);
+				}
+
+				batch.clear();
+			}
+		}
+	}
+}
@@ -0,0 +1,58 @@
+package server;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.netty.channel.Channel;
+import io.netty.util.Attribute;
+import io.netty.util.AttributeKey;
+
+/**
+ * @author Puspesh.Prakash
+ *
+ * <p> Counts the reasons for which reading from a connection is suspended. Auto-read is switched off with the first
+ * suspension and only switched back on once every suspension has been resumed, so independent callers (e.g. several
+ * streams of one HTTP/2 connection) cannot resume each other's suspension.
+ */
+final class ReadSuspension
+{
+	private static final AttributeKey<AtomicInteger> SUSPENSIONS = AttributeKey.valueOf(ReadSuspension.class, "suspensions");
+
+	private ReadSuspension(){}
+
+	static void suspend(Channel connection)
+	{
+		if (counter(connection).getAndIncrement() == 0)
+		{
+			connection.config().setAutoRead(false);
+		}
+	}
+
+	static void resume(Channel connection)
+	{
+		if (counter(connection).decrementAndGet() == 0)
+		{
+			connection.config().setAutoRead(true);
+		}
+	}
+
+	private static AtomicInteger counter(Channel connection)
+	{
+		final Attribute<AtomicInteger> attr = connection.attr(SUSPENSIONS);
+
+		AtomicInteger counter = attr.get();
+
+		if (counter == null)
+		{
+			final AtomicInteger created = new AtomicInteger();
+
+			counter = attr.setIfAbsent(created);
+
+			if (counter == null)
+			{
+				counter = created;
+			}
+		}
+
+		return counter;
+	}
+}
@@ -0,0 +1,102 @@
+package server;
+
+import static io.netty.util.internal.ObjectUtil.checkNotNull;
+
+import java.nio.charset.Charset;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.DefaultByteBufHolder;
+import io.netty.handler.codec.http2.Http2Headers;
+
+/**
+ * @author Puspesh.Prakash
+ *
+ * <p> A completed event (request headers and payload) as handed from the receiver handlers to an {@link EventSink}.
+ * Headers of HTTP/1.x requests are converted to their HTTP/2 form, so processors see a single representation.
+ *
+ * <p> The event owns its payload buffer. Once it has been offered successfully, the sink is responsible for releasing it.
+ */
+public final class ReceivedEvent extends DefaultByteBufHolder
+{
+	private final Http2Headers headers;
+
+	private final long receivedNanos;
+
+	public ReceivedEvent(Http2Headers headers, ByteBuf content)
+	{
+		this(headers, content, System.nanoTime());
+	}
+
+	private ReceivedEvent(Http2Headers headers, ByteBuf content, long receivedNanos)
+	{
+		super(content);
+
+		this.headers = checkNotNull(headers, "headers");
+		this.receivedNanos = receivedNanos;
+	}
+
+	public Http2Headers headers()
+	{
+		return headers;
+	}
+
+	/**
+	 * @return the {@link System#nanoTime()} at which the event was completed by the receiver.
+	 */
+	public long receivedNanos()
+	{
+		return receivedNanos;
+	}
+
+	/**
+	 * Decodes the payload. Processors that only forward bytes should use {@link #content()} instead.
+	 */
+	public String contentToString(Charset charset)
+	{
+		return content().toString(charset);
+	}
+
+	@Override
+	public ReceivedEvent replace(ByteBuf content)
+	{
+		return new ReceivedEvent(headers, content, receivedNanos);
+	}
+
+	@Override
+	public ReceivedEvent retain()
+	{
+		super.retain();
+
+		return this;
+	}
+
+	@Override
+	public ReceivedEvent retain(int increment)
+	{
+		super.retain(increment);
+
+		return this;
+	}
+
+	@Override
+	public ReceivedEvent touch()
+	{
+		super.touch();
+
+		return this;
+	}
+
+	@Override
+	public ReceivedEvent touch(Object hint)
+	{
+		super.touch(hint);
+
+		return this;
+	}
+
+	@Override
+	public String toString()
+	{
+		return "ReceivedEvent(headers: " + headers + ", content: " + content() + ')';
+	}
+}
@@ -0,0 +1,165 @@
+package server;
+
+import static io.netty.handler.codec.http.HttpResponseStatus.INTERNAL_SERVER_ERROR;
+
+import java.util.concurrent.Executor;
+
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.QueryStringDecoder;
+import logging.AsyncLog;
+import logging.Logger;
+
+/**
+ * @author Puspesh.Prakash
+ *
+ * <p> A registered route of a {@link Router}: its events are either queued to an {@link EventDispatcher} (and
+ * acknowledged with 202 once accepted; a batch route splits the body into many events) or handled by a {@link RouteHandler}, inline or on an executor.
+ *
+ * <p> {@link #NOT_FOUND} and {@link #METHOD_NOT_ALLOWED} are the outcomes of a failed lookup, they are answered with
+ * their {@link #status()}.
+ */
+final class Route
+{
+	static final Route NOT_FOUND = new Route(HttpResponseStatus.NOT_FOUND);
+
+	static final Route METHOD_NOT_ALLOWED = new Route(HttpResponseStatus.METHOD_NOT_ALLOWED);
+
+	private static final Logger LOG = AsyncLog.logger("server");
+
+	private final String pattern;
+
+	private final String[] paramNames;
+
+	private final EventDispatcher dispatcher;
+
+	private final RouteHandler handler;
+
+	private final Executor executor;
+
+	private final boolean batch;
+
+	private final boolean duplex;
+
+	private final HttpResponseStatus status;
+
+	Route(String pattern, String[] paramNames, EventDispatcher dispatcher, RouteHandler handler, Executor executor, boolean batch,
+		  boolean duplex)
+	{
+		this.pattern = pattern;
+		this.paramNames = paramNames;
+		this.dispatcher = dispatcher;
+		this.handler = handler;
+		this.executor = executor;
+		this.batch = batch;
+		this.duplex = duplex;
+		this.status = null;
+	}
+
+	private Route(HttpResponseStatus status)
+	{
+		this.pattern = null;
+		this.paramNames = new String[0];
+		this.dispatcher = null;
+		this.handler = null;
+		this.executor = null;
+		this.batch = false;
+		this.duplex = false;
+		this.status = status;
+	}
+
+	/**
+	 * @return the status of a failed lookup, null for a registered route.
+	 */
+	HttpResponseStatus status()
+	{
+		return status;
+	}
+
+	/**
+	 * @return the dispatcher the events are queued to, null if they are handled by a {@link RouteHandler}.
+	 */
+	EventDispatcher dispatcher()
+	{
+		return dispatcher;
+	}
+
+	/**
+	 * @return the executor the handler runs on, null to run it inline on the event loop.
+	 */
+	Executor executor()
+	{
+		return executor;
+	}
+
+	/**
+	 * @return true if the body of a request carries many events, see {@link BatchRequest}.
+	 */
+	boolean batch()
+	{
+		return batch;
+	}
+
+	/**
+	 * @return true if the events of a batch are acknowledged as they arrive, on a stream that stays open.
+	 */
+	boolean duplex()
+	{
+		return duplex;
+	}
+
+	/**
+	 * Extracts the path parameters of a request, to be called right after the {@link Router#find} that returned this
+	 * route, on the same thread.
+	 */
+	PathParams params(CharSequence path)
+	{
+		if (paramNames.length == 0)
+		{
+			return PathParams.EMPTY;
+		}
+
+		final int[] bounds = Router.bounds();
+
+		final String[] values = new String[paramNames.length];
+
+		for (int i = 0; i < values.length; i++)
+		{
+			values[i] = QueryStringDecoder.decodeComponent(path.subSequence(bounds[2 * i], bounds[2 * i + 1]).toString());
+		}
+
+		return new PathParams(paramNames, values);
+	}
+
+	/**
+	 * Runs the handler and releases the event.
+	 *
+	 * @return the status to answer with, 500 if the handler failed.
+	 */
+	HttpResponseStatus handle(ReceivedEvent event, PathParams params)
+	{
+		try
+		{
+			final HttpResponseStatus result = handler.handle(event, params);
+
+			return result != null ? result : INTERNAL_SERVER_ERROR;
+		}
+
+		catch (Throwable t)
+		{
+			LOG.error("Handler of route " + pattern + " failed", t);
+
+			return INTERNAL_SERVER_ERROR;
+		}
+
+		finally
+		{
+			event.release();
+		}
+	}
+
+	@Override
+	public String toString()
+	{
+		return status != null ? "Route(" + status + ')' : "Route(" + pattern + ')';
+	}
+}
@@ -0,0 +1,23 @@
+package server;
+
+import io.netty.handler.codec.http.HttpResponseStatus;
+
+/**
+ * @author Puspesh.Prakash
+ *
+ * <p> Handles the completed requests of a route, see {@link Router}. Depending on how the route was registered it runs
+ * inline on the event loop of the stream, where it must not block, or on an executor of its own.
+ */
+@FunctionalInterface
+public interface RouteHandler
+{
+	/**
+	 * Handles a request. The event (and its payload) is released once the method returns, handlers that keep it beyond
+	 * that must retain it.
+	 *
+	 * @param params the values of the path parameters of the route.
+	 * @return the status of the response: 202 is answered with the Event ACK, any other status without a body. An
+	 *         exception is answered with 500.
+	 */
+	HttpResponseStatus handle(ReceivedEvent event, PathParams params) throws Exception;
+}
@@ -0,0 +1,406 @@
+package server;
+
+import static io.netty.util.internal.ObjectUtil.checkNotNull;
+
+import java.util.Arrays;
+import java.util.concurrent.Executor;
+
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.util.AsciiString;
+import io.netty.util.concurrent.FastThreadLocal;
+
+/**
+ * @author Puspesh.Prakash
+ *
+ * <p> Dispatch table of the HTTP/2 requests by {@code :method} and {@code :path}, see {@link Http2EventReceiverHandler}.
+ * Routes are registered with a {@link Builder} and compiled into a prefix tree of path segments, e.g.
+ * <pre>
+ * Router.builder()
+ *       .route(HttpMethod.POST, "/events/{type}", dispatcher)
+ *       .route(HttpMethod.GET, "/health", (event, params) -&gt; HttpResponseStatus.OK)
+ *       .route(HttpMethod.POST, "/orders/{id}/items", handler, executor)
+ *       .build();
+ * </pre>
+ * A segment in braces is a path parameter and matches any non-empty segment; a literal segment takes precedence over a
+ * parameter at the same position. The query string and a trailing slash are ignored.
+ *
+ * <p> The lookup walks the path in place, comparing its segments with the tree without splitting or copying it, and
+ * keeps the bounds of the parameter values in an array of the event loop: it allocates nothing. Only the
+ * {@link PathParams} of a route with parameters are created per request.
+ *
+ * <p> A path without a route is answered with 404, a path routed for other methods only with 405.
+ */
+public final class Router
+{
+	/**
+	 * The most path parameters of a route.
+	 */
+	static final int MAX_PARAMS = 8;
+
+	/**
+	 * The methods a route can be registered for, a route keeps its targets indexed alike.
+	 */
+	private static final AsciiString[] METHODS = {
+		HttpMethod.GET.asciiName(), HttpMethod.HEAD.asciiName(), HttpMethod.POST.asciiName(), HttpMethod.PUT.asciiName(),
+		HttpMethod.DELETE.asciiName(), HttpMethod.PATCH.asciiName(), HttpMethod.OPTIONS.asciiName(), HttpMethod.TRACE.asciiName(),
+		HttpMethod.CONNECT.asciiName()
+	};
+
+	private static final FastThreadLocal<int[]> BOUNDS = new FastThreadLocal<int[]>()
+	{
+		@Override
+		protected int[] initialValue()
+		{
+			return new int[2 * MAX_PARAMS];
+		}
+	};
+
+	private final Node root;
+
+	private Router(Node root)
+	{
+		this.root = root;
+	}
+
+	public static Builder builder()
+	{
+		return new Builder();
+	}
+
+	/**
+	 * Looks up the route of a request. The bounds of the parameter values are kept for {@link Route#params}.
+	 *
+	 * @return the route, or {@link Route#NOT_FOUND} / {@link Route#METHOD_NOT_ALLOWED}.
+	 */
+	Route find(CharSequence method, CharSequence path)
+	{
+		if (method == null || path == null || path.length() == 0 || path.charAt(0) != '/')
+		{
+			return Route.NOT_FOUND;
+		}
+
+		int end = pathEnd(path);
+
+		if (end > 1 && path.charAt(end - 1) == '/')
+		{
+			end--;
+		}
+
+		final Node node = end == 1 ? (root.routed ? root : null) : match(root, path, 1, end, BOUNDS.get(), 0);
+
+		if (node == null)
+		{
+			return Route.NOT_FOUND;
+		}
+
+		final int index = methodIndex(method);
+
+		final Route route = index < 0 ? null : node.routes[index];
+
+		return route != null ? route : Route.METHOD_NOT_ALLOWED;
+	}
+
+	/**
+	 * @return the bounds of the parameter values of the last lookup on this thread: start and end of each value.
+	 */
+	static int[] bounds()
+	{
+		return BOUNDS.get();
+	}
+
+	/**
+	 * Matches the segments of {@code path} from {@code start} (the first character of a segment) up to {@code end},
+	 * literal segments first, backtracking to the parameter if the literal one leads nowhere.
+	 */
+	private static Node match(Node node, CharSequence path, int start, int end, int[] bounds, int param)
+	{
+		if (start > end)
+		{
+			return node.routed ? node : null;
+		}
+
+		final int segmentEnd = indexOf(path, '/', start, end);
+
+		for (int i = 0; i < node.segments.length; i++)
+		{
+			if (regionEquals(path, start, segmentEnd, node.segments[i]))
+			{
+				final Node found = match(node.children[i], path, segmentEnd + 1, end, bounds, param);
+
+				if (found != null)
+				{
+					return found;
+				}
+
+				break;
+			}
+		}
+
+		if (node.param != null && segmentEnd > start)
+		{
+			bounds[2 * param] = start;
+
+			bounds[2 * param + 1] = segmentEnd;
+
+			return match(node.param, path, segmentEnd + 1, end, bounds, param + 1);
+		}
+
+		return null;
+	}
+
+	private static int pathEnd(CharSequence path)
+	{
+		for (int i = 0; i < path.length(); i++)
+		{
+			final char c = path.charAt(i);
+
+			if (c == '?' || c == '#')
+			{
+				return i;
+			}
+		}
+
+		return path.length();
+	}
+
+	private static int indexOf(CharSequence path, char c, int start, int end)
+	{
+		for (int i = start; i < end; i++)
+		{
+			if (path.charAt(i) == c)
+			{
+				return i;
+			}
+		}
+
+		return end;
+	}
+
+	private static boolean regionEquals(CharSequence path, int start, int end, String segment)
+	{
+		if (end - start != segment.length())
+		{
+			return false;
+		}
+
+		for (int i = 0; i < segment.length(); i++)
+		{
+			if (path.charAt(start + i) != segment.charAt(i))
+			{
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	private static int methodIndex(CharSequence method)
+	{
+		for (int i = 0; i < METHODS.length; i++)
+		{
+			if (METHODS[i].contentEquals(method))
+			{
+				return i;
+			}
+		}
+
+		return -1;
+	}
+
+	/**
+	 * A path segment of the tree: its literal children, its parameter child and the routes ending here, by method.
+	 */
+	private static final class Node
+	{
+		String[] segments = new String[0];
+
+		Node[] children = new Node[0];
+
+		Node param;
+
+		String paramName;
+
+		final Route[] routes = new Route[METHODS.length];
+
+		boolean routed;
+
+		Node child(String segment)
+		{
+			for (int i = 0; i < segments.length; i++)
+			{
+				if (segments[i].equals(segment))
+				{
+					return children[i];
+				}
+			}
+
+			segments = Arrays.copyOf(segments, segments.length + 1);
+
+			children = Arrays.copyOf(children, children.length + 1);
+
+			segments[segments.length - 1] = segment;
+
+			return children[children.length - 1] = new Node();
+		}
+
+		Node paramChild(String name, String pattern)
+		{
+			if (param == null)
+			{
+				param = new Node();
+
+				paramName = name;
+			}
+
+			else if (!paramName.equals(name))
+			{
+				throw new IllegalArgumentException("Parameter {" + name + "} of " + pattern + " conflicts with {" + paramName + '}');
+			}
+
+			return param;
+		}
+	}
+
+	/**
+	 * Collects the routes, not to be used any more once {@link #build()} has been called.
+	 */
+	public static final class Builder
+	{
+		private final Node root = new Node();
+
+		private boolean built;
+
+		private Builder()
+		{
+		}
+
+		/**
+		 * Queues the events of {@code method} requests to {@code pattern} to the sink of {@code dispatcher}, they are
+		 * acknowledged with 202 once accepted.
+		 */
+		public Builder route(HttpMethod method, String pattern, EventDispatcher dispatcher)
+		{
+			return add(method, pattern, checkNotNull(dispatcher, "dispatcher"), null, null, false, false);
+		}
+
+		/**
+		 * Splits the bodies of {@code method} requests to {@code pattern} into events (see {@link batch.BatchFraming})
+		 * and offers each to the sink of {@code dispatcher} as soon as it is complete. They are answered with one status
+		 * per event, see {@link BatchRequest}.
+		 */
+		public Builder batch(HttpMethod method, String pattern, EventDispatcher dispatcher)
+		{
+			return add(method, pattern, checkNotNull(dispatcher, "dispatcher"), null, null, true, false);
+		}
+
+		/**
+		 * Like {@link #batch}, but for long-lived full-duplex streams: the response headers go out right away and the
+		 * statuses of the events completed by a data frame are sent back as a data frame of their own, while the stream
+		 * stays open until the client ends it.
+		 */
+		public Builder duplex(HttpMethod method, String pattern, EventDispatcher dispatcher)
+		{
+			return add(method, pattern, checkNotNull(dispatcher, "dispatcher"), null, null, true, true);
+		}
+
+		/**
+		 * Handles {@code method} requests to {@code pattern} inline on the event loop, {@code handler} must not block.
+		 */
+		public Builder route(HttpMethod method, String pattern, RouteHandler handler)
+		{
+			return add(method, pattern, null, checkNotNull(handler, "handler"), null, false, false);
+		}
+
+		/**
+		 * Handles {@code method} requests to {@code pattern} on {@code executor}, a rejected execution is answered with 503.
+		 */
+		public Builder route(HttpMethod method, String pattern, RouteHandler handler, Executor executor)
+		{
+			return add(method, pattern, null, checkNotNull(handler, "handler"), checkNotNull(executor, "executor"), false, false);
+		}
+
+		public Router build()
+		{
+			checkNotBuilt();
+
+			built = true;
+
+			return new Router(root);
+		}
+
+		private Builder add(HttpMethod method, String pattern, EventDispatcher dispatcher, RouteHandler handler, Executor executor,
+							boolean batch, boolean duplex)
+		{
+			checkNotBuilt();
+
+			checkNotNull(method, "method");
+
+			checkNotNull(pattern, "pattern");
+
+			final int index = methodIndex(method.asciiName());
+
+			if (index < 0)
+			{
+				throw new IllegalArgumentException("Unsupported method: " + method);
+			}
+
+			if (!pattern.startsWith("/"))
+			{
+				throw new IllegalArgumentException("Pattern must start with '/': " + pattern);
+			}
+
+			final String[] params = new String[MAX_PARAMS];
+
+			int paramCount = 0;
+
+			Node node = root;
+
+			for (String segment : pattern.substring(1).split("/"))
+			{
+				if (segment.isEmpty())
+				{
+					// The root, or a trailing slash.
+					continue;
+				}
+
+				if (segment.startsWith("{") && segment.endsWith("}") && segment.length() > 2)
+				{
+					if (paramCount == MAX_PARAMS)
+					{
+						throw new IllegalArgumentException("More than " + MAX_PARAMS + " parameters: " + pattern);
+					}
+
+					final String name = segment.substring(1, segment.length() - 1);
+
+					params[paramCount++] = name;
+
+					node = node.paramChild(name, pattern);
+				}
+
+				else
+				{
+					node = node.child(segment);
+				}
+			}
+
+			if (node.routes[index] != null)
+			{
+				throw new IllegalArgumentException("Duplicate route: " + method + ' ' + pattern);
+			}
+
+			node.routes[index] = new Route(pattern, Arrays.copyOf(params, paramCount), dispatcher, handler, executor, batch, duplex);
+
+			node.routed = true;
+
+			return this;
+		}
+
+		private void checkNotBuilt()
+		{
+			if (built)
+			{
+				throw new IllegalStateException("Router already built");
+			}
+		}
+	}
+}
@@ -0,0 +1,327 @@
+package server;
+
+import static io.netty.util.internal.ObjectUtil.checkNotNull;
+import static io.netty.util.internal.ObjectUtil.checkPositive;
+import static io.netty.util.internal.ObjectUtil.checkPositiveOrZero;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import io.netty.handler.codec.http2.Http2FrameCodec;
+import io.netty.handler.codec.http2.Http2FrameCodecBuilder;
+import io.netty.handler.codec.http2.Http2Settings;
+import metrics.ServerMetrics;
+import transport.TransportConfig;
+
+/**
+ * @author Puspesh.Prakash
+ *
+ * <p> HTTP/2 settings and resource limits of the server, applied the same way to the clear-text, the TLS (ALPN) and
+ * the h2c upgrade pipeline of {@link Http2ServerInitializer}.
+ *
+ * <p> The values are layered (see {@link #fromSystemProperties()}): a {@link ServerProfile} preset, then a properties
+ * file given by {@code -Dconfig}, then system properties. All keys are also the names of the system properties:
+ * <ul>
+ * <li> maxConcurrentStreams : SETTINGS_MAX_CONCURRENT_STREAMS
+ * <li> initialWindowSize    : SETTINGS_INITIAL_WINDOW_SIZE while bodies are aggregated
+ * <li> streamingWindowSize  : SETTINGS_INITIAL_WINDOW_SIZE in streaming mode, the most a client sends ahead of the
+ *                             {@link BodyConsumer}
+ * <li> connectionWindowSize : receive window of the connection, opened by a WINDOW_UPDATE right after the preface
+ * <li> maxHeaderListSize    : SETTINGS_MAX_HEADER_LIST_SIZE
+ * <li> headerTableSize      : SETTINGS_HEADER_TABLE_SIZE, the HPACK dynamic table of the decoder
+ * <li> maxFrameSize         : SETTINGS_MAX_FRAME_SIZE
+ * <li> maxBodySize          : largest aggregated HTTP/2 body, larger ones are answered with 413
+ * <li> maxContentLength     : largest HTTP/1.1 body, larger ones are answered with 413
+ * <li> flushConsolidation   : flushes coalesced into one while a read is in progress, 0 disables flush consolidation
+ * <li> idleTimeout          : seconds without reads or writes after which a connection is closed, 0 disables it
+ * <li> workerThreads        : event loops serving the connections, 0 for Netty's default (twice the processors)
+ * <li> shutdownTimeout      : seconds a graceful shutdown waits for in-flight streams and events, see
+ *                             {@link ShutdownController}
+ * <li> maxConnections       : open connections, further ones are closed right after the accept
+ * <li> maxStreams           : requests (HTTP/2 streams) in flight on all connections, per connection the limit is
+ *                             maxConcurrentStreams
+ * <li> maxBufferedBytes     : body bytes buffered on all connections
+ * <li> maxConnectionBufferedBytes : body bytes buffered per connection
+ * <li> maxEventLoopLag      : milliseconds an event loop may lag behind before it refuses new streams, 0 disables it
+ * <li> retryAfter           : seconds sent in the Retry-After header of a 503 from the admission control
+ * </ul>
+ * The admission limits are enforced by the {@link AdmissionController}.
+ *
+ * <p> The same layered properties also configure the {@link TransportConfig}, see {@link #transportConfig()}.
+ */
+public final class ServerConfig
+{
+	private final Properties properties;
+
+	private final long maxConcurrentStreams;
+
+	private final int initialWindowSize;
+
+	private final int streamingWindowSize;
+
+	private final int connectionWindowSize;
+
+	private final long maxHeaderListSize;
+
+	private final long headerTableSize;
+
+	private final int maxFrameSize;
+
+	private final int maxBodySize;
+
+	private final int maxContentLength;
+
+	private final int flushConsolidation;
+
+	private final long idleTimeout;
+
+	private final int workerThreads;
+
+	private final long shutdownTimeout;
+
+	private final int maxConnections;
+
+	private final int maxStreams;
+
+	private final long maxBufferedBytes;
+
+	private final long maxConnectionBufferedBytes;
+
+	private final long maxEventLoopLag;
+
+	private final long retryAfter;
+
+	/**
+	 * @param properties all values keyed like the system properties, see {@link ServerProfile#defaults()}.
+	 */
+	public ServerConfig(Properties properties)
+	{
+		this.properties = checkNotNull(properties, "properties");
+
+		maxConcurrentStreams = checkPositive(Long.parseLong(value("maxConcurrentStreams")), "maxConcurrentStreams");
+		initialWindowSize = checkPositive(Integer.parseInt(value("initialWindowSize")), "initialWindowSize");
+		streamingWindowSize = checkPositive(Integer.parseInt(value("streamingWindowSize")), "streamingWindowSize");
+		connectionWindowSize = checkPositive(Integer.parseInt(value("connectionWindowSize")), "connectionWindowSize");
+		maxHeaderListSize = checkPositive(Long.parseLong(value("maxHeaderListSize")), "maxHeaderListSize");
+		headerTableSize = checkPositiveOrZero(Long.parseLong(value("headerTableSize")), "headerTableSize");
+		maxFrameSize = Integer.parseInt(value("maxFrameSize"));
+		maxBodySize = checkPositive(Integer.parseInt(value("maxBodySize")), "maxBodySize");
+		maxContentLength = checkPositive(Integer.parseInt(value("maxContentLength")), "maxContentLength");
+		flushConsolidation = checkPositiveOrZero(Integer.parseInt(value("flushConsolidation")), "flushConsolidation");
+		idleTimeout = checkPositiveOrZero(Long.parseLong(value("idleTimeout")), "idleTimeout");
+		workerThreads = checkPositiveOrZero(Integer.parseInt(value("workerThreads")), "workerThreads");
+		shutdownTimeout = checkPositiveOrZero(Long.parseLong(value("shutdownTimeout")), "shutdownTimeout");
+		maxConnections = checkPositive(Integer.parseInt(value("maxConnections")), "maxConnections");
+		maxStreams = checkPositive(Integer.parseInt(value("maxStreams")), "maxStreams");
+		maxBufferedBytes = checkPositive(Long.parseLong(value("maxBufferedBytes")), "maxBufferedBytes");
+		maxConnectionBufferedBytes = checkPositive(Long.parseLong(value("maxConnectionBufferedBytes")), "maxConnectionBufferedBytes");
+		maxEventLoopLag = checkPositiveOrZero(Long.parseLong(value("maxEventLoopLag")), "maxEventLoopLag");
+		retryAfter = checkPositiveOrZero(Long.parseLong(value("retryAfter")), "retryAfter");
+
+		// Fails fast on values outside of what the HTTP/2 specification allows.
+		http2Settings(false);
+		http2Settings(true);
+	}
+
+	/**
+	 * Layers the {@link ServerProfile} named by {@code -Dprofile} (default {@code default}), the properties file named by
+	 * {@code -Dconfig} (optional) and the system properties, later layers override earlier ones.
+	 */
+	public static ServerConfig fromSystemProperties() throws IOException
+	{
+		final Properties file = new Properties();
+
+		final String path = System.getProperty("config");
+
+		if (path != null)
+		{
+			try (Reader reader = Files.newBufferedReader(Paths.get(path)))
+			{
+				file.load(reader);
+			}
+		}
+
+		return layered(ServerProfile.of(System.getProperty("profile", file.getProperty("profile", "default"))), file);
+	}
+
+	/**
+	 * @return the values of {@code profile}, overridden by the system properties.
+	 */
+	public static ServerConfig of(ServerProfile profile)
+	{
+		return layered(profile, new Properties());
+	}
+
+	private static ServerConfig layered(ServerProfile profile, Properties file)
+	{
+		final Properties properties = profile.defaults();
+
+		properties.setProperty("profile", profile.name().toLowerCase());
+
+		properties.putAll(file);
+
+		properties.putAll(System.getProperties());
+
+		return new ServerConfig(properties);
+	}
+
+	/**
+	 * @return a copy of this config with one value replaced.
+	 */
+	public ServerConfig with(String key, Object value)
+	{
+		final Properties copy = new Properties();
+
+		copy.putAll(properties);
+
+		copy.setProperty(key, String.valueOf(value));
+
+		return new ServerConfig(copy);
+	}
+
+	private String value(String key)
+	{
+		final String value = properties.getProperty(key);
+
+		if (value == null)
+		{
+			throw new IllegalArgumentException("Missing server config value: " + key);
+		}
+
+		return value.trim();
+	}
+
+	/**
+	 * @return the transport settings from the same layered properties.
+	 */
+	public TransportConfig transportConfig()
+	{
+		return TransportConfig.from(properties);
+	}
+
+	public int connectionWindowSize()
+	{
+		return connectionWindowSize;
+	}
+
+	public int maxBodySize()
+	{
+		return maxBodySize;
+	}
+
+	public int maxContentLength()
+	{
+		return maxContentLength;
+	}
+
+	public int flushConsolidation()
+	{
+		return flushConsolidation;
+	}
+
+	/**
+	 * @return the idle timeout in seconds, 0 if idle connections are kept open.
+	 */
+	public long idleTimeout()
+	{
+		return idleTimeout;
+	}
+
+	public int workerThreads()
+	{
+		return workerThreads;
+	}
+
+	/**
+	 * @return the time in seconds a graceful shutdown waits for in-flight streams and queued events.
+	 */
+	public long shutdownTimeout()
+	{
+		return shutdownTimeout;
+	}
+
+	public long maxConcurrentStreams()
+	{
+		return maxConcurrentStreams;
+	}
+
+	public int maxConnections()
+	{
+		return maxConnections;
+	}
+
+	public int maxStreams()
+	{
+		return maxStreams;
+	}
+
+	public long maxBufferedBytes()
+	{
+		return maxBufferedBytes;
+	}
+
+	public long maxConnectionBufferedBytes()
+	{
+		return maxConnectionBufferedBytes;
+	}
+
+	/**
+	 * @return the event loop lag in milliseconds above which new streams are refused, 0 if lag is not checked.
+	 */
+	public long maxEventLoopLag()
+	{
+		return maxEventLoopLag;
+	}
+
+	/**
+	 * @return the Retry-After of a 503 from the admission control, in seconds.
+	 */
+	public long retryAfter()
+	{
+		return retryAfter;
+	}
+
+	/**
+	 * @return the SETTINGS the server announces in its preface.
+	 */
+	public Http2Settings http2Settings(boolean streaming)
+	{
+		return new Http2Settings().maxConcurrentStreams(maxConcurrentStreams)
+								  .initialWindowSize(streaming ? streamingWindowSize : initialWindowSize)
+								  .maxHeaderListSize(maxHeaderListSize)
+								  .headerTableSize(headerTableSize)
+								  .maxFrameSize(maxFrameSize);
+	}
+
+	/**
+	 * @return a frame codec for one connection, announcing {@link #http2Settings(boolean)} and counting its frames.
+	 */
+	Http2FrameCodec newFrameCodec(boolean streaming)
+	{
+		return Http2FrameCodecBuilder.forServer()
+									 .initialSettings(http2Settings(streaming))
+									 .autoAckPingFrame(true)
+									 .frameLogger(ServerMetrics.get().frameLogger())
+									 // How long a closed connection waits for its active streams, see ShutdownController.
+									 .gracefulShutdownTimeoutMillis(TimeUnit.SECONDS.toMillis(shutdownTimeout))
+									 .build();
+	}
+
+	@Override
+	public String toString()
+	{
+		return "ServerConfig(profile: " + properties.getProperty("profile", "default") + ", maxConcurrentStreams: "
+				+ maxConcurrentStreams + ", initialWindowSize: " + initialWindowSize + ", streamingWindowSize: "
+				+ streamingWindowSize + ", connectionWindowSize: " + connectionWindowSize + ", maxHeaderListSize: "
+				+ maxHeaderListSize + ", headerTableSize: " + headerTableSize + ", maxFrameSize: " + maxFrameSize
+				+ ", maxBodySize: " + maxBodySize + ", maxContentLength: " + maxContentLength + ", flushConsolidation: "
+				+ flushConsolidation + ", idleTimeout: " + idleTimeout + ", workerThreads: " + workerThreads
+				+ ", shutdownTimeout: " + shutdownTimeout + ", maxConnections: " + maxConnections + ", maxStreams: " + maxStreams
+				+ ", maxBufferedBytes: " + maxBufferedBytes + ", maxConnectionBufferedBytes: " + maxConnectionBufferedBytes
+				+ ", maxEventLoopLag: " + maxEventLoopLag + ", retryAfter: " + retryAfter + ')';
+	}
+}
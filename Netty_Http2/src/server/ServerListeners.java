@@ -0,0 +1,174 @@
+package server;
+
+import static io.netty.util.internal.ObjectUtil.checkNotNull;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.EventLoop;
+import io.netty.channel.EventLoopGroup;
+import io.netty.util.concurrent.EventExecutor;
+import transport.TransportConfig;
+
+/**
+ * @author Puspesh.Prakash
+ *
+ * <p> Binds the server channels of {@link Http2Server} to the configured addresses ({@code -Dlisten}, see
+ * {@link #addresses(String)}).
+ *
+ * <p> With SO_REUSEPORT (Linux, see {@link TransportConfig}) every worker event loop gets a server channel of its own on
+ * every address. The kernel spreads the incoming connections across these channels, and each connection is served by
+ * the event loop that accepted it, so there is neither a shared accept queue nor a hand-off between threads. Without
+ * SO_REUSEPORT one server channel per address accepts on the parent group and hands the connections to the workers.
+ */
+public final class ServerListeners
+{
+	private final TransportConfig transportConfig;
+
+	private final EventLoopGroup parentGroup;
+
+	private final EventLoopGroup workerGroup;
+
+	private final Consumer<ServerBootstrap> configurer;
+
+	private final List<Channel> channels = new ArrayList<>();
+
+	/**
+	 * @param configurer sets the options and handlers of a bootstrap, it is called once per bootstrap, the listeners set
+	 *        the groups and the transport.
+	 */
+	public ServerListeners(TransportConfig transportConfig, EventLoopGroup parentGroup, EventLoopGroup workerGroup,
+						   Consumer<ServerBootstrap> configurer)
+	{
+		this.transportConfig = checkNotNull(transportConfig, "transportConfig");
+		this.parentGroup = checkNotNull(parentGroup, "parentGroup");
+		this.workerGroup = checkNotNull(workerGroup, "workerGroup");
+		this.configurer = checkNotNull(configurer, "configurer");
+	}
+
+	/**
+	 * Parses a comma separated list of {@code host:port} addresses; IPv6 hosts are written in brackets
+	 * ({@code [::1]:8089}), an empty host ({@code :8089}) binds the wildcard address.
+	 */
+	public static List<InetSocketAddress> addresses(String spec)
+	{
+		final List<InetSocketAddress> addresses = new ArrayList<>();
+
+		for (String address : spec.split(","))
+		{
+			address = address.trim();
+
+			final int colon = address.lastIndexOf(':');
+
+			if (colon < 0)
+			{
+				throw new IllegalArgumentException("Listen address without port: " + address);
+			}
+
+			String host = address.substring(0, colon);
+
+			final int port = Integer.parseInt(address.substring(colon + 1));
+
+			if (host.startsWith("[") && host.endsWith("]"))
+			{
+				host = host.substring(1, host.length() - 1);
+			}
+
+			addresses.add(host.isEmpty() ? new InetSocketAddress(port) : new InetSocketAddress(host, port));
+		}
+
+		return addresses;
+	}
+
+	/**
+	 * Binds all server channels to {@code addresses} and waits for them to be bound.
+	 */
+	public List<Channel> bind(List<InetSocketAddress> addresses) throws InterruptedException
+	{
+		for (InetSocketAddress address : addresses)
+		{
+			if (transportConfig.reusePort())
+			{
+				bindPerLoop(address);
+			}
+
+			else
+			{
+				channels.add(bootstrap(parentGroup, workerGroup).bind(address).sync().channel());
+			}
+		}
+
+		return channels();
+	}
+
+	private void bindPerLoop(InetSocketAddress address) throws InterruptedException
+	{
+		InetSocketAddress bindAddress = address;
+
+		for (EventExecutor executor : workerGroup)
+		{
+			final EventLoop loop = (EventLoop) executor;
+
+			final Channel channel = bootstrap(loop, loop).bind(bindAddress).sync().channel();
+
+			channels.add(channel);
+
+			// An ephemeral port is picked by the first bind, the other channels have to join that port.
+			bindAddress = (InetSocketAddress) channel.localAddress();
+		}
+	}
+
+	private ServerBootstrap bootstrap(EventLoopGroup parent, EventLoopGroup child)
+	{
+		final ServerBootstrap b = new ServerBootstrap().group(parent, child);
+
+		configurer.accept(b);
+
+		return transportConfig.configure(b);
+	}
+
+	/**
+	 * @return the bound server channels.
+	 */
+	public List<Channel> channels()
+	{
+		return Collections.unmodifiableList(channels);
+	}
+
+	/**
+	 * Closes all server channels, the connections they accepted stay open, and waits for them to be closed.
+	 */
+	public void close() throws InterruptedException
+	{
+		for (Channel channel : channels)
+		{
+			channel.close();
+		}
+
+		awaitClosed();
+	}
+
+	/**
+	 * Waits until all server channels are closed.
+	 */
+	public void awaitClosed() throws InterruptedException
+	{
+		for (Channel channel : channels)
+		{
+			channel.closeFuture().sync();
+		}
+	}
+
+	@Override
+	public String toString()
+	{
+		return "ServerListeners(channels: " + channels.size() + ", perLoop: " + transportConfig.reusePort()
+				+ ", addresses: " + channels.stream().map(Channel::localAddress).distinct().collect(Collectors.toList()) + ')';
+	}
+}
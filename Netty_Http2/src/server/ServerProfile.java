@@ -0,0 +1,76 @@
+package server;
+
+import java.util.Properties;
+
+/**
+ * @author Puspesh.Prakash
+ *
+ * <p> Presets of the {@link ServerConfig}, picked with {@code -Dprofile} (or {@code profile} in the config file). A
+ * config file and system properties override single values of the preset.
+ */
+public enum ServerProfile
+{
+	/**
+	 * Large stream windows and frames as before, with a bounded number of streams and a connection window to match.
+	 */
+	DEFAULT(1000, 5242880, 131072, 16777216, 8192, 4096, 5242880, 5242880, 1048576, 256, 300),
+
+	/**
+	 * Many concurrent streams with small bodies: small stream windows and frames keep the memory per stream low, a
+	 * larger HPACK table pays off for the headers that repeat on every event, bodies are capped at 64 KB.
+	 */
+	SMALL_EVENTS(2000, 65536, 65536, 16777216, 8192, 16384, 16384, 65536, 65536, 256, 120),
+
+	/**
+	 * Few streams with large bodies: large windows and frames to keep the client sending on high-latency links, fewer
+	 * frames per body, bodies up to 64 MB.
+	 */
+	LARGE_UPLOADS(64, 8388608, 1048576, 67108864, 8192, 4096, 1048576, 67108864, 67108864, 16, 600);
+
+	private final Properties defaults = new Properties();
+
+	ServerProfile(long maxConcurrentStreams, int initialWindowSize, int streamingWindowSize, int connectionWindowSize,
+				  long maxHeaderListSize, long headerTableSize, int maxFrameSize, int maxBodySize, int maxContentLength,
+				  int flushConsolidation, long idleTimeout)
+	{
+		defaults.setProperty("maxConcurrentStreams", Long.toString(maxConcurrentStreams));
+		defaults.setProperty("initialWindowSize", Integer.toString(initialWindowSize));
+		defaults.setProperty("streamingWindowSize", Integer.toString(streamingWindowSize));
+		defaults.setProperty("connectionWindowSize", Integer.toString(connectionWindowSize));
+		defaults.setProperty("maxHeaderListSize", Long.toString(maxHeaderListSize));
+		defaults.setProperty("headerTableSize", Long.toString(headerTableSize));
+		defaults.setProperty("maxFrameSize", Integer.toString(maxFrameSize));
+		defaults.setProperty("maxBodySize", Integer.toString(maxBodySize));
+		defaults.setProperty("maxContentLength", Integer.toString(maxContentLength));
+		defaults.setProperty("flushConsolidation", Integer.toString(flushConsolidation));
+		defaults.setProperty("idleTimeout", Long.toString(idleTimeout));
+		defaults.setProperty("workerThreads", "0");
+		defaults.setProperty("shutdownTimeout", "30");
+		defaults.setProperty("maxConnections", "100000");
+		defaults.setProperty("maxStreams", "100000");
+		defaults.setProperty("maxBufferedBytes", "1073741824");
+		defaults.setProperty("maxConnectionBufferedBytes", "134217728");
+		defaults.setProperty("maxEventLoopLag", "500");
+		defaults.setProperty("retryAfter", "1");
+	}
+
+	/**
+	 * @return a copy of the values of this preset, keyed like the system properties.
+	 */
+	public Properties defaults()
+	{
+		final Properties copy = new Properties();
+
+		copy.putAll(defaults);
+
+		return copy;
+	}
+
+	/**
+	 * Resolves the profile from its name, ignoring case, e.g. {@code small-events}.
+	 */
+	public static ServerProfile of(String name)
+	{
+		return valueOf(name.trim().replace('-', '_').toUpperCase());
+	}
+}
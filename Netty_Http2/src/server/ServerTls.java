@@ -0,0 +1,319 @@
+package server;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.security.SecureRandom;
+import java.security.cert.CertificateException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLException;
+import javax.net.ssl.SSLSessionContext;
+
+import io.netty.handler.codec.http2.Http2SecurityUtil;
+import io.netty.handler.ssl.ApplicationProtocolConfig;
+import io.netty.handler.ssl.ApplicationProtocolConfig.Protocol;
+import io.netty.handler.ssl.ApplicationProtocolConfig.SelectedListenerFailureBehavior;
+import io.netty.handler.ssl.ApplicationProtocolConfig.SelectorFailureBehavior;
+import io.netty.handler.ssl.ApplicationProtocolNames;
+import io.netty.handler.ssl.DelegatingSslContext;
+import io.netty.handler.ssl.OpenSsl;
+import io.netty.handler.ssl.OpenSslSessionContext;
+import io.netty.handler.ssl.OpenSslSessionTicketKey;
+import io.netty.handler.ssl.ReferenceCountedOpenSslEngine;
+import io.netty.handler.ssl.SslContext;
+import io.netty.handler.ssl.SslContextBuilder;
+import io.netty.handler.ssl.SslProvider;
+import io.netty.handler.ssl.SupportedCipherSuiteFilter;
+import io.netty.handler.ssl.util.SelfSignedCertificate;
+import io.netty.util.concurrent.EventExecutorGroup;
+import logging.AsyncLog;
+import logging.Logger;
+
+/**
+ * @author Puspesh.Prakash
+ *
+ * <p> TLS setup of the server. The certificate chain and PKCS#8 key are loaded from PEM files ({@code -Dtls.cert},
+ * {@code -Dtls.key}, optionally {@code -Dtls.keyPassword}); without them a self-signed certificate is generated, which
+ * is only fit for development.
+ *
+ * <p> OpenSSL (netty-tcnative BoringSSL) is preferred over the JDK provider, it is considerably cheaper per handshake.
+ * Reconnecting clients skip the full handshake through the session cache ({@code -Dtls.sessionCacheSize},
+ * {@code -Dtls.sessionTimeout} in seconds) and, with OpenSSL, through session tickets. The ticket keys are rotated every
+ * {@code -Dtls.ticketKeyRotation} seconds; the previous key stays valid for decryption, so tickets survive one rotation.
+ * Generated keys are private to this process. A fleet behind a load balancer shares them via {@code -Dtls.ticketKeys},
+ * a file of concatenated 48 byte keys (name, HMAC and AES key, newest first) that is re-read on every rotation.
+ *
+ * <p> With OpenSSL, {@code -Dtls.ocspResponse} names a DER encoded OCSP response that is stapled to every handshake. The
+ * file is fetched by external tooling and re-read every {@code -Dtls.ocspRefresh} seconds.
+ */
+public final class ServerTls
+{
+	static final String CERT = System.getProperty("tls.cert");
+
+	static final String KEY = System.getProperty("tls.key");
+
+	static final String KEY_PASSWORD = System.getProperty("tls.keyPassword");
+
+	static final long SESSION_CACHE_SIZE = Long.getLong("tls.sessionCacheSize", 20480);
+
+	static final long SESSION_TIMEOUT = Long.getLong("tls.sessionTimeout", 3600);
+
+	static final long TICKET_KEY_ROTATION = Long.getLong("tls.ticketKeyRotation", 3600);
+
+	static final String TICKET_KEYS = System.getProperty("tls.ticketKeys");
+
+	static final String OCSP_RESPONSE = System.getProperty("tls.ocspResponse");
+
+	static final long OCSP_REFRESH = Long.getLong("tls.ocspRefresh", 3600);
+
+	private static final Logger LOG = AsyncLog.logger("server.tls");
+
+	private final SslContext context;
+
+	private final SslProvider provider;
+
+	private final SecureRandom random = new SecureRandom();
+
+	/**
+	 * The current ticket key, followed by the previous one.
+	 */
+	private volatile OpenSslSessionTicketKey[] ticketKeys;
+
+	private volatile byte[] ocspResponse;
+
+	private ServerTls(SslContextBuilder builder, SslProvider provider) throws SSLException
+	{
+		this.provider = provider;
+
+		final boolean ocsp = OCSP_RESPONSE != null && provider == SslProvider.OPENSSL && OpenSsl.isOcspSupported();
+
+		final SslContext sslCtx = builder.sslProvider(provider)
+										 /* NOTE: the cipher filter may not include all ciphers required by the HTTP/2 specification.
+										  * Please refer to the HTTP/2 specification for cipher requirements. */
+										 .ciphers(Http2SecurityUtil.CIPHERS, SupportedCipherSuiteFilter.INSTANCE)
+										 .applicationProtocolConfig(new ApplicationProtocolConfig(Protocol.ALPN,
+											// NO_ADVERTISE is currently the only mode supported by both OpenSsl and JDK providers.
+											SelectorFailureBehavior.NO_ADVERTISE,
+											// ACCEPT is currently the only mode supported by both OpenSsl and JDK providers.
+											SelectedListenerFailureBehavior.ACCEPT, ApplicationProtocolNames.HTTP_2,
+											ApplicationProtocolNames.HTTP_1_1))
+										 .sessionCacheSize(SESSION_CACHE_SIZE)
+										 .sessionTimeout(SESSION_TIMEOUT)
+										 .enableOcsp(ocsp)
+										 .build();
+
+		context = ocsp ? new OcspStaplingContext(sslCtx) : sslCtx;
+	}
+
+	/**
+	 * Builds the TLS setup from the system properties.
+	 */
+	public static ServerTls fromSystemProperties() throws CertificateException, SSLException
+	{
+		final SslContextBuilder builder;
+
+		if (CERT != null && KEY != null)
+		{
+			builder = SslContextBuilder.forServer(new File(CERT), new File(KEY), KEY_PASSWORD);
+		}
+
+		else
+		{
+			LOG.warn("No tls.cert/tls.key given, using a self-signed certificate");
+
+			SelfSignedCertificate ssc = new SelfSignedCertificate();
+
+			builder = SslContextBuilder.forServer(ssc.certificate(), ssc.privateKey());
+		}
+
+		final SslProvider provider = OpenSsl.isAvailable() && SslProvider.isAlpnSupported(SslProvider.OPENSSL)
+				? SslProvider.OPENSSL : SslProvider.JDK;
+
+		if (provider == SslProvider.JDK)
+		{
+			LOG.warn("OpenSSL is not available, falling back to the JDK provider: {}", OpenSsl.unavailabilityCause());
+		}
+
+		if (OCSP_RESPONSE != null && (provider != SslProvider.OPENSSL || !OpenSsl.isOcspSupported()))
+		{
+			LOG.warn("OCSP stapling requires OpenSSL with OCSP support, {} is not stapled", OCSP_RESPONSE);
+		}
+
+		return new ServerTls(builder, provider);
+	}
+
+	public SslContext context()
+	{
+		return context;
+	}
+
+	public SslProvider provider()
+	{
+		return provider;
+	}
+
+	/**
+	 * @return the session context, whose statistics include cache and ticket hits with OpenSSL.
+	 */
+	public SSLSessionContext sessionContext()
+	{
+		return context.sessionContext();
+	}
+
+	/**
+	 * Installs the first session ticket key and OCSP response and schedules their rotation and refresh on
+	 * {@code executor}. Does nothing for what the provider does not support.
+	 *
+	 * @return the scheduled tasks, to be cancelled on shutdown.
+	 */
+	public List<ScheduledFuture<?>> start(EventExecutorGroup executor)
+	{
+		final List<ScheduledFuture<?>> tasks = new ArrayList<>(2);
+
+		if (context.sessionContext() instanceof OpenSslSessionContext)
+		{
+			rotateTicketKeys();
+
+			if (TICKET_KEY_ROTATION > 0)
+			{
+				tasks.add(executor.scheduleAtFixedRate(this::rotateTicketKeys, TICKET_KEY_ROTATION, TICKET_KEY_ROTATION,
+													   TimeUnit.SECONDS));
+			}
+		}
+
+		if (context instanceof OcspStaplingContext)
+		{
+			refreshOcspResponse();
+
+			if (OCSP_REFRESH > 0)
+			{
+				tasks.add(executor.scheduleAtFixedRate(this::refreshOcspResponse, OCSP_REFRESH, OCSP_REFRESH, TimeUnit.SECONDS));
+			}
+		}
+
+		return tasks;
+	}
+
+	/**
+	 * Installs the next ticket keys: the ones from the shared key file, or a new random key followed by the current one.
+	 * Failures keep the current keys.
+	 */
+	void rotateTicketKeys()
+	{
+		final OpenSslSessionTicketKey[] keys;
+
+		try
+		{
+			keys = TICKET_KEYS != null ? readTicketKeys(new File(TICKET_KEYS)) : nextTicketKeys();
+		}
+
+		catch (IOException | RuntimeException e)
+		{
+			LOG.error("Cannot rotate the session ticket keys, keeping the current ones", e);
+
+			return;
+		}
+
+		((OpenSslSessionContext) context.sessionContext()).setTicketKeys(keys);
+
+		ticketKeys = keys;
+
+		LOG.info("Installed {} session ticket key(s)", keys.length);
+	}
+
+	private OpenSslSessionTicketKey[] nextTicketKeys()
+	{
+		final OpenSslSessionTicketKey current = newTicketKey();
+
+		final OpenSslSessionTicketKey[] previous = ticketKeys;
+
+		return previous == null ? new OpenSslSessionTicketKey[] { current }
+								: new OpenSslSessionTicketKey[] { current, previous[0] };
+	}
+
+	private OpenSslSessionTicketKey newTicketKey()
+	{
+		final byte[] key = new byte[OpenSslSessionTicketKey.TICKET_KEY_SIZE];
+
+		random.nextBytes(key);
+
+		return ticketKey(key, 0);
+	}
+
+	private static OpenSslSessionTicketKey[] readTicketKeys(File file) throws IOException
+	{
+		final byte[] bytes = Files.readAllBytes(file.toPath());
+
+		final int size = OpenSslSessionTicketKey.TICKET_KEY_SIZE;
+
+		if (bytes.length == 0 || bytes.length % size != 0)
+		{
+			throw new IOException(file + " must hold one or more keys of " + size + " bytes, got " + bytes.length);
+		}
+
+		final OpenSslSessionTicketKey[] keys = new OpenSslSessionTicketKey[bytes.length / size];
+
+		for (int i = 0; i < keys.length; i++)
+		{
+			keys[i] = ticketKey(bytes, i * size);
+		}
+
+		return keys;
+	}
+
+	private static OpenSslSessionTicketKey ticketKey(byte[] bytes, int offset)
+	{
+		final int hmac = offset + OpenSslSessionTicketKey.NAME_SIZE;
+
+		final int aes = hmac + OpenSslSessionTicketKey.HMAC_KEY_SIZE;
+
+		return new OpenSslSessionTicketKey(Arrays.copyOfRange(bytes, offset, hmac),
+										   Arrays.copyOfRange(bytes, hmac, aes),
+										   Arrays.copyOfRange(bytes, aes, aes + OpenSslSessionTicketKey.AES_KEY_SIZE));
+	}
+
+	/**
+	 * Re-reads the OCSP response file. Failures keep the current response, handshakes after its expiry simply go
+	 * without a (valid) staple.
+	 */
+	void refreshOcspResponse()
+	{
+		try
+		{
+			ocspResponse = Files.readAllBytes(new File(OCSP_RESPONSE).toPath());
+		}
+
+		catch (IOException e)
+		{
+			LOG.error("Cannot read the OCSP response " + OCSP_RESPONSE + ", keeping the current one", e);
+		}
+	}
+
+	/**
+	 * Staples the current OCSP response to every new engine.
+	 */
+	private final class OcspStaplingContext extends DelegatingSslContext
+	{
+		OcspStaplingContext(SslContext ctx)
+		{
+			super(ctx);
+		}
+
+		@Override
+		protected void initEngine(SSLEngine engine)
+		{
+			final byte[] response = ocspResponse;
+
+			if (response != null && engine instanceof ReferenceCountedOpenSslEngine)
+			{
+				((ReferenceCountedOpenSslEngine) engine).setOcspResponse(response);
+			}
+		}
+	}
+}
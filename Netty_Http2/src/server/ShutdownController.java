@@ -0,0 +1,260 @@
+package server;
+
+import static io.netty.util.internal.ObjectUtil.checkNotNull;
+import static io.netty.util.internal.ObjectUtil.checkPositiveOrZero;
+
+import java.util.Collection;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.group.ChannelGroup;
+import io.netty.handler.codec.http2.DefaultHttp2GoAwayFrame;
+import io.netty.handler.codec.http2.Http2Error;
+import io.netty.handler.codec.http2.Http2FrameCodec;
+import logging.AsyncLog;
+import logging.Logger;
+
+/**
+ * @author Puspesh.Prakash
+ *
+ * <p> Shuts the server down without dropping accepted requests, triggered by a JVM shutdown hook or the admin endpoint:
+ * <ol>
+ * <li> Stops accepting: the listeners are closed, established connections stay open. The background tasks (e.g. the
+ *      TLS ticket key rotation) are cancelled.
+ * <li> Sends every HTTP/2 connection a GOAWAY with the largest stream id, so clients stop opening streams while the
+ *      streams already on the wire are still served. After {@link #GOAWAY_DELAY_MILLIS} (enough for a round trip) a
+ *      second GOAWAY carries the real last stream id, and the connection is closed once its active streams are done.
+ *      HTTP/1.x connections are closed after the responses in flight, see {@link Http1EventReceiverHandler#drain}.
+ * <li> Waits for the connections, then closes the {@link EventSink} and waits for the events it accepted to be
+ *      processed.
+ * <li> Closes whatever connection is left and shuts the event loops down.
+ * </ol>
+ * The waiting in the steps 2 and 3 is bounded by one timeout altogether.
+ */
+public final class ShutdownController
+{
+	/**
+	 * Time between the two GOAWAY frames, in which streams already sent by the clients still arrive.
+	 */
+	static final long GOAWAY_DELAY_MILLIS = 1000;
+
+	private static final Logger LOG = AsyncLog.logger("server");
+
+	private final ServerListeners listeners;
+
+	private final ChannelGroup connections;
+
+	private final EventSink eventSink;
+
+	private final long timeoutNanos;
+
+	private final EventLoopGroup[] groups;
+
+	private final AtomicBoolean started = new AtomicBoolean();
+
+	private final CountDownLatch terminated = new CountDownLatch(1);
+
+	private final Collection<Future<?>> tasks = new CopyOnWriteArrayList<>();
+
+	/**
+	 * @param connections the open client connections, see {@link Http2ServerInitializer}.
+	 * @param timeoutSeconds the most the shutdown waits for in-flight streams and queued events.
+	 * @param groups the event loop groups to shut down last.
+	 */
+	public ShutdownController(ServerListeners listeners, ChannelGroup connections, EventSink eventSink, long timeoutSeconds,
+							  EventLoopGroup... groups)
+	{
+		this.listeners = checkNotNull(listeners, "listeners");
+		this.connections = checkNotNull(connections, "connections");
+		this.eventSink = checkNotNull(eventSink, "eventSink");
+		this.timeoutNanos = TimeUnit.SECONDS.toNanos(checkPositiveOrZero(timeoutSeconds, "timeoutSeconds"));
+		this.groups = groups.clone();
+	}
+
+	/**
+	 * Runs {@link #shutdown()} when the JVM is asked to exit (SIGTERM, SIGINT).
+	 */
+	public ShutdownController installShutdownHook()
+	{
+		Runtime.getRuntime().addShutdownHook(new Thread(this::shutdown, "shutdown-hook"));
+
+		return this;
+	}
+
+	/**
+	 * Cancels {@code tasks} once the shutdown starts, e.g. the scheduled tasks of {@link ServerTls#start}.
+	 */
+	public ShutdownController cancelOnShutdown(Collection<? extends Future<?>> tasks)
+	{
+		this.tasks.addAll(checkNotNull(tasks, "tasks"));
+
+		return this;
+	}
+
+	/**
+	 * Starts the shutdown on a thread of its own and returns right away, e.g. for the admin endpoint.
+	 */
+	public void shutdownAsync()
+	{
+		if (!started.get())
+		{
+			new Thread(this::shutdown, "shutdown").start();
+		}
+	}
+
+	/**
+	 * Runs the shutdown steps, or waits for the shutdown already in progress.
+	 */
+	public void shutdown()
+	{
+		if (!started.compareAndSet(false, true))
+		{
+			awaitTerminationUninterruptibly();
+
+			return;
+		}
+
+		final long deadline = System.nanoTime() + timeoutNanos;
+
+		try
+		{
+			LOG.info("Shutdown: closing {} listener(s)", listeners.channels().size());
+
+			listeners.close();
+
+			for (Future<?> task : tasks)
+			{
+				task.cancel(false);
+			}
+
+			LOG.info("Shutdown: draining {} connection(s)", connections.size());
+
+			for (Channel channel : connections)
+			{
+				channel.eventLoop().execute(() -> goAway(channel, Integer.MAX_VALUE));
+			}
+
+			Thread.sleep(Math.min(GOAWAY_DELAY_MILLIS, remainingMillis(deadline)));
+
+			for (Channel channel : connections)
+			{
+				channel.eventLoop().execute(() -> drain(channel));
+			}
+
+			if (!connections.newCloseFuture().await(remainingMillis(deadline)))
+			{
+				LOG.warn("Shutdown: {} connection(s) still busy after the timeout", connections.size());
+			}
+
+			eventSink.close();
+
+			if (!eventSink.awaitDrained(remainingMillis(deadline), TimeUnit.MILLISECONDS))
+			{
+				LOG.warn("Shutdown: event sink not drained within the timeout");
+			}
+
+			// From the first handler the close goes straight to the socket, past the HTTP/2 codec's graceful close.
+			for (Channel channel : connections)
+			{
+				channel.eventLoop().execute(() -> channel.pipeline().firstContext().close());
+			}
+
+			for (EventLoopGroup group : groups)
+			{
+				group.shutdownGracefully(0, 2, TimeUnit.SECONDS).await();
+			}
+
+			LOG.info("Shutdown: complete");
+		}
+
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+
+			LOG.warn("Shutdown interrupted");
+		}
+
+		finally
+		{
+			terminated.countDown();
+		}
+	}
+
+	/**
+	 * Waits until a shutdown has completed.
+	 */
+	public void awaitTermination() throws InterruptedException
+	{
+		terminated.await();
+	}
+
+	private void awaitTerminationUninterruptibly()
+	{
+		boolean interrupted = false;
+
+		while (true)
+		{
+			try
+			{
+				terminated.await();
+
+				break;
+			}
+
+			catch (InterruptedException e)
+			{
+				interrupted = true;
+			}
+		}
+
+		if (interrupted)
+		{
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Sends a GOAWAY whose last stream id is the last stream the peer opened plus {@code extraStreamIds} (capped at the
+	 * largest stream id). Does nothing for connections that are not (yet) HTTP/2.
+	 */
+	private static void goAway(Channel channel, int extraStreamIds)
+	{
+		if (channel.pipeline().get(Http2FrameCodec.class) != null)
+		{
+			channel.writeAndFlush(new DefaultHttp2GoAwayFrame(Http2Error.NO_ERROR).setExtraStreamIds(extraStreamIds))
+				   .addListener(ChannelFutureListener.CLOSE_ON_FAILURE);
+		}
+	}
+
+	/**
+	 * Closes a connection as soon as it is idle: HTTP/2 connections after the final GOAWAY once their active streams are
+	 * done, HTTP/1.x connections after their responses in flight, anything else (e.g. still in the TLS handshake) now.
+	 */
+	private static void drain(Channel channel)
+	{
+		final Http1EventReceiverHandler http1Handler = channel.pipeline().get(Http1EventReceiverHandler.class);
+
+		if (http1Handler != null)
+		{
+			http1Handler.drain(channel);
+
+			return;
+		}
+
+		goAway(channel, 0);
+
+		// The codec closes the connection once its active streams are done (or after its graceful shutdown timeout).
+		channel.close();
+	}
+
+	private static long remainingMillis(long deadline)
+	{
+		return Math.max(0, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime()));
+	}
+}
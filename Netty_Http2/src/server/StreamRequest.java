@@ -0,0 +1,191 @@
+package server;
+
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.handler.codec.http2.Http2Headers;
+import io.netty.util.AttributeKey;
+import compression.BodyDecompressor;
+
+/**
+ * @author Puspesh.Prakash
+ *
+ * <p> Request state of a single HTTP/2 stream. It lives in an attribute of the stream's child channel, so the
+ * shared handler needs neither a global map nor a per-frame lookup key, and the state is dropped together with the
+ * channel when the stream is reset.
+ *
+ * <p> Only accessed from the event loop of its stream channel.
+ */
+final class StreamRequest
+{
+	static final AttributeKey<StreamRequest> KEY = AttributeKey.valueOf(StreamRequest.class, "streamRequest");
+
+	/**
+	 * When the stream's first frame was read, the start of its service time.
+	 */
+	private final long startNanos = System.nanoTime();
+
+	private Http2Headers headers;
+
+	private EventBody body;
+
+	/**
+	 * Whether the stream holds an admission of the {@link AdmissionController}, and how many body bytes it admitted.
+	 * Both are given back when the stream closes, not when the request state is released.
+	 */
+	private boolean admitted;
+
+	private long admittedBytes;
+
+	/**
+	 * Whether the stream has been answered before its end (rejected or refused) and is being reset; the frames of the
+	 * read batch that still arrive for it are dropped.
+	 */
+	private boolean answered;
+
+	/**
+	 * The route of the request and the values of its path parameters, null without a {@link Router}.
+	 */
+	private Route route;
+
+	private PathParams params;
+
+	/**
+	 * Inflates the body if it has a content-encoding, null otherwise.
+	 */
+	private BodyDecompressor decompressor;
+
+	/**
+	 * The events split from the body of a batch route, null for other routes.
+	 */
+	private BatchRequest batch;
+
+	long startNanos()
+	{
+		return startNanos;
+	}
+
+	Http2Headers headers()
+	{
+		return headers;
+	}
+
+	void headers(Http2Headers headers)
+	{
+		this.headers = headers;
+	}
+
+	boolean admitted()
+	{
+		return admitted;
+	}
+
+	void admitted(boolean admitted)
+	{
+		this.admitted = admitted;
+	}
+
+	long admittedBytes()
+	{
+		return admittedBytes;
+	}
+
+	void addAdmittedBytes(int bytes)
+	{
+		admittedBytes += bytes;
+	}
+
+	boolean answered()
+	{
+		return answered;
+	}
+
+	void answered(boolean answered)
+	{
+		this.answered = answered;
+	}
+
+	Route route()
+	{
+		return route;
+	}
+
+	PathParams params()
+	{
+		return params;
+	}
+
+	void route(Route route, PathParams params)
+	{
+		this.route = route;
+		this.params = params;
+	}
+
+	BodyDecompressor decompressor()
+	{
+		return decompressor;
+	}
+
+	void decompressor(BodyDecompressor decompressor)
+	{
+		this.decompressor = decompressor;
+	}
+
+	BatchRequest batch()
+	{
+		return batch;
+	}
+
+	void batch(BatchRequest batch)
+	{
+		this.batch = batch;
+	}
+
+	/**
+	 * @return the body of the stream, created on the first data frame.
+	 */
+	EventBody body(ByteBufAllocator alloc, BodyAggregation aggregation, int maxBodySize)
+	{
+		if (body == null)
+		{
+			body = new EventBody(alloc, aggregation, maxBodySize);
+		}
+
+		return body;
+	}
+
+	/**
+	 * @return the body of the stream, or null if no data frame has been received.
+	 */
+	EventBody body()
+	{
+		return body;
+	}
+
+	/**
+	 * Drops the headers and releases the aggregated payload, the decompressor and the batch state.
+	 */
+	void release()
+	{
+		headers = null;
+
+		if (batch != null)
+		{
+			batch.release();
+
+			batch = null;
+		}
+
+		if (decompressor != null)
+		{
+			decompressor.release();
+
+			decompressor = null;
+		}
+
+		if (body != null)
+		{
+			body.release();
+
+			body = null;
+		}
+	}
+}
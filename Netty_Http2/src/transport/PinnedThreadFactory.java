@@ -0,0 +1,92 @@
+package transport;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.netty.util.NettyRuntime;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import logging.AsyncLog;
+import logging.Logger;
+
+/**
+ * @author Puspesh.Prakash
+ *
+ * <p> Creates event loop threads that pin themselves to one CPU each, round robin, when they start. A pinned event loop
+ * keeps its connections' state in the caches of one core, and with SO_REUSEPORT listeners on every event loop a
+ * connection is accepted and served on the same core.
+ *
+ * <p> Pinning uses OpenHFT's Java-Thread-Affinity ({@code net.openhft.affinity.Affinity}), which is resolved reflectively;
+ * without it on the classpath the threads simply run unpinned.
+ */
+final class PinnedThreadFactory extends DefaultThreadFactory
+{
+	private static final Logger LOG = AsyncLog.logger("transport");
+
+	private static final Method SET_AFFINITY = setAffinityMethod();
+
+	private final AtomicInteger nextCpu = new AtomicInteger();
+
+	PinnedThreadFactory(String poolName)
+	{
+		super(poolName);
+
+		if (SET_AFFINITY == null)
+		{
+			LOG.warn("net.openhft.affinity is not on the classpath, {} threads are not pinned", poolName);
+		}
+	}
+
+	/**
+	 * @return true if threads can be pinned.
+	 */
+	static boolean isAvailable()
+	{
+		return SET_AFFINITY != null;
+	}
+
+	@Override
+	protected Thread newThread(Runnable r, String name)
+	{
+		final int cpu = nextCpu.getAndIncrement() % NettyRuntime.availableProcessors();
+
+		return super.newThread(() ->
+		{
+			pin(name, cpu);
+
+			r.run();
+		}, name);
+	}
+
+	private static void pin(String name, int cpu)
+	{
+		if (SET_AFFINITY == null)
+		{
+			return;
+		}
+
+		try
+		{
+			SET_AFFINITY.invoke(null, cpu);
+
+			LOG.debug("Pinned {} to cpu {}", name, cpu);
+		}
+
+		catch (ReflectiveOperationException | RuntimeException e)
+		{
+			LOG.error("Unable to pin " + name + " to cpu " + cpu, e);
+		}
+	}
+
+	private static Method setAffinityMethod()
+	{
+		try
+		{
+			return Class.forName("net.openhft.affinity.Affinity").getMethod("setAffinity", int.class);
+		}
+
+		catch (ReflectiveOperationException | LinkageError e)
+		{
+			return null;
+		}
+	}
+}
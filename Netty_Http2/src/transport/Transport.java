@@ -0,0 +1,321 @@
+package transport;
+
+import java.lang.reflect.Constructor;
+import java.util.concurrent.ThreadFactory;
+
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.ServerChannel;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollChannelOption;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollServerSocketChannel;
+import io.netty.channel.epoll.EpollSocketChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+
+/**
+ * @author Puspesh.Prakash
+ *
+ * <p> The socket transports the client and the server can run on, in order of preference. The native transports are
+ * only used where their native library could be loaded (Linux), NIO is available everywhere.
+ *
+ * <p> io_uring lives in the separate {@code netty-incubator-transport-native-io_uring} artifact, so it is resolved
+ * reflectively and simply reported as unavailable when that jar is not on the classpath.
+ */
+public enum Transport
+{
+	IO_URING
+	{
+		@Override
+		public boolean isAvailable()
+		{
+			return IoUring.AVAILABLE;
+		}
+
+		@Override
+		public EventLoopGroup newEventLoopGroup(int nThreads, ThreadFactory threadFactory)
+		{
+			return IoUring.newEventLoopGroup(nThreads, threadFactory);
+		}
+
+		@Override
+		public Class<? extends ServerChannel> serverChannelClass()
+		{
+			return IoUring.SERVER_CHANNEL;
+		}
+
+		@Override
+		public Class<? extends Channel> socketChannelClass()
+		{
+			return IoUring.SOCKET_CHANNEL;
+		}
+
+		@Override
+		ChannelOption<Boolean> reusePortOption()
+		{
+			return IoUring.SO_REUSEPORT;
+		}
+
+		@Override
+		ChannelOption<Integer> tcpFastOpenOption()
+		{
+			return IoUring.TCP_FASTOPEN;
+		}
+
+		@Override
+		ChannelOption<Boolean> tcpFastOpenConnectOption()
+		{
+			return IoUring.TCP_FASTOPEN_CONNECT;
+		}
+	},
+
+	EPOLL
+	{
+		@Override
+		public boolean isAvailable()
+		{
+			return Epoll.isAvailable();
+		}
+
+		@Override
+		public EventLoopGroup newEventLoopGroup(int nThreads, ThreadFactory threadFactory)
+		{
+			return new EpollEventLoopGroup(nThreads, threadFactory);
+		}
+
+		@Override
+		public Class<? extends ServerChannel> serverChannelClass()
+		{
+			return EpollServerSocketChannel.class;
+		}
+
+		@Override
+		public Class<? extends Channel> socketChannelClass()
+		{
+			return EpollSocketChannel.class;
+		}
+
+		@Override
+		ChannelOption<Boolean> reusePortOption()
+		{
+			return EpollChannelOption.SO_REUSEPORT;
+		}
+
+		@Override
+		ChannelOption<Integer> tcpFastOpenOption()
+		{
+			return EpollChannelOption.TCP_FASTOPEN;
+		}
+
+		@Override
+		ChannelOption<Boolean> tcpFastOpenConnectOption()
+		{
+			return EpollChannelOption.TCP_FASTOPEN_CONNECT;
+		}
+	},
+
+	NIO
+	{
+		@Override
+		public boolean isAvailable()
+		{
+			return true;
+		}
+
+		@Override
+		public EventLoopGroup newEventLoopGroup(int nThreads, ThreadFactory threadFactory)
+		{
+			return new NioEventLoopGroup(nThreads, threadFactory);
+		}
+
+		@Override
+		public Class<? extends ServerChannel> serverChannelClass()
+		{
+			return NioServerSocketChannel.class;
+		}
+
+		@Override
+		public Class<? extends Channel> socketChannelClass()
+		{
+			return NioSocketChannel.class;
+		}
+	};
+
+	/**
+	 * @return true if the transport can be used on this machine.
+	 */
+	public abstract boolean isAvailable();
+
+	/**
+	 * @param nThreads number of event loops, 0 for Netty's default (2 * available processors).
+	 */
+	public EventLoopGroup newEventLoopGroup(int nThreads)
+	{
+		return newEventLoopGroup(nThreads, null);
+	}
+
+	/**
+	 * @param nThreads number of event loops, 0 for Netty's default (2 * available processors).
+	 * @param threadFactory creates the event loop threads, null for Netty's default.
+	 */
+	public abstract EventLoopGroup newEventLoopGroup(int nThreads, ThreadFactory threadFactory);
+
+	public abstract Class<? extends ServerChannel> serverChannelClass();
+
+	public abstract Class<? extends Channel> socketChannelClass();
+
+	/**
+	 * @return the SO_REUSEPORT option, or null if the transport does not support it.
+	 */
+	ChannelOption<Boolean> reusePortOption()
+	{
+		return null;
+	}
+
+	/**
+	 * @return the server side TCP_FASTOPEN (queue length) option, or null if the transport does not support it.
+	 */
+	ChannelOption<Integer> tcpFastOpenOption()
+	{
+		return null;
+	}
+
+	/**
+	 * @return the client side TCP_FASTOPEN_CONNECT option, or null if the transport does not support it.
+	 */
+	ChannelOption<Boolean> tcpFastOpenConnectOption()
+	{
+		return null;
+	}
+
+	public boolean supportsReusePort()
+	{
+		return reusePortOption() != null;
+	}
+
+	/**
+	 * Resolves a transport by name: {@code auto} picks the most preferred available transport, any other name
+	 * (io_uring, epoll, nio) forces that transport, e.g. for A/B throughput comparisons.
+	 *
+	 * @throws IllegalStateException if a forced transport is not available on this machine.
+	 */
+	public static Transport select(String name)
+	{
+		if ("auto".equalsIgnoreCase(name.trim()))
+		{
+			for (Transport transport : values())
+			{
+				if (transport.isAvailable())
+				{
+					return transport;
+				}
+			}
+		}
+
+		final Transport transport = valueOf(name.trim().toUpperCase());
+
+		if (!transport.isAvailable())
+		{
+			throw new IllegalStateException("Transport not available on this machine: " + transport);
+		}
+
+		return transport;
+	}
+
+	/**
+	 * Reflective access to the io_uring incubator transport.
+	 */
+	private static final class IoUring
+	{
+		private static final String PACKAGE = "io.netty.incubator.channel.uring.";
+
+		static final boolean AVAILABLE;
+
+		static final Class<? extends ServerChannel> SERVER_CHANNEL;
+
+		static final Class<? extends Channel> SOCKET_CHANNEL;
+
+		static final ChannelOption<Boolean> SO_REUSEPORT;
+
+		static final ChannelOption<Integer> TCP_FASTOPEN;
+
+		static final ChannelOption<Boolean> TCP_FASTOPEN_CONNECT;
+
+		private static final Constructor<? extends EventLoopGroup> GROUP_CONSTRUCTOR;
+
+		static
+		{
+			boolean available = false;
+
+			Class<? extends ServerChannel> serverChannel = null;
+
+			Class<? extends Channel> socketChannel = null;
+
+			Constructor<? extends EventLoopGroup> groupConstructor = null;
+
+			try
+			{
+				available = (Boolean) Class.forName(PACKAGE + "IOUring").getMethod("isAvailable").invoke(null);
+
+				if (available)
+				{
+					serverChannel = Class.forName(PACKAGE + "IOUringServerSocketChannel").asSubclass(ServerChannel.class);
+
+					socketChannel = Class.forName(PACKAGE + "IOUringSocketChannel").asSubclass(Channel.class);
+
+					groupConstructor = Class.forName(PACKAGE + "IOUringEventLoopGroup").asSubclass(EventLoopGroup.class).getConstructor(int.class, ThreadFactory.class);
+				}
+			}
+
+			catch (ReflectiveOperationException | LinkageError e)
+			{
+				available = false;
+			}
+
+			AVAILABLE = available;
+			SERVER_CHANNEL = serverChannel;
+			SOCKET_CHANNEL = socketChannel;
+			GROUP_CONSTRUCTOR = groupConstructor;
+			SO_REUSEPORT = option("SO_REUSEPORT");
+			TCP_FASTOPEN = option("TCP_FASTOPEN");
+			TCP_FASTOPEN_CONNECT = option("TCP_FASTOPEN_CONNECT");
+		}
+
+		private IoUring(){}
+
+		static EventLoopGroup newEventLoopGroup(int nThreads, ThreadFactory threadFactory)
+		{
+			try
+			{
+				return GROUP_CONSTRUCTOR.newInstance(nThreads, threadFactory);
+			}
+
+			catch (ReflectiveOperationException e)
+			{
+				throw new IllegalStateException("Unable to create io_uring event loop group", e);
+			}
+		}
+
+		@SuppressWarnings("unchecked")
+		private static <T> ChannelOption<T> option(String name)
+		{
+			if (!AVAILABLE)
+			{
+				return null;
+			}
+
+			try
+			{
+				return (ChannelOption<T>) Class.forName(PACKAGE + "IOUringChannelOption").getField(name).get(null);
+			}
+
+			catch (ReflectiveOperationException e)
+			{
+				return null;
+			}
+		}
+	}
+}
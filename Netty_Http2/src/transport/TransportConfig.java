@@ -0,0 +1,143 @@
+package transport;
+
+import static io.netty.util.internal.ObjectUtil.checkNotNull;
+import static io.netty.util.internal.ObjectUtil.checkPositiveOrZero;
+
+import java.util.Properties;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.util.concurrent.DefaultThreadFactory;
+
+/**
+ * @author Puspesh.Prakash
+ *
+ * <p> Socket level settings shared by {@code Http2Server} and {@code Http2FrameClient}: the {@link Transport} to run on,
+ * SO_REUSEPORT, TCP_FASTOPEN and TCP_NODELAY. Options a transport does not support are skipped.
+ *
+ * <p> System properties (see {@link #fromSystemProperties()}):
+ * <ul>
+ * <li> transport     : auto | io_uring | epoll | nio (default auto, forcing one is meant for A/B comparisons)
+ * <li> reusePort     : bind one server channel per worker event loop via SO_REUSEPORT (default true)
+ * <li> tcpFastOpen   : server TFO queue length, any value greater than 0 also enables TFO on connect (default 0, off)
+ * <li> tcpNoDelay    : disables Nagle's algorithm (default true)
+ * <li> affinity      : pins the worker event loops to one CPU each, see {@link PinnedThreadFactory} (default false)
+ * </ul>
+ */
+public final class TransportConfig
+{
+	private final Transport transport;
+
+	private final boolean reusePort;
+
+	private final int tcpFastOpen;
+
+	private final boolean tcpNoDelay;
+
+	private final boolean affinity;
+
+	public TransportConfig(Transport transport, boolean reusePort, int tcpFastOpen, boolean tcpNoDelay, boolean affinity)
+	{
+		this.transport = checkNotNull(transport, "transport");
+		this.reusePort = reusePort && transport.supportsReusePort();
+		this.tcpFastOpen = checkPositiveOrZero(tcpFastOpen, "tcpFastOpen");
+		this.tcpNoDelay = tcpNoDelay;
+		this.affinity = affinity;
+	}
+
+	public static TransportConfig fromSystemProperties()
+	{
+		return from(System.getProperties());
+	}
+
+	/**
+	 * Reads the settings from {@code properties}, keyed like the system properties.
+	 */
+	public static TransportConfig from(Properties properties)
+	{
+		return new TransportConfig(Transport.select(properties.getProperty("transport", "auto")),
+								   Boolean.parseBoolean(properties.getProperty("reusePort", "true")),
+								   Integer.parseInt(properties.getProperty("tcpFastOpen", "0")),
+								   Boolean.parseBoolean(properties.getProperty("tcpNoDelay", "true")),
+								   Boolean.parseBoolean(properties.getProperty("affinity", "false")));
+	}
+
+	public Transport transport()
+	{
+		return transport;
+	}
+
+	/**
+	 * @return true if the server binds one channel per worker event loop to the same address.
+	 */
+	public boolean reusePort()
+	{
+		return reusePort;
+	}
+
+	/**
+	 * @return true if worker event loops are pinned to CPUs.
+	 */
+	public boolean affinity()
+	{
+		return affinity;
+	}
+
+	/**
+	 * Creates an event loop group on the configured transport with threads named after {@code name}.
+	 *
+	 * @param nThreads number of event loops, 0 for Netty's default (2 * available processors).
+	 * @param pinned pins the threads to CPUs if {@link #affinity()} is enabled, meant for the worker event loops.
+	 */
+	public EventLoopGroup newEventLoopGroup(String name, int nThreads, boolean pinned)
+	{
+		return transport.newEventLoopGroup(nThreads, pinned && affinity ? new PinnedThreadFactory(name)
+																		 : new DefaultThreadFactory(name));
+	}
+
+	/**
+	 * Applies the channel class and the socket options to a server bootstrap.
+	 */
+	public ServerBootstrap configure(ServerBootstrap b)
+	{
+		b.channel(transport.serverChannelClass())
+		 .childOption(ChannelOption.TCP_NODELAY, tcpNoDelay);
+
+		if (reusePort)
+		{
+			b.option(transport.reusePortOption(), true);
+		}
+
+		if (tcpFastOpen > 0 && transport.tcpFastOpenOption() != null)
+		{
+			b.option(transport.tcpFastOpenOption(), tcpFastOpen);
+		}
+
+		return b;
+	}
+
+	/**
+	 * Applies the channel class and the socket options to a client bootstrap.
+	 */
+	public Bootstrap configure(Bootstrap b)
+	{
+		b.channel(transport.socketChannelClass())
+		 .option(ChannelOption.TCP_NODELAY, tcpNoDelay);
+
+		if (tcpFastOpen > 0 && transport.tcpFastOpenConnectOption() != null)
+		{
+			b.option(transport.tcpFastOpenConnectOption(), true);
+		}
+
+		return b;
+	}
+
+	@Override
+	public String toString()
+	{
+		return "TransportConfig(transport: " + transport + ", reusePort: " + reusePort + ", tcpFastOpen: " + tcpFastOpen
+				+ ", tcpNoDelay: " + tcpNoDelay + ", affinity: " + (affinity && PinnedThreadFactory.isAvailable()) + ')';
+	}
+}